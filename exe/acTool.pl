@@ -0,0 +1,98 @@
+#!/usr/bin/perl -w
+
+use strict;
+use IO::Socket::UNIX;
+use POSIX qw(mkfifo _exit);
+use Fcntl qw(:mode);
+use File::Temp qw(tempdir);
+use Cwd;
+
+my $usage =
+ "acTool.pl mainClass [args]\n"
+."   Run an autocorrelator.apps tool in the ToolDaemon of this user (see\n"
+."   acToolDaemon.csh). stdin, stdout and stderr are forwarded through fifos.\n"
+."   If no daemon is running, or its socket or directory is not owned by this\n"
+."   user, the tool is started with java.\n";
+
+my $main = shift || die $usage;
+my $sockDir = "/tmp/acTool_$ENV{USER}";
+my $sockName = "$sockDir/daemon.sock";
+
+my $sock;
+if( isPrivate($sockDir, $sockName) )
+{  $sock = IO::Socket::UNIX->new(Type => SOCK_STREAM(), Peer => $sockName);
+}
+$sock || exec("java", $main, @ARGV) || die "Could not start java: $!\n";
+
+my $dir = tempdir("acToolXXXXXX", TMPDIR => 1, CLEANUP => 1);
+for my $f ("stdin", "stdout", "stderr")
+{  mkfifo("$dir/$f", 0600) || die "mkfifo $dir/$f: $!\n";
+}
+
+my @strings = (getcwd(), $dir, $main, @ARGV);
+my $msg = pack("N", scalar(@strings));
+$msg .= pack("N/a*", $_) for @strings;
+print $sock $msg;
+$sock->flush();
+
+my $inPid  = pump(\*STDIN, "$dir/stdin", 1);
+my $outPid = pump("$dir/stdout", \*STDOUT, 0);
+my $errPid = pump("$dir/stderr", \*STDERR, 0);
+
+my $buf = "";
+my $status = 1;
+if( read($sock, $buf, 4) == 4 )
+{  $status = unpack("N", $buf);
+}else
+{  warn "acTool.pl: lost connection to ToolDaemon\n";
+   kill('TERM', $outPid, $errPid);
+}
+close($sock);
+
+# stdout and stderr end when the daemon and the tool have closed them
+waitpid($outPid, 0);
+waitpid($errPid, 0);
+# the tool might not have read stdin
+kill('TERM', $inPid);
+waitpid($inPid, 0);
+
+exit($status);
+
+
+# true if the socket directory is a directory of this user not accessible by
+# others and the socket is a socket of this user, otherwise another user
+# could run our tools or read our data.
+sub isPrivate
+{  my($dir, $sockName) = @_;
+
+   my @d = lstat($dir);
+   @d && S_ISDIR($d[2]) && $d[4] == $< && ($d[2] & 077) == 0 || return 0;
+   my @s = lstat($sockName);
+   return @s && S_ISSOCK($s[2]) && $s[4] == $<;
+}
+
+
+# copy from source to target in a child process, source or target are fifo
+# names which are opened in the child, opening a fifo blocks until the other
+# end is opened.
+sub pump
+{  my($source, $target, $ignorePipe) = @_;
+
+   my $pid = fork();
+   defined($pid) || die "fork: $!\n";
+   return $pid if( $pid );
+
+   $ignorePipe && ($SIG{PIPE} = 'IGNORE');
+   my($in, $out);
+   if( ref($source) ) { $in = $source; } else { open($in, "<", $source)  || _exit(1); }
+   if( ref($target) ) { $out = $target; } else { open($out, ">", $target) || _exit(1); }
+   binmode($in);
+   binmode($out);
+
+   my $data;
+   while( (my $len = sysread($in, $data, 65536)) )
+   {  defined(syswrite($out, $data, $len)) || last;
+   }
+   close($out);
+   _exit(0);
+}
@@ -1,14 +1,20 @@
 #!/usr/bin/perl -w
 
 $usage =
- "ga.pl [-debug] [-cycle cycle] -maxCycle mCyc -prefix prefix -queOpts 'opts'\n"
+ "ga.pl [-debug] [-resident] [-cycle cycle] -maxCycle mCyc -prefix prefix -queOpts 'opts'\n"
 ."       -mutationProb 0.1 -breedingPool 20 -childPool 15\n"
-."       -xmlFile xmlFileName -directory dir\n"
+."       [-screenFactor n] [-registry file] -xmlFile xmlFileName -directory dir\n"
 ."   childPool: number of children to create.\n"
 ."   breedingPool: number of parents from which to create children.\n"
-."   cycle: if 0 the default autocorelator is run\n";
+."   cycle: if 0 the default autocorelator is run\n"
+."   screenFactor: submit only the best of n times childPool bred candidates\n"
+."   registry: genome registry shared with other experiments on the same molecules\n"
+."   resident: run all cycles in one gaDriver.csh job instead of one job per cycle\n";
 
 $debug="";
+$resident=0;
+$screen="";
+$registry="";
 $prefix="";
 $cycle=0;
 $maxCyc=0;
@@ -61,6 +67,17 @@ while( $#ARGV >= 0 && $ARGV[0] =~ /^-/ )
     {  shift;
        $dir = shift;
        next;
+    }elsif( $ARGV[0] eq "-screenFactor" && $#ARGV > 0 )
+    {  shift;
+       $screen = "-screenFactor " . shift;
+       next;
+    }elsif( $ARGV[0] eq "-registry" && $#ARGV > 0 )
+    {  shift;
+       $registry = "-registry " . shift;
+       next;
+    }elsif( $ARGV[0] eq "-resident")
+    {   $resident = 1;
+        shift;
     }elsif( $ARGV[0] eq "-debug")
     {   $debug = "-debug";
         shift;
@@ -77,7 +94,7 @@ $breedPool eq "" && die "breedingPool size not given\n$usage";
 $childPool eq "" && die "childPool size not given\n$usage";
 
 $options = "$debug -maxCycle $maxCyc -prefix $prefix -mutationProb $mutProb "
-         ." -breedingPool $breedPool -childPool $childPool "
+         ." -breedingPool $breedPool -childPool $childPool $screen $registry "
          ." -directory $dir";
 chdir $dir || die "can not change to directory $dir";
 if(!$cycle)  # initial run
@@ -92,6 +109,18 @@ if(!$cycle)  # initial run
    system($cmd);
    sleep(3);
    
+   if($resident)
+   {  # one job running all GA cycles
+      $cmd = "qsub -N ${prefix}Driver -hold_jid '${prefix}*' $queOpts "
+            ." $acHome/exe/gaDriver.csh $debug -cycle 1 -maxCycle $maxCyc "
+            ." -prefix $prefix -mutationProb $mutProb -breedingPool $breedPool "
+            ." -childPool $childPool $screen $registry -xmlFile $xmlFile";
+      $queOpts ne "" and $cmd .= " -queOpts '$queOpts'";
+      print $cmd . "\n";
+      system($cmd);
+      exit(0);
+   }
+
    #queue job which queues the first GA step
    if ($queOpts eq "") {
    $cmd = "qsub -N ${prefix}1Next -hold_jid '${prefix}*' "
@@ -110,11 +139,11 @@ if(!$cycle)  # initial run
 # queue computational runs for this step
 if ($queOpts eq "") {
 $cmd = "$acHome/exe/gaStep.csh $debug -mutationProb $mutProb -breedingPool $breedPool "
-      ."-childPool $childPool -prefix $prefix "
+      ."-childPool $childPool $screen $registry -prefix $prefix "
       ." -xmlFile $xmlFile -cycle $cycle";
 } else {
 $cmd = "$acHome/exe/gaStep.csh $debug -mutationProb $mutProb -breedingPool $breedPool "
-      ."-childPool $childPool -prefix $prefix -queOpts '$queOpts' "
+      ."-childPool $childPool $screen $registry -prefix $prefix -queOpts '$queOpts' "
       ." -xmlFile $xmlFile -cycle $cycle";
 }
 print $cmd . "\n";
@@ -130,7 +159,21 @@ if ($queOpts eq "") {
   $cmd =  "qsub -N ${prefix}${cycle}Next -hold_jid '${prefix}_${cycle}*' $queOpts ";
 }
 
-$cycle++;
-$cmd .= " $acHome/exe/ga.csh -cycle $cycle $options -xmlFile $xmlFile";
+$nextCycle = $cycle + 1;
+$cmd .= " $acHome/exe/ga.csh -cycle $nextCycle $options -xmlFile $xmlFile";
+print $cmd . "\n";
+system($cmd);
+
+# release the next step as soon as 80% of the models of this step are done,
+# the hold above releases it if this watcher fails or times out. The watcher
+# is a queue job of its own so that this job does not hold a slot meanwhile,
+# its name must not match the hold pattern of the next step.
+if ($queOpts eq "") {
+  $cmd = "qsub -N ${prefix}${cycle}Watch ";
+} else {
+  $cmd = "qsub -N ${prefix}${cycle}Watch $queOpts ";
+}
+$cmd .= " $acHome/exe/gaReleaseWatch.csh -prefix $prefix -cycle $cycle "
+       ."-nTotal $childPool -percentLeft 20 -timeoutMinutes 720";
 print $cmd . "\n";
 system($cmd);
\ No newline at end of file
@@ -0,0 +1,203 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * JobExecutor which limits the number of unfinished and held jobs of one
+ * experiment by blocking {@link #submit} until earlier jobs have finished.
+ *
+ * Because the AutoCorrelator enumerates the experimental design while
+ * submitting, blocking the submitter turns the design into a lazy work queue:
+ * further executions are only created once there is room in the queue.
+ *
+ * The window of jobs allowed in flight adapts to the observed completion rate:
+ * it is kept at about HORIZONSec seconds of work but never exceeds maxInFlight.
+ * While the number of held jobs of this experiment reaches maxHeld no further
+ * jobs are admitted.
+ */
+public class AdmissionController extends JobExecutor
+{  private static final int MINWindow = 10;
+   private static final double HORIZONSec = 1800;
+   private static final long MINPollMS = 5000;
+   private static final long MAXPollMS = 120000;
+
+   private final JobExecutor delegate;
+   private final String namePrefix;
+   private final int maxInFlight;
+   private final int maxHeld;
+
+   private int window;
+   /** queue depth at the last refresh */
+   private int observedInFlight;
+   private int observedHeld;
+   private long lastRefreshMS = 0;
+   /** jobs submitted since the last refresh */
+   private int submittedSinceRefresh = 0;
+   /** name of the open batch, null outside of a batch */
+   private String batchName = null;
+   private int batchPart = 0;
+   /** jobs of the open batch, they reach the queue only when it is closed */
+   private int inBatch = 0;
+   /** smoothed number of jobs finishing per second */
+   private double completionRate = -1;
+
+   /**
+    * Reads the queue depth once so that jobs left in the queue by an earlier
+    * run with the same prefix count against the window.
+    */
+   public AdmissionController(JobExecutor delegate, String namePrefix,
+                              int maxInFlight, int maxHeld) throws IOException
+   {  this.delegate = delegate;
+      this.namePrefix = namePrefix;
+      this.maxInFlight = maxInFlight;
+      this.maxHeld = maxHeld;
+      this.window = maxInFlight;
+      refresh();
+   }
+
+   @Override
+   QueueEntry submit(String jobName, JobExecution parent,
+                     ParameterValue[] paramVals, String cshName) throws IOException
+   {  admit();
+      if(batchName != null)
+         inBatch++;
+      else
+         submittedSinceRefresh++;
+      return delegate.submit(jobName, parent, paramVals, cshName);
+   }
+
+   @Override
+   void openBatch(String batchName)
+   {  this.batchName = batchName;
+      batchPart = 0;
+      inBatch = 0;
+      delegate.openBatch(batchName);
+   }
+
+   @Override
+   void closeBatch() throws IOException
+   {  flushBatch();
+      batchName = null;
+   }
+
+   /**
+    * Submit the jobs of the open batch so that they show up in the queue.
+    */
+   private void flushBatch() throws IOException
+   {  delegate.closeBatch();
+      submittedSinceRefresh += inBatch;
+      inBatch = 0;
+   }
+
+   @Override
+   void cancel(JobExecution exec) throws IOException
+   {  delegate.cancel(exec);
+   }
+
+   @Override
+   QueueDepth getQueueDepth(String prefix) throws IOException
+   {  return delegate.getQueueDepth(prefix);
+   }
+
+   @Override
+   public Set<String> getQueuedJobNames(String prefix) throws IOException
+   {  return delegate.getQueuedJobNames(prefix);
+   }
+
+   @Override
+   public void waitForCompletion() throws IOException
+   {  delegate.waitForCompletion();
+   }
+
+   /**
+    * Block until one more job may be submitted.
+    */
+   private void admit() throws IOException
+   {  long pollMS = MINPollMS;
+      while(true)
+      {  if(hasRoom()) return;
+
+         // the batch is full: submit it and continue in a new part
+         if(inBatch > 0)
+         {  flushBatch();
+            delegate.openBatch(batchName + "_" + (++batchPart));
+            continue;
+         }
+
+         try
+         {  Thread.sleep(pollMS);
+         } catch (InterruptedException e)
+         {  throw new Error("Interrupted while waiting for the queue to drain", e);
+         }
+
+         int before = observedInFlight + submittedSinceRefresh;
+         refresh();
+         // back off while nothing finishes to avoid hammering the scheduler
+         if(observedInFlight >= before)
+            pollMS = Math.min(pollMS * 2, MAXPollMS);
+         else
+            pollMS = MINPollMS;
+      }
+   }
+
+   private boolean hasRoom() throws IOException
+   {  if(observedInFlight + submittedSinceRefresh + inBatch < window
+         && observedHeld < maxHeld)
+         return true;
+
+      // estimate is full, check how much has finished in the meantime
+      if(submittedSinceRefresh > 0)
+         refresh();
+
+      return observedInFlight + submittedSinceRefresh + inBatch < window
+          && observedHeld < maxHeld;
+   }
+
+   private void refresh() throws IOException
+   {  QueueDepth depth = delegate.getQueueDepth(namePrefix);
+      long now = System.currentTimeMillis();
+
+      if(lastRefreshMS > 0 && now > lastRefreshMS)
+      {  int finished = observedInFlight + submittedSinceRefresh - depth.inFlight;
+         if(finished < 0) finished = 0;
+         double rate = finished * 1000D / (now - lastRefreshMS);
+
+         // keep the full window until the first jobs have finished
+         if(completionRate < 0 && finished > 0)
+            completionRate = rate;
+         else if(completionRate >= 0)
+            completionRate = 0.7 * completionRate + 0.3 * rate;
+
+         if(completionRate > 0)
+            window = (int)Math.min(maxInFlight,
+                                   Math.max(MINWindow, completionRate * HORIZONSec));
+      }
+
+      observedInFlight = depth.inFlight;
+      observedHeld = depth.held;
+      submittedSinceRefresh = 0;
+      lastRefreshMS = now;
+
+      if(Settings.isDebugMode())
+         System.err.printf("queue: inFlight=%d held=%d window=%d rate=%.3g/s\n",
+                  observedInFlight, observedHeld, window, completionRate);
+   }
+}
@@ -20,21 +20,69 @@ package autocorrelator.ac;
 
 import java.io.File;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.TreeSet;
 
 
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.input.SAXBuilder;
 
-import autocorrelator.ac.JobDescription.Design;
 import autocorrelator.apps.*;
 
 public class AutoCorrelator
 {  private static final String EXPLAIN=
-      "autoComrelator [-debug][-waitForKey] [-queOpts 'opts'] -prefix namePrefix xmlConfig\n";
+      "autoComrelator [-debug][-waitForKey][-dryRun] [-queOpts 'opts'] [-executor sge|local]\n"
+     +"   [-nThreads n] [-arrayJobs] [-maxInFlight n [-maxHeld n]]\n"
+     +"   [-designStart n] [-designEnd n] [-seed n]\n"
+     +"   [-subsets f1,f2,.. [-keepFraction 0.33] [-stratumTag tag] [-rescanSeconds 60]]\n"
+     +"   [-pruneAfter n [-prunePercentile 50]]\n"
+     +"   -prefix namePrefix xmlConfig\n"
+     +"  executor: sge submits to the grid engine (default), local runs the jobs\n"
+     +"            on this machine using nThreads (default: number of cpus).\n"
+     +"  arrayJobs: submit all executions of a job with the same parent as one\n"
+     +"            grid engine array job.\n"
+     +"  maxInFlight: maximum number of unfinished jobs of this experiment,\n"
+     +"            further jobs are submitted as earlier jobs finish.\n"
+     +"  maxHeld:  maximum number of jobs waiting on their parent job.\n"
+     +"  designStart, designEnd: only submit the executions of the top level\n"
+     +"            jobs numbered designStart to designEnd-1, allows splitting\n"
+     +"            one experiment across several hosts. Each part uses the\n"
+     +"            prefix namePrefix_dDesignStart for its jobs and journal,\n"
+     +"            the store and correlation file are shared.\n"
+     +"  seed:     seed for random designs, must be the same for all parts of\n"
+     +"            a split experiment (default: current time).\n"
+     +"  dryRun:   do not submit, print the number of jobs per type and their\n"
+     +"            estimated cpu hours, disk usage and wall time.\n"
+     +"  subsets:  successive halving: run the design on the fraction f1 of the\n"
+     +"            molecules, wait for the qualities and run only the best\n"
+     +"            keepFraction of the models on the fraction f2 and so on, the\n"
+     +"            survivors of the last subset are run on all molecules. The\n"
+     +"            subsets are stratified by the sd tag stratumTag if given.\n"
+     +"  pruneAfter: once n models below an execution have a quality and the\n"
+     +"            best is below the prunePercentile of all qualities, cancel\n"
+     +"            its remaining jobs and submit no more below it. Use with\n"
+     +"            -maxInFlight so that not all jobs are submitted at once.\n"
+     +"  If namePrefix.journal exists from an earlier run with the same prefix\n"
+     +"  the run is resumed: finished executions and executions still queued are\n"
+     +"  not submitted again.\n";
+   
+   /** maximum number of executions submitted together as one batch */
+   private static final int MAXBatchSize = 1000;
+   /** maximum number of job sets waiting to be run, see runJobSets() */
+   private static final int MAXPendingSets = 100000;
+   
+   private BigInteger designStart = null;
+   private BigInteger designEnd = null;
+   private long designSeed = System.currentTimeMillis();
+   private JobDag dag;
+   private SuccessiveHalving halving = null;
+   private PruningPolicy pruning = null;
+   /** number of job sets created, orders job sets with equal critical path */
+   private long nJobSets = 0;
    
    @SuppressWarnings("unchecked")
    public AutoCorrelator(Element rootElement)
@@ -45,8 +93,11 @@ public class AutoCorrelator
    public static void main(String[] args)
    throws IOException, Exception
    {  CommandLineParser cParser;
-      String[] modes    = {"-debug", "-waitForKey"};
-      String[] parms    = {"-prefix", "-queOpts"};
+      String[] modes    = {"-debug", "-waitForKey", "-arrayJobs", "-dryRun"};
+      String[] parms    = {"-prefix", "-queOpts", "-executor", "-nThreads", 
+                           "-maxInFlight", "-maxHeld", "-designStart", "-designEnd",
+                           "-seed", "-subsets", "-keepFraction", "-stratumTag",
+                           "-rescanSeconds", "-pruneAfter", "-prunePercentile"};
       String[] reqParms = {"-prefix"};
       
       cParser = new CommandLineParser(EXPLAIN,0,0,args,modes,parms,reqParms);
@@ -57,8 +108,14 @@ public class AutoCorrelator
       }
       
       Settings.setQueueOptions(cParser.getValue("-queOpts"));
-      Settings.setNamePrefix(cParser.getValue("-prefix"));
+      // parts of a split experiment must not share execution ids and files
+      if(cParser.wasGiven("-designStart"))
+         Settings.setNamePrefix(cParser.getValue("-prefix"), 
+                  new BigInteger(cParser.getValue("-designStart")).toString());
+      else
+         Settings.setNamePrefix(cParser.getValue("-prefix"));
       Settings.setDebugMode(cParser.wasGiven("-debug"));
+      Settings.setJobExecutor(createJobExecutor(cParser));
 
       if( cParser.wasGiven("-waitForKey") )
       {  System.err.println("You may now start the debug then press return:");
@@ -70,10 +127,91 @@ public class AutoCorrelator
       Document xmlDoc = builder.build(new File(restArgs[0]));
       
       AutoCorrelator aCorrelator = new AutoCorrelator(xmlDoc.getRootElement());
+      if(cParser.wasGiven("-designStart"))
+         aCorrelator.designStart = new BigInteger(cParser.getValue("-designStart"));
+      if(cParser.wasGiven("-designEnd"))
+         aCorrelator.designEnd = new BigInteger(cParser.getValue("-designEnd"));
+      if(cParser.wasGiven("-seed"))
+         aCorrelator.designSeed = Long.parseLong(cParser.getValue("-seed"));
+      else if(aCorrelator.designStart != null || aCorrelator.designEnd != null)
+         System.err.println("Warning: split experiment without -seed, random designs will differ");
+      
+      if(cParser.wasGiven("-dryRun"))
+      {  int nSlots = 0;
+         if(cParser.wasGiven("-maxInFlight"))
+            nSlots = Integer.parseInt(cParser.getValue("-maxInFlight"));
+         aCorrelator.printCostEstimate(nSlots);
+         return;
+      }
+      
+      RunJournal journal = Settings.openJournal();
+      // a resumed run must enumerate the same random designs
+      long seed = journal.getSeed(aCorrelator.designSeed);
+      if(seed != aCorrelator.designSeed && cParser.wasGiven("-seed"))
+         System.err.println("Warning: using seed " + seed + " of the resumed run");
+      aCorrelator.designSeed = seed;
+      
+      if(cParser.wasGiven("-pruneAfter"))
+      {  double percentile = 50;
+         if(cParser.wasGiven("-prunePercentile"))
+            percentile = Double.parseDouble(cParser.getValue("-prunePercentile"));
+         aCorrelator.pruning = new PruningPolicy(
+                  Integer.parseInt(cParser.getValue("-pruneAfter")), percentile);
+      }
+      
+      if(cParser.wasGiven("-subsets"))
+      {  String[] fracStr = cParser.getValue("-subsets").split(",");
+         double[] fractions = new double[fracStr.length];
+         for(int i=0; i<fracStr.length; i++)
+            fractions[i] = Double.parseDouble(fracStr[i]);
+         double keepFraction = 1D/3;
+         if(cParser.wasGiven("-keepFraction"))
+            keepFraction = Double.parseDouble(cParser.getValue("-keepFraction"));
+         long rescanSec = 60;
+         if(cParser.wasGiven("-rescanSeconds"))
+            rescanSec = Long.parseLong(cParser.getValue("-rescanSeconds"));
+         aCorrelator.halving = new SuccessiveHalving(fractions, keepFraction, 
+                  cParser.getValue("-stratumTag"), seed, rescanSec * 1000,
+                  aCorrelator.pruning);
+      }
+      
       aCorrelator.run();
+      if(journal.isResuming())
+         System.err.println("Resumed " + journal.getSummary());
+      if(aCorrelator.pruning != null)
+         System.err.println(aCorrelator.pruning.getSummary());
+      Settings.getJobExecutor().waitForCompletion();
+      journal.close();
+   }
+
+   /**
+    * Create the JobExecutor selected by the -executor and -nThreads options.
+    * 
+    * If -maxInFlight is given the executor is wrapped in an 
+    * {@link AdmissionController}, this requires the name prefix to be set.
+    */
+   public static JobExecutor createJobExecutor(CommandLineParser cParser)
+   throws IOException
+   {  int nThreads = 0;
+      if(cParser.wasGiven("-nThreads"))
+         nThreads = Integer.parseInt(cParser.getValue("-nThreads"));
+
+      JobExecutor executor = JobExecutor.factory(cParser.getValue("-executor"), 
+                                 nThreads, cParser.wasGiven("-arrayJobs"));
+      
+      if(cParser.wasGiven("-maxInFlight"))
+      {  int maxInFlight = Integer.parseInt(cParser.getValue("-maxInFlight"));
+         int maxHeld = maxInFlight;
+         if(cParser.wasGiven("-maxHeld"))
+            maxHeld = Integer.parseInt(cParser.getValue("-maxHeld"));
+         
+         executor = new AdmissionController(executor, Settings.getNamePrefix(), 
+                                            maxInFlight, maxHeld);
+      }
+      return executor;
    }
    
-   public void run() throws DAException, SQLException, IOException
+   public void run() throws DAException, SQLException, IOException, InterruptedException
    {  
       System.out.println("Running");
       
@@ -88,162 +226,149 @@ public class AutoCorrelator
       JobExecution rootExecution = new JobExecution("root" , rootId, null, null, 
                new ParameterValue[0], moleculeSource.getMoleculeFileName(), 0);
       System.out.println("Running Jobs");
-      for(TaskDescription jd : Settings.getConfigFile().getJobList())
-         runJobSet((JobDescription)jd, rootExecution);
+      dag = new JobDag(Settings.getConfigFile().getJobList(), 
+                       Settings.getRuntimeEstimator());
+      if(halving != null)
+      {  halving.run(rootExecution, new SuccessiveHalving.DesignRunner()
+               {  public void runDesign(JobExecution root) 
+                  throws DAException, SQLException, IOException
+                  {  runJobSets(dag.getRootsByPriority(), root);
+                  }
+               });
+         return;
+      }
+      
+      runJobSets(dag.getRootsByPriority(), rootExecution);
    }  
 
    /**
-    * Recursevly run job and child jobs as described in the JobDescription.
+    * Print the cost of running this experiment without submitting any job.
+    * 
+    * @param nSlots number of jobs running at the same time or 0 if unknown.
     */
-   private List<JobExecution> runJobSet(JobDescription jd, JobExecution parent) 
-   throws DAException, SQLException, IOException
-   {  Parameter[] params = jd.getParameter();
-      int count = 0;
-      if(params.length > 0)
-      {  if(jd.getExperimentDesign() == Design.fullFactorial)
-         {  return combinatorialRun(jd, parent, params);
-         }else if(jd.getExperimentDesign() == Design.singleParameter)
-         {  return singleParameterVariationRun(jd, parent, params);
-         }else if(jd.getExperimentDesign() == Design.random)
-         {  return randomVariationRun(jd, parent, params);
-         }
-      }
-      count++;
-      List<JobExecution> jList = new ArrayList<JobExecution>(1);
-      jList.addAll(runSingleJob(jd, new ParameterValue[0], parent));
-      return jList;
+   public void printCostEstimate(int nSlots) throws IOException
+   {  JobDag jobDag = new JobDag(Settings.getConfigFile().getJobList(), 
+                                 Settings.getRuntimeEstimator());
+      new CostEstimate(jobDag, Settings.getRuntimeEstimator(), designStart, designEnd)
+         .print(System.out, nSlots);
    }
 
-
    /**
-    * Execute Job with all combinations of parametervalues.
-    * @return List of childJobs executed (only the direct children).
-    * @throws SQLException 
-    * @throws DAException 
-    * @throws IOException 
+    * Run the jobs jds and their child jobs below parent.
+    * 
+    * A job set are the executions of one job for one parent execution. Job
+    * sets are run longest remaining critical path first across all parent 
+    * executions, so that in a chain like omega2 -> fred -> R all dockings are
+    * queued before the rescoring of the first docking. Job sets with the same
+    * critical path are run in the order they were created. While more than 
+    * MAXPendingSets are waiting the shortest are run first to bound memory.
     */
-   private List<JobExecution> combinatorialRun(
-                        JobDescription jd, JobExecution parent, Parameter[] params) 
-                        throws DAException, SQLException, IOException
-   {  int[] paramLength = new int[params.length];
-      for(int i=0; i< paramLength.length; i++)
-         paramLength[i] = params[i].getNValues();
-      int count = 0;
-      
-      // use MixedBasednumberGenerator to enumerate all combination of parameters;
-      MixedBaseNumberConverter mbn = new MixedBaseNumberConverter(paramLength);
-      List<JobExecution> jList = new ArrayList<JobExecution>((int)mbn.getMaxValue()+1);
-
-      for(long paramEnum = 0; paramEnum <= mbn.getMaxValue(); paramEnum++)
-      {  int[] paramIndexes = mbn.getMixedBasedDigits(paramEnum);
-         ParameterValue[] paramVals = new ParameterValue[params.length];
-         for(int pPos = 0; pPos<params.length; pPos++)
-         {  paramVals[pPos] = new ParameterValue(
-                     params[pPos],  params[pPos].getValue(paramIndexes[pPos]));
-            
-         }
-         count++;
-         jList.addAll(runSingleJob(jd, paramVals, parent));
-      }
+   private void runJobSets(List<JobDescription> jds, JobExecution parent) 
+   throws DAException, SQLException, IOException
+   {  TreeSet<PendingJobSet> pending = new TreeSet<PendingJobSet>();
+      for(JobDescription jd : jds)
+         pending.add(new PendingJobSet(jd, parent));
       
-      return jList;
+      while(! pending.isEmpty())
+      {  PendingJobSet set;
+         if(pending.size() > MAXPendingSets)
+            set = pending.pollLast();
+         else
+            set = pending.pollFirst();
+         
+         if(runBatch(set, pending))
+            pending.add(set);
+      }
    }
-
+   
    /**
-    * Executes a random subset of all the possible combinations of ParameterValues.
-    * @throws SQLException 
-    * @throws DAException 
-    * @throws IOException 
+    * Submit the next batch of at most MAXBatchSize executions of the job set
+    * and add the job sets of their child jobs to pending.
+    * 
+    * The executions of a job set are enumerated lazily by its DesignEnumerator.
+    * Executions found in the journal of a resumed run are not submitted again.
+    * The enumeration stops when the {@link PruningPolicy} prunes the parent.
+    * 
+    * @return true if the job set has more executions.
     */
-   private List<JobExecution> randomVariationRun(JobDescription jd, 
-                                       JobExecution parent, Parameter[] params) 
+   private boolean runBatch(PendingJobSet set, TreeSet<PendingJobSet> pending) 
    throws DAException, SQLException, IOException
-   {  int[] paramLength = new int[params.length];
-      for(int i=0; i< paramLength.length; i++)
-         paramLength[i] = params[i].getNValues();
-      int count = 0;
-      // use MixedBasednumberGenerator to enumerate all combination of parameters;
-      MixedBaseNumberConverter mbn = new MixedBaseNumberConverter(paramLength);
-      System.out.println(mbn.getMaxValue()+1 + " " + params.length);
-      long numExecutions = jd.getNumberOfExecutions();
-      CircularRandomNumberGenerator rand = 
-                        new CircularRandomNumberGenerator((long)mbn.getMaxValue()+1);
-      List<JobExecution> jList = new ArrayList<JobExecution>((int)numExecutions);
-
-      for(long paramEnum = 0; paramEnum < numExecutions; paramEnum++)
-      {  int[] paramIndexes = mbn.getMixedBasedDigits(rand.nextValue());
-         ParameterValue[] paramVals = new ParameterValue[params.length];
-         for(int pPos = 0; pPos<params.length; pPos++)
-         {  paramVals[pPos] = new ParameterValue(
-                     params[pPos],  params[pPos].getValue(paramIndexes[pPos]));
-            
-         }
-         count++;
-         jList.addAll(runSingleJob(jd, paramVals, parent));
-      }
+   {  JobExecutor executor = Settings.getJobExecutor();
+      RunJournal journal = Settings.getJournal();
+      JobDescription jd = set.jd;
+      JobExecution parent = set.parent;
+      if(isPruned(parent)) return false;
       
-      return jList;
-   }
-
-
-   /**
-    * Vary all variable in turn keeping all the others at their default values.
-    * @throws SQLException 
-    * @throws DAException 
-    * @throws IOException 
-    */
-   private List<JobExecution> singleParameterVariationRun(JobDescription jd, 
-                                       JobExecution parent, Parameter[] params) 
-                                       throws DAException, SQLException, IOException
-   {  List<JobExecution> jList = new ArrayList<JobExecution>();
-      int count = 0;
-      for(int varParamIdx=0; varParamIdx< params.length; varParamIdx++)
-      {  Parameter varParam = params[varParamIdx];
-         for(int variant=0; variant<varParam.getNValues(); variant++)
-         {  ParameterValue[] paramVals = new ParameterValue[params.length];
-            paramVals[varParamIdx] = 
-                  new ParameterValue(varParam, varParam.getValue(variant));
-            
-            for(int statParam = 0; statParam<params.length; statParam++)
-            {  if(statParam == varParamIdx) continue;
-               paramVals[statParam] = params[statParam].getDefaultValue();
-            }
-            count++;            
-            jList.addAll(runSingleJob(jd, paramVals, parent));
+      if(set.design == null)
+      {  // only the top level designs are split by -designStart and -designEnd
+         BigInteger start = null;
+         BigInteger end = null;
+         if(jd.getParent() == null)
+         {  start = designStart;
+            end = designEnd;
          }
+         long seed = designSeed * 31 + ExecutionCache.getKey(parent).hashCode();
+         set.design = DesignEnumerator.factory(jd, start, end, seed);
       }
-      return jList;
-   }
-
-   /**
-    * Execute a single job and all its children.
-    * @throws SQLException 
-    * @throws DAException 
-    * @throws IOException 
-    */
-   private List<JobExecution> runSingleJob(JobDescription jd, ParameterValue[] paramVals,
-            JobExecution parent) throws DAException, SQLException, IOException
-   {  JobExecution computeJob = executeJob(jd, paramVals, parent);
-      ArrayList<JobExecution> dependend = new ArrayList<JobExecution>();
-      
-      JobDescription[] childJobs = jd.getChildJobs();
-      for(int i=0; i<childJobs.length; i++)
-      {  JobDescription child = childJobs[i];
-         dependend.addAll(runJobSet(child, computeJob));
-      }
-      
-      dependend.add(computeJob);
+      DesignEnumerator design = set.design;
+      if(! design.hasNext()) return false;
       
-      //JobExecution jobExec = null;//executeCleanUpJob(jd, paramVals, dependend.toArray(new JobExecution[dependend.size()]));
+      String batchName = Settings.getNamePrefix() + jd.getType() 
+                       + 'A' + Settings.getNextExecutionCount();
+      List<JobExecution> jList = new ArrayList<JobExecution>();
       
+      executor.openBatch(batchName);
+      while(design.hasNext() && jList.size() < MAXBatchSize && ! isPruned(parent))
+      {  ParameterValue[] paramVals = design.next();
+         JobExecution exec = null;
+         if(journal != null) exec = journal.resume(parent, jd, paramVals);
+         if(exec == null) exec = executeJob(jd, paramVals, parent);
+         if(pruning != null) pruning.addSubmitted(exec);
+         jList.add(exec);
+      }
+      executor.closeBatch();
       
-      return dependend;
+      for(JobExecution computeJob : jList)
+      {  for(JobDescription child : jd.getChildJobs())
+            pending.add(new PendingJobSet(child, computeJob));
+      }
+      return design.hasNext();
+   }
+
+   private boolean isPruned(JobExecution exec) throws IOException
+   {  return pruning != null && pruning.isPruned(exec);
    }
 
-   
    private JobExecution executeJob(JobDescription jd, ParameterValue[] paramVals, 
                                    JobExecution parent) throws IOException
    {  JobRunner runner      = jd.createJobRunner(parent);
       return runner.executeJob(jd, paramVals, parent, 0, "");
    }
+   
+   
+   /**
+    * The executions of one job for one parent execution, ordered longest
+    * critical path first.
+    */
+   private class PendingJobSet implements Comparable<PendingJobSet>
+   {  final JobDescription jd;
+      final JobExecution parent;
+      final double criticalPath;
+      final long order;
+      /** created when the first batch is run */
+      DesignEnumerator design = null;
+      
+      PendingJobSet(JobDescription jd, JobExecution parent)
+      {  this.jd = jd;
+         this.parent = parent;
+         this.criticalPath = dag.getCriticalPath(jd);
+         this.order = nJobSets++;
+      }
+
+      public int compareTo(PendingJobSet o)
+      {  int cmp = -Double.compare(criticalPath, o.criticalPath);
+         if(cmp != 0) return cmp;
+         return order < o.order ? -1 : (order == o.order ? 0 : 1);
+      }
+   }
 }
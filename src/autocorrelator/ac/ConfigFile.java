@@ -18,10 +18,13 @@ package autocorrelator.ac;
 
 
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.jdom.Element;
 
@@ -32,6 +35,7 @@ public class ConfigFile
    private final List<ReportDescription> finalList = new ArrayList<ReportDescription>();
    private final Map<String,JobDescription> idToJobDescMap; 
    private final Map<String,Parameter> idToJobParameterMap;
+   private boolean useToolDaemon = false;
    
    public ConfigFile()
    {  idToJobDescMap = new HashMap<String, JobDescription>();
@@ -43,15 +47,17 @@ public class ConfigFile
    {  assert molSourceDesc == null && jobList.size() == 0
          : "ConfigFile may only be initialized once";
    
+      useToolDaemon = "true".equals(rootElement.getAttributeValue("toolDaemon"));
+
       Element srcEl = rootElement.getChild("load");
       molSourceDesc = new MoleculeSourceDescription(srcEl);
       
       for( Element el: (List<Element>)(rootElement.getChildren("job")))
          jobList.add(new JobDescription(el, null));
    
-      long posibilities = 1;
+      BigInteger posibilities = BigInteger.ONE;
       for(TaskDescription jd : jobList)
-         posibilities *= jd.getPossibilities();
+         posibilities = posibilities.multiply(jd.getPossibilityCount());
       
       System.err.printf("Read config file. It has %d possible models\n", posibilities);
       
@@ -68,6 +74,14 @@ public class ConfigFile
    {  return jobList;
    }
 
+   /**
+    * @return true if the root element has toolDaemon='true': the R job scripts
+    *         then start the ToolDaemon on their host, see exe/acToolDaemon.csh.
+    */
+   public boolean useToolDaemon()
+   {  return useToolDaemon;
+   }
+
    public MoleculeSourceDescription getMolSourceDesc()
    {  return molSourceDesc;
    }
@@ -107,4 +121,14 @@ public class ConfigFile
    public TaskDescription getJobDescription(String id)
    {  return idToJobDescMap.get(id);
    }
+
+   /**
+    * @return the types of all jobs, they are part of the queue job names.
+    */
+   public Set<String> getJobTypes()
+   {  Set<String> types = new HashSet<String>();
+      for(JobDescription jd : idToJobDescMap.values())
+         types.add(jd.getType());
+      return types;
+   }
 }
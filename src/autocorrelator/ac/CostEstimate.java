@@ -0,0 +1,100 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cost of an experiment computed without submitting anything: the number of
+ * executions per job type produced by the designs of the job tree, multiplied
+ * by the runtime and output size per job type learned from earlier runs, see
+ * {@link RuntimeEstimator}.
+ *
+ * Every execution of a job runs each of its child jobs with the complete
+ * design of the child, so the number of executions of a job is the product of
+ * the design sizes along its path from the top level job.
+ */
+public class CostEstimate
+{  private final RuntimeEstimator estimator;
+   private final Map<String,BigInteger> jobsByType = new TreeMap<String,BigInteger>();
+   private double criticalPathSec = 0;
+
+   /**
+    * @param start first top level execution as given by -designStart or null.
+    * @param end first top level execution not run as given by -designEnd or null.
+    */
+   public CostEstimate(JobDag dag, RuntimeEstimator estimator,
+                       BigInteger start, BigInteger end)
+   {  this.estimator = estimator;
+
+      for(JobDescription root : dag.getRootsByPriority())
+      {  add(root, DesignEnumerator.getSize(root, start, end));
+         criticalPathSec = Math.max(criticalPathSec, dag.getCriticalPath(root));
+      }
+   }
+
+   private void add(JobDescription jd, BigInteger nExecutions)
+   {  BigInteger n = jobsByType.get(jd.getType());
+      jobsByType.put(jd.getType(), n == null ? nExecutions : n.add(nExecutions));
+
+      for(JobDescription child : jd.getChildJobs())
+         add(child, nExecutions.multiply(DesignEnumerator.getSize(child, null, null)));
+   }
+
+   /**
+    * @param nSlots number of jobs which may run at the same time, used to
+    *        bound the wall time, 0 if unknown.
+    */
+   public void print(PrintStream out, int nSlots)
+   {  out.println("type\tjobs\truntime[s]\tcpu[h]\tdisk[GB]");
+
+      BigInteger totalJobs = BigInteger.ZERO;
+      double totalSec = 0;
+      double totalBytes = 0;
+      boolean sizeUnknown = false;
+      for(Map.Entry<String,BigInteger> e : jobsByType.entrySet())
+      {  String type = e.getKey();
+         double nJobs = e.getValue().doubleValue();
+         double sec = estimator.getEstimate(type);
+         double bytes = estimator.getOutBytes(type);
+
+         out.printf("%s\t%d\t%.0f\t%.1f\t", type, e.getValue(), sec, nJobs * sec / 3600);
+         if(bytes < 0)
+         {  out.println("?");
+            sizeUnknown = true;
+         }else
+         {  out.printf("%.2f\n", nJobs * bytes / 1e9);
+            totalBytes += nJobs * bytes;
+         }
+         totalJobs = totalJobs.add(e.getValue());
+         totalSec += nJobs * sec;
+      }
+      out.printf("total\t%d\t\t%.1f\t%.2f%s\n", totalJobs, totalSec / 3600,
+                 totalBytes / 1e9, sizeUnknown ? "+?" : "");
+
+      out.printf("critical path: %.1fh\n", criticalPathSec / 3600);
+      if(nSlots > 0)
+         out.printf("wall time with %d slots: at least %.1fh\n", nSlots,
+                    Math.max(criticalPathSec, totalSec / nSlots) / 3600);
+      if(sizeUnknown)
+         out.println("disk: ? no telemetry record of this job type yet");
+   }
+}
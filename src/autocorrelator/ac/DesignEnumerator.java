@@ -0,0 +1,482 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import autocorrelator.ac.JobDescription.Design;
+
+/**
+ * Lazily enumerates the parameter value combinations of the experimental
+ * design of a job.
+ *
+ * The combinations are numbered from 0, start and end select a slice of them
+ * so that one design can be split across several submitting processes.
+ */
+public abstract class DesignEnumerator
+{  protected final Parameter[] params;
+
+   DesignEnumerator(Parameter[] params)
+   {  this.params = params;
+   }
+
+   /**
+    * @param start first combination to return, null for 0.
+    * @param end first combination not to return, null for all.
+    * @param seed seed for random designs, the same seed yields the same
+    *        combinations.
+    */
+   public static DesignEnumerator factory(JobDescription jd, BigInteger start,
+                                          BigInteger end, long seed)
+   {  Parameter[] params = jd.getParameter();
+      if(params.length == 0)
+         return new FullFactorial(params, start, end);
+
+      Design design = jd.getExperimentDesign();
+      if(design == Design.fullFactorial)
+         return new FullFactorial(params, start, end);
+      if(design == Design.singleParameter)
+         return new SingleParameter(params, start, end);
+      if(design == Design.random)
+         return new RandomSample(params, jd.getNumberOfExecutions(), start, end, seed);
+      if(design == Design.latinHypercube)
+         return new LatinHypercube(params, jd.getNumberOfExecutions(), start, end, seed);
+      if(design == Design.sobol)
+         return new Sobol(params, jd.getNumberOfExecutions(), start, end, seed);
+      if(design == Design.orthogonalArray)
+      {  if(OrthogonalArray.isLargerThanFullFactorial(params))
+            return new FullFactorial(params, start, end);
+         return new OrthogonalArray(params, start, end, seed);
+      }
+
+      throw new Error("Unknown experimental design: " + design);
+   }
+
+   /**
+    * @return the number of combinations the enumerator created by
+    *         {@link #factory} with the same arguments returns.
+    */
+   public static BigInteger getSize(JobDescription jd, BigInteger start, BigInteger end)
+   {  Parameter[] params = jd.getParameter();
+      Design design = jd.getExperimentDesign();
+      BigInteger total;
+      if(params.length == 0 || design == Design.fullFactorial
+         || (design == Design.orthogonalArray 
+             && OrthogonalArray.isLargerThanFullFactorial(params)))
+      {  total = getFullFactorialSize(params);
+      }else if(design == Design.singleParameter)
+      {  long sum = 0;
+         for(Parameter p : params)
+            sum += p.getNValues();
+         total = BigInteger.valueOf(sum);
+      }else if(design == Design.random || design == Design.latinHypercube
+               || design == Design.sobol)
+      {  total = BigInteger.valueOf(jd.getNumberOfExecutions());
+      }else if(design == Design.orthogonalArray)
+      {  long q = OrthogonalArray.getOrder(params);
+         total = BigInteger.valueOf(q * q);
+      }else
+      {  throw new Error("Unknown experimental design: " + design);
+      }
+
+      if(end != null) total = total.min(end);
+      if(start != null) total = total.subtract(start.max(BigInteger.ZERO));
+      return total.max(BigInteger.ZERO);
+   }
+
+   public abstract boolean hasNext();
+
+   /**
+    * @return a new array with the values of the next combination.
+    */
+   public abstract ParameterValue[] next();
+
+   protected ParameterValue[] toParameterValues(int[] paramIndexes)
+   {  ParameterValue[] paramVals = new ParameterValue[params.length];
+      for(int pPos = 0; pPos<params.length; pPos++)
+      {  paramVals[pPos] = new ParameterValue(
+                  params[pPos],  params[pPos].getValue(paramIndexes[pPos]));
+      }
+      return paramVals;
+   }
+
+   private static BigInteger getFullFactorialSize(Parameter[] params)
+   {  BigInteger total = BigInteger.ONE;
+      for(Parameter p : params)
+         total = total.multiply(BigInteger.valueOf(p.getNValues()));
+      return total;
+   }
+
+   /**
+    * @return positions of the parameters with more than one value, parameters
+    *         with a single value do not need a dimension of a design.
+    */
+   protected static int[] getVaried(Parameter[] params)
+   {  int n = 0;
+      for(Parameter p : params)
+         if(p.getNValues() > 1) n++;
+
+      int[] varied = new int[n];
+      n = 0;
+      for(int i=0; i<params.length; i++)
+         if(params[i].getNValues() > 1) varied[n++] = i;
+      return varied;
+   }
+
+   protected static int[] getBases(Parameter[] params)
+   {  int[] paramLength = new int[params.length];
+      for(int i=0; i< paramLength.length; i++)
+         paramLength[i] = params[i].getNValues();
+      return paramLength;
+   }
+
+   /**
+    * @return the index of the value of param which covers x in [0,1).
+    */
+   protected static int toValueIndex(Parameter param, double x)
+   {  return Math.min(param.getNValues()-1, (int)(x * param.getNValues()));
+   }
+
+   private static long toLong(BigInteger num, long defaultVal)
+   {  if(num == null) return defaultVal;
+      if(num.bitLength() >= 64) return Long.MAX_VALUE;
+      return num.longValue();
+   }
+
+
+   /**
+    * All combinations of parametervalues.
+    */
+   static class FullFactorial extends DesignEnumerator
+   {  private final DesignSpaceIterator it;
+
+      FullFactorial(Parameter[] params, BigInteger start, BigInteger end)
+      {  super(params);
+         it = new DesignSpaceIterator(getBases(params), start, end);
+      }
+
+      @Override
+      public boolean hasNext()
+      {  return it.hasNext();
+      }
+
+      @Override
+      public ParameterValue[] next()
+      {  return toParameterValues(it.next());
+      }
+   }
+
+
+   /**
+    * Vary all variable in turn keeping all the others at their default values.
+    */
+   static class SingleParameter extends DesignEnumerator
+   {  private int varParamIdx = 0;
+      private int variant = 0;
+      private long remaining;
+
+      SingleParameter(Parameter[] params, BigInteger start, BigInteger end)
+      {  super(params);
+         long total = 0;
+         for(Parameter p : params)
+            total += p.getNValues();
+
+         long first = Math.max(0, toLong(start, 0));
+         long last  = Math.min(total, toLong(end, total));
+         remaining = Math.max(0, last - first);
+
+         // skip leading parameters without values
+         while(varParamIdx < params.length && params[varParamIdx].getNValues() == 0)
+            varParamIdx++;
+
+         for(long i=0; i<first && remaining > 0; i++)
+            advance();
+      }
+
+      private void advance()
+      {  variant++;
+         while(varParamIdx < params.length && variant >= params[varParamIdx].getNValues())
+         {  varParamIdx++;
+            variant = 0;
+         }
+      }
+
+      @Override
+      public boolean hasNext()
+      {  return remaining > 0;
+      }
+
+      @Override
+      public ParameterValue[] next()
+      {  Parameter varParam = params[varParamIdx];
+         ParameterValue[] paramVals = new ParameterValue[params.length];
+         paramVals[varParamIdx] =
+               new ParameterValue(varParam, varParam.getValue(variant));
+
+         for(int statParam = 0; statParam<params.length; statParam++)
+         {  if(statParam == varParamIdx) continue;
+            paramVals[statParam] = params[statParam].getDefaultValue();
+         }
+
+         remaining--;
+         advance();
+         return paramVals;
+      }
+   }
+
+
+   /**
+    * numberOfExecutions random combinations of parametervalues.
+    *
+    * If the space fits into a long combination i is position i of a
+    * {@link FeistelPermutation} of the space so that no combination is
+    * repeated, larger spaces draw every digit from a generator seeded with
+    * seed and i, repetitions are then extremely unlikely. Either way any slice
+    * starts without drawing the combinations before it, and a larger
+    * numberOfExecutions with the same seed extends the design.
+    */
+   static class RandomSample extends DesignEnumerator
+   {  private final MixedBaseNumberConverter mbn;
+      private final int[] digits;
+      private final FeistelPermutation perm;
+      private final long seed;
+      private long next;
+      private final long last;
+
+      RandomSample(Parameter[] params, long numExecutions,
+                   BigInteger start, BigInteger end, long seed)
+      {  super(params);
+         int[] bases = getBases(params);
+         mbn = new MixedBaseNumberConverter(bases);
+         digits = new int[bases.length];
+
+         this.seed = seed;
+         if(mbn.fitsLong())
+            perm = new FeistelPermutation(mbn.getMaxValue()+1, seed);
+         else
+            perm = null;
+
+         last = Math.min(numExecutions, toLong(end, numExecutions));
+         next = Math.max(0, Math.min(last, toLong(start, 0)));
+      }
+
+      private int[] draw(long index)
+      {  // the combinations repeat if there are more executions than combinations
+         if(perm != null)
+            return mbn.getMixedBasedDigits(perm.get(index % (mbn.getMaxValue()+1)), digits);
+
+         Random rand = new Random(seed ^ (index * 0x9e3779b97f4a7c15L));
+         for(int i=0; i<digits.length; i++)
+            digits[i] = rand.nextInt(params[i].getNValues());
+         return digits;
+      }
+
+      @Override
+      public boolean hasNext()
+      {  return next < last;
+      }
+
+      @Override
+      public ParameterValue[] next()
+      {  return toParameterValues(draw(next++));
+      }
+   }
+
+
+   /**
+    * numberOfExecutions combinations where each parameter takes each of
+    * numberOfExecutions equally spaced strata of [0,1) exactly once, the
+    * strata are mapped onto the values of the parameter so that all values
+    * occur about equally often.
+    */
+   static class LatinHypercube extends DesignEnumerator
+   {  /** stratum of each combination by parameter */
+      private final int[][] strata;
+      private final long numExecutions;
+      private int next;
+      private final int last;
+
+      LatinHypercube(Parameter[] params, long numExecutions,
+                     BigInteger start, BigInteger end, long seed)
+      {  super(params);
+         if(numExecutions > Integer.MAX_VALUE)
+            throw new Error("latinHypercube supports at most " + Integer.MAX_VALUE 
+                           +" executions");
+         this.numExecutions = numExecutions;
+         int n = (int)numExecutions;
+
+         Random rand = new Random(seed);
+         strata = new int[params.length][n];
+         for(int p=0; p<params.length; p++)
+         {  int[] perm = strata[p];
+            for(int i=0; i<n; i++)
+               perm[i] = i;
+            for(int i=n-1; i>0; i--)
+            {  int j = rand.nextInt(i+1);
+               int tmp = perm[i]; perm[i] = perm[j]; perm[j] = tmp;
+            }
+         }
+
+         next = (int)Math.max(0, Math.min(n, toLong(start, 0)));
+         last = (int)Math.min(n, toLong(end, n));
+      }
+
+      @Override
+      public boolean hasNext()
+      {  return next < last;
+      }
+
+      @Override
+      public ParameterValue[] next()
+      {  int[] idx = new int[params.length];
+         for(int p=0; p<params.length; p++)
+         {  // centre of the stratum
+            double x = (strata[p][next] + 0.5) / numExecutions;
+            idx[p] = toValueIndex(params[p], x);
+         }
+         next++;
+         return toParameterValues(idx);
+      }
+   }
+
+
+   /**
+    * numberOfExecutions points of a scrambled {@link SobolSequence}, each
+    * coordinate is mapped onto the values of its parameter. Parameters with a
+    * single value do not get a coordinate.
+    */
+   static class Sobol extends DesignEnumerator
+   {  private final SobolSequence sequence;
+      /** parameter of each coordinate */
+      private final int[] varied;
+      private long next;
+      private final long last;
+
+      Sobol(Parameter[] params, long numExecutions,
+            BigInteger start, BigInteger end, long seed)
+      {  super(params);
+         varied = getVaried(params);
+         sequence = new SobolSequence(varied.length, seed);
+         next = Math.max(0, Math.min(numExecutions, toLong(start, 0)));
+         last = Math.min(numExecutions, toLong(end, numExecutions));
+      }
+
+      @Override
+      public boolean hasNext()
+      {  return next < last;
+      }
+
+      @Override
+      public ParameterValue[] next()
+      {  int[] idx = new int[params.length];
+         for(int d=0; d<varied.length; d++)
+         {  int p = varied[d];
+            idx[p] = toValueIndex(params[p], sequence.get(next, d));
+         }
+         next++;
+         return toParameterValues(idx);
+      }
+   }
+
+
+   /**
+    * Bose construction of the orthogonal array OA(q^2, q+1, q, 2): q is the
+    * smallest prime with at least as many levels as the largest parameter has
+    * values and q+1 >= number of parameters. Row (i,j) assigns level j to
+    * the first column and level i + k*j mod q to column k+1, every pair of
+    * columns contains every pair of levels exactly once.
+    *
+    * The levels of every column are permuted at random and mapped onto the
+    * values of the parameter, parameters with fewer values than q then see
+    * some values more often. Parameters with a single value get no column.
+    * The factory uses the full factorial design instead if it has no more
+    * than q^2 rows.
+    */
+   static class OrthogonalArray extends DesignEnumerator
+   {  private final int q;
+      /** parameter of each column */
+      private final int[] varied;
+      /** level permutation by column */
+      private final int[][] levels;
+      private long next;
+      private final long last;
+
+      OrthogonalArray(Parameter[] params, BigInteger start, BigInteger end, long seed)
+      {  super(params);
+         varied = getVaried(params);
+         q = getOrder(params);
+
+         Random rand = new Random(seed);
+         levels = new int[varied.length][q];
+         for(int c=0; c<varied.length; c++)
+         {  int[] perm = levels[c];
+            for(int i=0; i<q; i++)
+               perm[i] = i;
+            for(int i=q-1; i>0; i--)
+            {  int j = rand.nextInt(i+1);
+               int tmp = perm[i]; perm[i] = perm[j]; perm[j] = tmp;
+            }
+         }
+
+         long size = (long)q * q;
+         next = Math.max(0, Math.min(size, toLong(start, 0)));
+         last = Math.min(size, toLong(end, size));
+      }
+
+      /**
+       * @return the number of levels q of the array used for params.
+       */
+      static int getOrder(Parameter[] params)
+      {  int[] varied = getVaried(params);
+         int q = Math.max(2, varied.length-1);
+         for(int p : varied)
+            q = Math.max(q, params[p].getNValues());
+         while(! BigInteger.valueOf(q).isProbablePrime(30))
+            q++;
+         return q;
+      }
+
+      /**
+       * @return true if the array has more rows than the full factorial design.
+       */
+      static boolean isLargerThanFullFactorial(Parameter[] params)
+      {  long q = getOrder(params);
+         return getFullFactorialSize(params).compareTo(BigInteger.valueOf(q * q)) < 0;
+      }
+
+      @Override
+      public boolean hasNext()
+      {  return next < last;
+      }
+
+      @Override
+      public ParameterValue[] next()
+      {  int i = (int)(next / q);
+         int j = (int)(next % q);
+         int[] idx = new int[params.length];
+         for(int c=0; c<varied.length; c++)
+         {  int level = c == 0 ? j : (i + (c-1) * j) % q;
+            int p = varied[c];
+            idx[p] = toValueIndex(params[p], (levels[c][level] + 0.5) / q);
+         }
+         next++;
+         return toParameterValues(idx);
+      }
+   }
+}
@@ -0,0 +1,117 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates lazily over the mixed based numbers from start (inclusive) to end
+ * (exclusive) as returned by {@link MixedBaseNumberConverter}.
+ *
+ * The digits are decoded only once for start, afterwards they are incremented
+ * in place. {@link #next()} always returns the same array, callers must copy
+ * what they need before calling next() again.
+ *
+ * Spaces with more elements than fit into a long are supported, the number of
+ * remaining elements is kept in a BigInteger only in that case.
+ */
+public class DesignSpaceIterator implements Iterator<int[]>
+{  private final int[] bases;
+   private final int[] digits;
+   private long remaining;
+   private BigInteger bigRemaining;
+   private boolean started = false;
+
+   /**
+    * @param start first number to return, null for 0.
+    * @param end first number not to return, null for the size of the space.
+    */
+   public DesignSpaceIterator(int[] bases, BigInteger start, BigInteger end)
+   {  MixedBaseNumberConverter mbn = new MixedBaseNumberConverter(bases);
+      BigInteger size = mbn.getSize();
+
+      if(start == null || start.signum() < 0) start = BigInteger.ZERO;
+      if(end == null || end.compareTo(size) > 0) end = size;
+
+      this.bases = bases;
+      this.digits = new int[bases.length];
+
+      BigInteger count = end.subtract(start);
+      if(count.signum() <= 0)
+      {  remaining = 0;
+         bigRemaining = null;
+         return;
+      }
+
+      if(count.bitLength() < 64)
+      {  remaining = count.longValue();
+         bigRemaining = null;
+      } else
+      {  bigRemaining = count;
+      }
+
+      if(mbn.fitsLong())
+         mbn.getMixedBasedDigits(start.longValue(), digits);
+      else
+         mbn.getMixedBasedDigits(start, digits);
+   }
+
+   public DesignSpaceIterator(int[] bases)
+   {  this(bases, null, null);
+   }
+
+   public boolean hasNext()
+   {  if(bigRemaining != null) return bigRemaining.signum() > 0;
+      return remaining > 0;
+   }
+
+   /**
+    * @return the digits of the next number, the array is reused by the next call.
+    */
+   public int[] next()
+   {  if(! hasNext()) throw new NoSuchElementException();
+
+      if(started)
+         increment();
+      started = true;
+
+      if(bigRemaining != null)
+      {  bigRemaining = bigRemaining.subtract(BigInteger.ONE);
+         if(bigRemaining.bitLength() < 64)
+         {  remaining = bigRemaining.longValue();
+            bigRemaining = null;
+         }
+      } else
+      {  remaining--;
+      }
+      return digits;
+   }
+
+   private void increment()
+   {  for(int i=0; i<bases.length; i++)
+      {  if(++digits[i] < bases[i]) return;
+         digits[i] = 0;
+      }
+   }
+
+   public void remove()
+   {  throw new UnsupportedOperationException();
+   }
+}
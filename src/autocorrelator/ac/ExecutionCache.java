@@ -0,0 +1,120 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of JobExecutions by what they computed: the job, the parameter
+ * values and the parent execution.
+ *
+ * Two executions with the same key produce the same output, so a chain of jobs
+ * which shares its first stages with an earlier chain can start from the
+ * output of the earlier execution instead of computing it again.
+ */
+public class ExecutionCache
+{  private final Map<String,JobExecution> executions = new HashMap<String,JobExecution>();
+   /** keys of executions submitted by this process, their output may not exist yet */
+   private final Set<String> submittedHere = new HashSet<String>();
+   private int nReused = 0;
+
+   /**
+    * @return key identifying the computation done by exec including all its
+    *         parent executions.
+    */
+   public static String getKey(JobExecution exec)
+   {  if(exec.getParentExecution() == null)  // root execution: the molecule source
+         return "root(" + exec.getOutputFileName() + ')';
+
+      return getKey(exec.getParentExecution(), exec.getJobDescription(),
+                    exec.getParamVals());
+   }
+
+   /**
+    * @return key of an execution of jd with paramVals whose parent is parent.
+    */
+   public static String getKey(JobExecution parent, JobDescription jd,
+                               ParameterValue[] paramVals)
+   {  StringBuilder sb = new StringBuilder(200);
+      sb.append(getKey(parent)).append('/').append(jd.getId()).append('(');
+      for(int i=0; i<paramVals.length; i++)
+      {  if(i > 0) sb.append(';');
+         sb.append(paramVals[i].getParameter().getName())
+           .append('=').append(paramVals[i].getValue());
+      }
+      return sb.append(')').toString();
+   }
+
+   /**
+    * Add exec and all its parent executions.
+    */
+   public void add(JobExecution exec)
+   {  while(exec != null && exec.getJobDescription() != null)
+      {  String key = getKey(exec);
+         if(! executions.containsKey(key))
+            executions.put(key, exec);
+         exec = exec.getParentExecution();
+      }
+   }
+
+   /**
+    * Add an execution which was just submitted by this process.
+    */
+   public void addSubmitted(JobExecution exec)
+   {  String key = getKey(exec);
+      executions.put(key, exec);
+      submittedHere.add(key);
+   }
+
+   /**
+    * @return an earlier execution of jd with paramVals whose parent is parent or
+    *         null if there is none or its output file is gone.
+    */
+   public JobExecution getReusable(JobExecution parent, JobDescription jd,
+                                   ParameterValue[] paramVals)
+   {  JobExecution exec = peekReusable(parent, jd, paramVals);
+      if(exec != null) nReused++;
+      return exec;
+   }
+
+   /**
+    * Same as {@link #getReusable} but the execution is not counted as reused.
+    */
+   public JobExecution peekReusable(JobExecution parent, JobDescription jd,
+                                    ParameterValue[] paramVals)
+   {  String key = getKey(parent, jd, paramVals);
+      JobExecution exec = executions.get(key);
+      if(exec == null) return null;
+
+      if(! submittedHere.contains(key) && ! new File(exec.getOutputFileName()).exists())
+         return null;
+
+      return exec;
+   }
+
+   /**
+    * @return number of times {@link #getReusable} returned an execution.
+    */
+   public int getNReused()
+   {  return nReused;
+   }
+}
@@ -0,0 +1,83 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.util.Random;
+
+/**
+ * Keyed pseudo random permutation of [0,size).
+ *
+ * A balanced Feistel network permutes the smallest even number of bits
+ * covering size, values outside of [0,size) are encrypted again until they
+ * fall inside (cycle walking). Unlike {@link CircularRandomNumberGenerator}
+ * the i-th value is computed directly, so a design can be split into slices
+ * or extended later without repeating a combination.
+ */
+class FeistelPermutation
+{  private static final int ROUNDS = 6;
+
+   private final long size;
+   private final int halfBits;
+   private final long mask;
+   private final long[] keys = new long[ROUNDS];
+
+   FeistelPermutation(long size, long seed)
+   {  if(size <= 0)
+         throw new Error("Permutation size must be positive: " + size);
+
+      this.size = size;
+      int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(size - 1));
+      halfBits = (bits + 1) / 2;
+      mask = halfBits == 32 ? 0xFFFFFFFFL : (1L << halfBits) - 1;
+
+      Random rand = new Random(seed);
+      for(int i=0; i<ROUNDS; i++)
+         keys[i] = rand.nextLong();
+   }
+
+   /**
+    * @return the value at position index in [0,size) of the permutation.
+    */
+   long get(long index)
+   {  if(index < 0 || index >= size)
+         throw new IndexOutOfBoundsException(index + " not in [0," + size + ")");
+
+      long x = index;
+      do
+      {  x = encrypt(x);
+      } while(x < 0 || x >= size);   // less than 4 rounds on average
+      return x;
+   }
+
+   private long encrypt(long x)
+   {  long left  = (x >>> halfBits) & mask;
+      long right = x & mask;
+      for(int i=0; i<ROUNDS; i++)
+      {  long tmp = right;
+         right = left ^ mix(right + keys[i]);
+         left = tmp;
+      }
+      return (left << halfBits) | right;
+   }
+
+   private long mix(long z)
+   {  z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+      z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+      return (z ^ (z >>> 31)) & mask;
+   }
+}
@@ -72,16 +72,21 @@ public class Fred21Runner extends OERunner
    {  String currentDir = System.getenv("PWD");
       String jobName = getJobName();
       
-      String cshName = Settings.getNamePrefix() + "_" + getExecutableName() 
+      String cshName = ctx.getNamePrefix() + "_" + getExecutableName() 
                      + "_" + getJobId() + ".csh";    
       PrintStream out = new PrintStream(new FileOutputStream(cshName));
       
       out.println("#!/bin/csh -f\n");
       out.println("cd $TMPDIR\n");
-      out.printf("cp %s/*.pdb .\n", currentDir);
-      out.printf("cp %s/*.mol .\n", currentDir);
-      out.printf("cp %s/%s .\n", currentDir,parentExec.getOutputFileName());
-      out.println(getExecutionCommand(paramValues));
+      JobTelemetry telemetry = createTelemetry(paramValues, currentDir);
+      telemetry.printStart(out);
+      String command = getExecutionCommand(paramValues);
+      StagingManifest staging = new StagingManifest(currentDir, command);
+      staging.addJobOutput(parentExec.getOutputFileName());
+      staging.print(out);
+      telemetry.printStaged(out);
+      out.println(command);
+      telemetry.printExecuted(out);
       
       // @todo we need to normalize tag names or somehow make the names avaialble 
       // for R
@@ -89,11 +94,13 @@ public class Fred21Runner extends OERunner
       String fredOutputFile = getScoringFunction(paramValues);
       fredOutputFile = jobName + '_' + fredOutputFile + "_docked.oeb.gz"; 
       out.printf("cp %s %s/%s\n", fredOutputFile, currentDir, getOutputFileName());
+      telemetry.printCopied(out);
       
       out.println(postJobCommands);
+      telemetry.printEnd(out);
       out.println("time");
       
-      if(Settings.isDebugMode())
+      if(ctx.isDebugMode())
          printDirCopyStatments(out, currentDir, cshName);
       out.close();
       
@@ -35,7 +35,7 @@ public class GoldRunner extends JobRunner
 	
    String writeGoldConfFile(ParameterValue[] paramValues) throws FileNotFoundException
    {  String confName = execName + getJobName() + ".conf";
-      if( Settings.isDebugMode() )
+      if( ctx.isDebugMode() )
          System.err.println(confName);
       
       //BufferedReader in = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("goldTemplate.conf")));
@@ -62,6 +62,7 @@ public class GoldRunner extends JobRunner
             {  out.println(line);
             }
          }
+         out.close();
       } catch (IOException e)
       {  throw new Error(e);
       }
@@ -80,30 +81,36 @@ public class GoldRunner extends JobRunner
    {  String currentDir = System.getenv("PWD");
       String confFileName = writeGoldConfFile(paramValues);
       
-      String cshName = Settings.getNamePrefix() + "_" + execName 
+      String cshName = ctx.getNamePrefix() + "_" + execName 
                      + "_" + getJobId() + ".csh";    
       PrintStream out = new PrintStream(new FileOutputStream(cshName));
    
       out.println("#!/bin/csh -f\n");
       out.println("cd $TMPDIR\n");
       out.println("echo $HOST\n");
-      out.printf("cp %s/*.pdb .\n", currentDir);
-      out.printf("cp %s/*.mol2 .\n", currentDir);
-      out.printf("cp %s/*.mol .\n", currentDir);
-      out.printf("cp %s/%s .\n", currentDir, parentExec.getOutputFileName());
+      JobTelemetry telemetry = createTelemetry(paramValues, currentDir);
+      telemetry.printStart(out);
+      StagingManifest staging = new StagingManifest(currentDir, 
+                                    StagingManifest.readText(confFileName));
+      staging.addJobOutput(parentExec.getOutputFileName());
+      staging.print(out);
+      out.printf("cp %s/%s .\n", currentDir, confFileName);
+      telemetry.printStaged(out);
       out.printf("babel3 -in %s/%s -out gold_in.sdf \n", 
                currentDir, parentExec.getOutputFileName());
-      out.printf("cp %s/%s .\n", currentDir, confFileName);
       out.printf("%s %s\n", execName, confFileName);  // exec gold
+      telemetry.printExecuted(out);
       out.printf("sdfTagTool.csh -in gold.sdf -rename \"TITLE=AC_NUMBER\" -split \"|\" -splitTag AC_NUMBER -out %s/%s\n", currentDir, getOutputFileName());   
       out.printf("babel3 -in gold.sdf -out %s/%s\n", 
                   currentDir, getOutputFileName());
+      telemetry.printCopied(out);
 
       out.println(postJobCommands);
+      telemetry.printEnd(out);
       
       out.println("time");
       
-      if(Settings.isDebugMode())
+      if(ctx.isDebugMode())
          printDirCopyStatments(out, currentDir, cshName);
       
       out.close();
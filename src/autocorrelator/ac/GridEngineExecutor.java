@@ -0,0 +1,224 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Submits every job to the Sun Grid Engine using qsub, dependencies are
+ * passed on as -hold_jid.
+ *
+ * In array job mode the jobs of a batch are not submitted one by one. Instead
+ * a table with one line per task (taskIndex jobName cshName parameters) is
+ * written and a single "qsub -t 1-N" submits a wrapper script which looks up
+ * the csh script for $SGE_TASK_ID. Children of any of the tasks hold on the
+ * whole array job.
+ */
+public class GridEngineExecutor extends JobExecutor
+{  private final boolean useArrayJobs;
+
+   private String batchName = null;
+   private JobExecution batchParent = null;
+   private final List<String> batchLines = new ArrayList<String>();
+
+   GridEngineExecutor(boolean useArrayJobs)
+   {  this.useArrayJobs = useArrayJobs;
+   }
+
+   @Override
+   QueueEntry submit(String jobName, JobExecution parent,
+                     ParameterValue[] paramVals, String cshName) throws IOException
+   {  if(batchName != null)
+      {  assert batchParent == null || batchParent == parent
+            : "All jobs in a batch must have the same parent";
+         batchParent = parent;
+
+         StringBuilder sb = new StringBuilder();
+         sb.append(batchLines.size()+1).append('\t').append(jobName)
+           .append('\t').append(cshName);
+         for(ParameterValue pv : paramVals)
+            sb.append('\t').append(pv.getParameter().getName())
+              .append('=').append(pv.getValue());
+         batchLines.add(sb.toString());
+
+         return new QueueEntry(batchName, batchLines.size());
+      }
+
+      String parentName     = parent.getQueueJobName();
+      String queueOptions   = Settings.getQueueOptions();
+
+      runCommand(String.format("qsub -N %s -hold_jid %s %s %s",jobName, parentName,
+                                                      queueOptions, cshName));
+      return new QueueEntry(jobName, 0);
+   }
+
+   @Override
+   void openBatch(String name)
+   {  assert batchName == null : "Batches may not be nested";
+      if(useArrayJobs)
+         batchName = name;
+   }
+
+   @Override
+   void closeBatch() throws IOException
+   {  if(batchName == null) return;
+
+      try
+      {  if(batchLines.size() > 0)
+            submitArray();
+      } finally
+      {  batchName = null;
+         batchParent = null;
+         batchLines.clear();
+      }
+   }
+
+   private void submitArray() throws IOException
+   {  String currentDir = System.getenv("PWD");
+      String tableName  = batchName + ".tab";
+      String cshName    = batchName + ".csh";
+
+      PrintStream out = new PrintStream(new FileOutputStream(tableName));
+      for(String line : batchLines)
+         out.println(line);
+      out.close();
+
+      out = new PrintStream(new FileOutputStream(cshName));
+      out.println("#!/bin/csh -f");
+      out.printf("set taskCsh=`awk -F'\\t' '$1 == '$SGE_TASK_ID' {print $3}' %s/%s`\n",
+                 currentDir, tableName);
+      out.printf("csh -f %s/$taskCsh\n", currentDir);
+      out.close();
+
+      runCommand(String.format("qsub -N %s -t 1-%d -hold_jid %s %s %s",
+                 batchName, batchLines.size(), batchParent.getQueueJobName(),
+                 Settings.getQueueOptions(), cshName));
+   }
+
+   /**
+    * qdel of a job which has already finished fails silently.
+    */
+   @Override
+   void cancel(JobExecution exec) throws IOException
+   {  if(exec.getTaskIndex() > 0)
+         runCommand(String.format("qdel %s -t %d", exec.getQueueJobName(), 
+                                                   exec.getTaskIndex()));
+      else
+         runCommand("qdel " + exec.getQueueJobName());
+   }
+
+   @Override
+   QueueDepth getQueueDepth(String namePrefix) throws IOException
+   {  return readQueue(namePrefix, null);
+   }
+
+   @Override
+   public Set<String> getQueuedJobNames(String namePrefix) throws IOException
+   {  Set<String> names = new HashSet<String>();
+      readQueue(namePrefix, names);
+      return names;
+   }
+
+   /**
+    * Parse the output of "qstat -r" which lists the full job name on a 
+    * separate line after each job line.
+    * 
+    * @param names if not null the names of the jobs found are added.
+    */
+   private static QueueDepth readQueue(String namePrefix, Set<String> names) 
+   throws IOException
+   {  Process p = Runtime.getRuntime().exec("qstat -r");
+      BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()));
+      int inFlight = 0;
+      int held = 0;
+      try
+      {  String line;
+         String state = null;
+         int nTasks = 0;
+         while((line = in.readLine()) != null)
+         {  String[] tokens = line.trim().split("\\s+");
+            if(tokens.length > 4 && tokens[0].matches("\\d+"))
+            {  // job line: id prior name user state date time [queue] [slots] [tasks]
+               state = tokens[4];
+               nTasks = countTasks(tokens[tokens.length-1], tokens.length);
+               continue;
+            }
+            if(state != null && line.trim().startsWith("Full jobname:")
+               && tokens.length > 2 && isJobOf(tokens[2], namePrefix))
+            {  inFlight += nTasks;
+               if(state.startsWith("h")) held += nTasks;
+               if(names != null) names.add(tokens[2]);
+               state = null;
+            }
+         }
+         // an empty queue must not be mistaken for a failed qstat
+         if(p.waitFor() != 0)
+            throw new IOException("qstat -r failed with exit status " + p.exitValue());
+      } catch (InterruptedException e)
+      {  throw new Error("Should not happen", e);
+      } finally
+      {  in.close();
+         p.getErrorStream().close();
+         p.getOutputStream().close();
+      }
+      return new QueueDepth(inFlight, held);
+   }
+
+   /**
+    * @param taskSpec last column of a qstat job line eg. "1-500:1" or "3,5,7" 
+    *        for array jobs.
+    */
+   private static int countTasks(String taskSpec, int nColumns)
+   {  // a job line without the ja-task-ID column has 8 or 9 columns
+      if(nColumns < 9 || ! taskSpec.matches("[\\d,:-]+") ) return 1;
+      
+      int count = 0;
+      for(String part : taskSpec.split(","))
+      {  String[] range = part.split("[-:]");
+         if(range.length == 1)
+         {  count++;
+            continue;
+         }
+         int first = Integer.parseInt(range[0]);
+         int last  = Integer.parseInt(range[1]);
+         int step  = range.length > 2 ? Integer.parseInt(range[2]) : 1;
+         count += (last - first) / step + 1;
+      }
+      return count;
+   }
+
+   static void runCommand(String command) throws IOException
+   {  Process p = Runtime.getRuntime().exec(command);
+      try
+      {  p.waitFor();
+         p.getInputStream().close();
+         p.getOutputStream().close();
+         p.getErrorStream().close();
+      } catch (InterruptedException e)
+      {  throw new Error("Should not happen", e);
+      }
+   }
+}
@@ -0,0 +1,116 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The jobs of an experiment as a DAG: each JobDescription depends on its
+ * parent job, each JobExecution on its parent execution.
+ *
+ * The critical path of a job is its estimated runtime plus the longest
+ * critical path of its child jobs. Jobs are submitted longest critical path
+ * first so that long chains, eg. docking followed by rescoring, start early
+ * and do not determine the makespan.
+ */
+public class JobDag
+{  private final RuntimeEstimator estimator;
+   private final List<JobDescription> roots = new ArrayList<JobDescription>();
+   /** critical path in seconds by JobDescription id */
+   private final Map<String,Double> criticalPath = new HashMap<String,Double>();
+
+   private final Comparator<JobDescription> byCriticalPath =
+      new Comparator<JobDescription>()
+      {  public int compare(JobDescription o1, JobDescription o2)
+         {  return -Double.compare(getCriticalPath(o1), getCriticalPath(o2));
+         }
+      };
+
+   public JobDag(List<TaskDescription> jobList, RuntimeEstimator estimator)
+   {  this.estimator = estimator;
+      for(TaskDescription td : jobList)
+      {  JobDescription jd = (JobDescription)td;
+         computeCriticalPath(jd);
+         roots.add(jd);
+      }
+      Collections.sort(roots, byCriticalPath);
+   }
+
+   private double computeCriticalPath(JobDescription jd)
+   {  double longestChild = 0;
+      for(JobDescription child : jd.getChildJobs())
+         longestChild = Math.max(longestChild, computeCriticalPath(child));
+
+      double path = getEstimate(jd) + longestChild;
+      criticalPath.put(jd.getId(), path);
+
+      if(Settings.isDebugMode())
+         System.err.printf("critical path %s(%s): %.0fs\n", jd.getType(), jd.getId(), path);
+      return path;
+   }
+
+   /**
+    * @return estimated seconds of one execution of jd.
+    */
+   public double getEstimate(JobDescription jd)
+   {  return estimator.getEstimate(jd.getType());
+   }
+
+   /**
+    * @return estimated seconds from the start of jd until the last of its
+    *         descendants has finished.
+    */
+   public double getCriticalPath(JobDescription jd)
+   {  Double path = criticalPath.get(jd.getId());
+      if(path == null) return computeCriticalPath(jd);
+      return path;
+   }
+
+   /**
+    * @return the top level jobs, longest critical path first.
+    */
+   public List<JobDescription> getRootsByPriority()
+   {  return roots;
+   }
+
+   /**
+    * Estimated seconds to run the chain of jobs starting after parent.
+    *
+    * Leading jobs which were already executed with the same parameters are
+    * found in cache and do not contribute.
+    *
+    * @param jobs the chain of jobs, jobs[i] runs on the output of jobs[i-1].
+    */
+   public double getRemainingPath(JobExecution parent, JobDescription[] jobs,
+                                  ParameterValue[][] paramVals, ExecutionCache cache)
+   {  double path = 0;
+      for(int i=0; i<jobs.length; i++)
+      {  if(parent != null)
+         {  parent = cache.peekReusable(parent, jobs[i], paramVals[i]);
+            if(parent != null) continue;
+         }
+         path += getEstimate(jobs[i]);
+      }
+      return path;
+   }
+}
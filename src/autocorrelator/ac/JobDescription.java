@@ -17,6 +17,7 @@ along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
 package autocorrelator.ac;
 
 
+import java.math.BigInteger;
 import java.util.List;
 
 import org.jdom.Element;
@@ -28,18 +29,26 @@ public class JobDescription extends TaskDescription
    transient private final JobDescription parent;
    transient private final Design experimentDesign;
    transient private final long numberOfExecutions; 
+   transient private final RunContext ctx;
    
    public enum Design
    {  fullFactorial,
       random,
-      singleParameter;
+      singleParameter,
+      /** numberOfExecutions combinations, each value equally often per parameter */
+      latinHypercube,
+      /** numberOfExecutions points of a scrambled Sobol sequence */
+      sobol,
+      /** strength 2 orthogonal array, every pair of values of two parameters occurs */
+      orthogonalArray;
    }
    
    @SuppressWarnings("unchecked")
    public JobDescription(Element xmlJob, JobDescription parent)
    {  super(xmlJob);
-      Settings.getConfigFile().registerParameter(getParameter());
-      Settings.getConfigFile().registerJobSDescription(this);
+      ctx = RunContext.current();
+      ctx.getConfigFile().registerParameter(getParameter());
+      ctx.getConfigFile().registerJobSDescription(this);
       
       this.parent = parent;
 
@@ -74,7 +83,19 @@ public class JobDescription extends TaskDescription
    }
 
    JobRunner createJobRunner(JobExecution parentExec)
-   {  return JobRunner.factory(parentExec, getType());
+   {  RunContext previous = RunContext.bind(ctx);
+      try
+      {  return JobRunner.factory(parentExec, getType());
+      } finally
+      {  RunContext.bind(previous);
+      }
+   }
+
+   /**
+    * @return the experiment this job belongs to.
+    */
+   public RunContext getRunContext()
+   {  return ctx;
    }
 
    public Design getExperimentDesign()
@@ -82,16 +103,21 @@ public class JobDescription extends TaskDescription
    }
 
     /**
-    * Only to be used with the random experimental design
+    * Only to be used with the random, latinHypercube and sobol experimental
+    * designs.
     */
    public long getNumberOfExecutions()
    {  return numberOfExecutions;
    }
 
    
+   /**
+    * Resolve to the JobDescription of the RunContext bound by the deserializing
+    * thread.
+    */
    protected Object readResolve()
    {  JobDescription jd = (JobDescription)
-                           Settings.getConfigFile().getJobDescription(getId());
+                     RunContext.current().getConfigFile().getJobDescription(getId());
       if(jd == null) 
          throw new Error(String.format(
            "Error desirializing Jobdescription %s: id does not exist in configfile!",
@@ -100,10 +126,10 @@ public class JobDescription extends TaskDescription
       return jd;
    }
    
-   public long getPossibilities()
-   {  long posibilities = super.getPossibilities();   //count parameter combinations
+   public BigInteger getPossibilityCount()
+   {  BigInteger posibilities = super.getPossibilityCount(); //count parameter combinations
       for(JobDescription jd : getChildJobs())
-         posibilities  *= jd.getPossibilities();
+         posibilities  = posibilities.multiply(jd.getPossibilityCount());
 
       return posibilities;
    }
@@ -28,13 +28,28 @@ public class JobExecution implements Serializable
    private final JobExecution parentExecution;
    private final String outputFilename;
    private final String jobName;
+   private final String queueJobName;
+   private final int taskIndex;
    
    /**
     * ExecutionID is a unique number for this execution.
     */
    public JobExecution(String jobName, int execId, JobExecution parent, JobDescription desc, 
                        ParameterValue[] vals, String outputFileName, int cycle )
+   {  this(jobName, execId, parent, desc, vals, outputFileName, cycle, 
+           new QueueEntry(jobName, 0));
+   }
+
+   /**
+    * @param queueEntry name and task index under which the queuing system knows
+    *        this execution.
+    */
+   public JobExecution(String jobName, int execId, JobExecution parent, JobDescription desc, 
+                       ParameterValue[] vals, String outputFileName, int cycle,
+                       QueueEntry queueEntry)
    {  this.jobName = jobName;
+      this.queueJobName = queueEntry.getQueueJobName();
+      this.taskIndex = queueEntry.getTaskIndex();
       this.executionId = execId;
       this.jobDescription = desc;
       this.paramVals = vals;
@@ -68,4 +83,23 @@ public class JobExecution implements Serializable
    public int getCycle()
    {  return cycle;
    }
+
+   /**
+    * Name of the queue job running this execution, dependent jobs have to hold
+    * on this name. This differs from {@link #getJobName()} if this execution 
+    * is a task of an array job.
+    */
+   public String getQueueJobName()
+   {  // executions serialized before array jobs existed do not have a queueJobName
+      if(queueJobName == null) return jobName;
+      return queueJobName;
+   }
+
+   /**
+    * @return the index of this execution in its array job or 0 if it was not 
+    *         submitted as part of an array job.
+    */
+   public int getTaskIndex()
+   {  return taskIndex;
+   }
 }
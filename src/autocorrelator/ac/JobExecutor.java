@@ -0,0 +1,140 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Backend which runs the csh scripts written by the {@link JobRunner}s.
+ *
+ * A job may only start after the job of its parent execution has finished,
+ * this is what "qsub -hold_jid parent" expresses for the grid engine.
+ */
+public abstract class JobExecutor
+{
+   /**
+    * @param useArrayJobs if true siblings submitted between {@link #openBatch}
+    *        and {@link #closeBatch} are submitted as one array job.
+    */
+   public static JobExecutor factory(String executorType, int nThreads, 
+                                     boolean useArrayJobs)
+   {  if(executorType == null || "sge".equals(executorType))
+         return new GridEngineExecutor(useArrayJobs);
+      if("local".equals(executorType))
+         return new LocalExecutor(nThreads);
+      throw new Error("Unknown executor: " + executorType);
+   }
+
+   /**
+    * Queue the script cshName, it will not be started before the job of the
+    * parent execution has completed.
+    *
+    * @return the name and task index dependent jobs have to hold on.
+    */
+   abstract QueueEntry submit(String jobName, JobExecution parent, 
+                              ParameterValue[] paramVals, String cshName)
+      throws IOException;
+
+   /**
+    * Start a batch of sibling jobs which all have the same parent, executors
+    * may defer the submission of the jobs in the batch until 
+    * {@link #closeBatch()} is called.
+    * 
+    * @param batchName unique name which may be used as queue job name.
+    */
+   void openBatch(String batchName)
+   {  // jobs are submitted individually by default
+   }
+
+   /**
+    * Submit all jobs deferred since {@link #openBatch(String)}.
+    */
+   void closeBatch() throws IOException
+   {  // jobs are submitted individually by default
+   }
+
+   /**
+    * Remove the job of exec from the queue if it has not finished yet.
+    *
+    * Jobs holding on exec may be released by this, cancel children before
+    * their parents.
+    */
+   abstract void cancel(JobExecution exec) throws IOException;
+
+   /**
+    * Count the jobs whose name starts with namePrefix and which are still
+    * known to the backend, that is pending, held or running jobs.
+    */
+   abstract QueueDepth getQueueDepth(String namePrefix) throws IOException;
+
+   /**
+    * @return names of the jobs starting with namePrefix which are still known
+    *         to the backend, for array jobs the name of the array job.
+    */
+   public abstract Set<String> getQueuedJobNames(String namePrefix) throws IOException;
+
+   /**
+    * Block until all jobs submitted through this executor have completed.
+    *
+    * Executors handing the jobs to an external queuing system return immediately.
+    */
+   public void waitForCompletion() throws IOException
+   {  // nothing to wait for by default
+   }
+
+
+   /**
+    * @return true if jobName was given to a job of the experiment with
+    *         namePrefix: the prefix, a job type of the config file, "A" for
+    *         array jobs and the execution id, optionally followed by "_" and
+    *         the part of a split array job. Jobs of experiments whose prefix
+    *         only starts with namePrefix do not match.
+    */
+   static boolean isJobOf(String jobName, String namePrefix)
+   {  if(! jobName.startsWith(namePrefix)) return false;
+
+      ConfigFile cFile = RunContext.current().getConfigFile();
+      if(cFile == null) return true;
+
+      StringBuilder types = new StringBuilder();
+      for(String type : cFile.getJobTypes())
+      {  if(types.length() > 0) types.append('|');
+         types.append(Pattern.quote(type));
+      }
+      return jobName.substring(namePrefix.length())
+                    .matches("(" + types + ")A?\\d+(_\\d+)?");
+   }
+
+
+   /**
+    * Number of unfinished jobs (array tasks are counted individually).
+    */
+   static class QueueDepth
+   {  /** all jobs not yet finished, including the held jobs */
+      final int inFlight;
+      /** jobs waiting on a parent job */
+      final int held;
+
+      QueueDepth(int inFlight, int held)
+      {  this.inFlight = inFlight;
+         this.held = held;
+      }
+   }
+}
@@ -26,11 +26,14 @@ public abstract class JobRunner
 
    // parentExec is mutable, it keeps track of the number of childExecutions 
    protected final JobExecution parentExec;
+   /** experiment this job belongs to */
+   protected final RunContext ctx;
    
    JobRunner(String jobType, JobExecution parentExec)
    {  this.jobType = jobType;
       this.parentExec  = parentExec;
-      this.jobId = Settings.getNextExecutionCount();
+      this.ctx = RunContext.current();
+      this.jobId = ctx.getNextExecutionCount();
    }
    
    
@@ -77,7 +80,7 @@ public abstract class JobRunner
 
    public String getJobName()
    {  StringBuilder sb = new StringBuilder(40);
-      sb.append(Settings.getNamePrefix());
+      sb.append(ctx.getNamePrefix());
       sb.append(getTypeName());
       sb.append(jobId);
       return sb.toString();
@@ -88,22 +91,36 @@ public abstract class JobRunner
    {  String jobName        = getJobName();
       String cshName        = writeCsh(paramVals, postJobCommands);
       String outputFileName = getOutputFileName();
-      String parentName     = parent.getJobName();
-      String queueOptions   = Settings.getQueueOptions();
-   
-      Process p = Runtime.getRuntime().exec(
-        String.format("qsub -N %s -hold_jid %s %s %s",jobName, parentName, 
-                                                      queueOptions, cshName));
-      try
-      {  p.waitFor();
-         p.getInputStream().close();
-         p.getOutputStream().close();
-         p.getErrorStream().close();
-      } catch (InterruptedException e)
-      {  throw new Error("Should not happen", e);
-      }
-   
-      return new JobExecution(jobName, jobId, parent, jd, paramVals, outputFileName, cycle);
+
+      QueueEntry queueEntry = 
+         ctx.getJobExecutor().submit(jobName, parent, paramVals, cshName);
+      ctx.getRuntimeEstimator().recordSubmission(jobName, getTypeName());
+
+      JobExecution exec = new JobExecution(jobName, jobId, parent, jd, paramVals, 
+                                           outputFileName, cycle, queueEntry);
+      // a journaled model must be in the store, resume does not add it again
+      if(isModel()) ctx.getRunStore().addModel(exec);
+      RunJournal journal = ctx.getJournal();
+      if(journal != null) journal.recordSubmission(exec);
+      return exec;
+   }
+
+   /**
+    * @return true if the job computes a model whose quality is written to the
+    *         correlation file, its executions are kept in the RunStore.
+    */
+   protected boolean isModel()
+   {  return false;
+   }
+
+   /**
+    * @return telemetry recorder for this job, the output file is expected in
+    *         currentDir.
+    */
+   protected JobTelemetry createTelemetry(ParameterValue[] paramValues, String currentDir)
+   {  return new JobTelemetry(getJobName(), getTypeName(), parentExec, paramValues, 
+                              currentDir, currentDir + '/' + getOutputFileName(),
+                              ctx.getBasePrefix());
    }
 
    protected void printDirCopyStatments(PrintStream out, String baseDir, String cshName)
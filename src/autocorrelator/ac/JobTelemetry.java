@@ -0,0 +1,379 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the csh commands recording the timing of one job as a single JSON
+ * line in the record file DIRName/basePrefix/jobName.json:
+ *
+ * <pre>
+ * {"job":"..","type":"..","parent":"..","params":{"name":"value",..},
+ *  "host":"..","submitted":t,"start":t,"staged":t,"executed":t,"copied":t,
+ *  "end":t,"status":n,"outBytes":n}
+ * </pre>
+ *
+ * Times are seconds since the epoch. The stages of a job are: queue wait
+ * (submitted to start), staging of inputs (start to staged), execution (staged
+ * to executed), copying results back (executed to copied) and post job
+ * commands (copied to end). submitted is the clock of the submitting host, all
+ * others that of the execution host.
+ *
+ * Each job writes its record to a temporary file when it ends and renames it,
+ * so a record is either complete or missing even if the jobs of many hosts end
+ * at the same time on a network file system. Readers merge the records of an
+ * experiment and only read the files added since the last read.
+ */
+public class JobTelemetry
+{  public static final String DIRName = "acTelemetry";
+   public static final String RECORDSuffix = ".json";
+   public static final String[] MARKS =
+      { "submitted", "start", "staged", "executed", "copied", "end" };
+
+   private final String outputFile;
+   private final String jsonHead;
+   private final String recordFile;
+   /** exit status of the ended jobs of each record directory read so far by path */
+   private static final Map<String,RecordReader> readers = new HashMap<String,RecordReader>();
+
+   /**
+    * @param logName base name prefix of the experiment, names the record
+    *        directory.
+    */
+   JobTelemetry(String jobName, String jobType, JobExecution parent,
+                ParameterValue[] paramValues, String currentDir, String outputFile,
+                String logName)
+   {  this.outputFile = outputFile;
+
+      File dir = getRecordDir(new File(currentDir), logName);
+      if(! dir.isDirectory() && ! dir.mkdirs())
+         throw new Error("Could not create " + dir);
+      recordFile = new File(dir, jobName + RECORDSuffix).getPath();
+
+      StringBuilder sb = new StringBuilder(200);
+      sb.append("{\"job\":").append(quote(jobName));
+      sb.append(",\"type\":").append(quote(jobType));
+      if(parent != null)
+         sb.append(",\"parent\":").append(quote(parent.getJobName()));
+      sb.append(",\"params\":{");
+      for(int i=0; i<paramValues.length; i++)
+      {  if(i > 0) sb.append(',');
+         sb.append(quote(paramValues[i].getParameter().getName())).append(':')
+           .append(quote(paramValues[i].getValue()));
+      }
+      sb.append("},");
+      jsonHead = sb.toString();
+   }
+
+   /**
+    * Print directly after the job has started.
+    */
+   void printStart(PrintStream out)
+   {  out.printf(Locale.ROOT, "set acTsubmitted=%.3f\n", System.currentTimeMillis() / 1000D);
+      out.println("set acTstart=`date +%s.%N`");
+      out.println("set acHost=`hostname`");
+      out.println("set acStatus=0");
+      out.println("set acOutBytes=0");
+   }
+
+   /**
+    * Print after the inputs have been copied.
+    */
+   void printStaged(PrintStream out)
+   {  out.println("set acTstaged=`date +%s.%N`");
+   }
+
+   /**
+    * Print directly after the main command of the job.
+    */
+   void printExecuted(PrintStream out)
+   {  out.println("set acStatus=$status");
+      out.println("set acTexecuted=`date +%s.%N`");
+   }
+
+   /**
+    * Print after the results have been copied back, outputFile must exist.
+    */
+   void printCopied(PrintStream out)
+   {  out.println("set acTcopied=`date +%s.%N`");
+      out.printf("if ( -e %s ) set acOutBytes=`stat -c %%s %s`\n", outputFile, outputFile);
+   }
+
+   /**
+    * Print as last command, writes the JSON line to the record file.
+    */
+   void printEnd(PrintStream out)
+   {  out.println("set acTend=`date +%s.%N`");
+      out.print("printf '%s\"host\":\"%s\"");
+      for(String mark : MARKS)
+         out.printf(",\"%s\":%%s", mark);
+      out.print(",\"status\":%s,\"outBytes\":%s}\\n' ");
+      out.print(cshQuote(jsonHead));
+      out.print(" $acHost");
+      for(String mark : MARKS)
+         out.print(" $acT" + mark);
+      out.printf(" $acStatus $acOutBytes > %s.$$\n", recordFile);
+      out.printf("mv -f %s.$$ %s\n", recordFile, recordFile);
+   }
+
+   /**
+    * @param logName base name prefix of an experiment.
+    * @return directory with the record files of the experiment in dir.
+    */
+   public static File getRecordDir(File dir, String logName)
+   {  return new File(new File(dir, DIRName), logName);
+   }
+
+   private static String quote(String s)
+   {  StringBuilder sb = new StringBuilder(s.length() + 2);
+      sb.append('"');
+      for(int i=0; i<s.length(); i++)
+      {  char c = s.charAt(i);
+         if(c == '"' || c == '\\') sb.append('\\');
+         if(c < ' ')
+            sb.append(String.format("\\u%04x", (int)c));
+         else
+            sb.append(c);
+      }
+      return sb.append('"').toString();
+   }
+
+   /**
+    * @return s in csh single quotes.
+    */
+   private static String cshQuote(String s)
+   {  return "'" + s.replace("'", "'\\''") + "'";
+   }
+
+
+   /**
+    * @return all records in the telemetry directory of dir and in the record
+    *         directories of its experiments, including those of older runs
+    *         with one .jsonl log per experiment.
+    */
+   public static List<Map<String,Object>> readRecords(File dir) throws IOException
+   {  List<Map<String,Object>> records = new ArrayList<Map<String,Object>>();
+      readRecords(new File(dir, DIRName), records);
+      return records;
+   }
+
+   private static void readRecords(File dir, List<Map<String,Object>> records) 
+   throws IOException
+   {  File[] files = dir.listFiles();
+      if(files == null) return;
+
+      for(File f : files)
+      {  if(f.isDirectory())
+         {  readRecords(f, records);
+            continue;
+         }
+         if(f.getName().startsWith(".") 
+            || ! (f.getName().endsWith(RECORDSuffix) || f.getName().endsWith(".jsonl")))
+            continue;
+         BufferedReader in = new BufferedReader(new FileReader(f));
+         try
+         {  String line;
+            while((line = in.readLine()) != null)
+            {  line = line.trim();
+               if(line.length() == 0) continue;
+               try
+               {  records.add(parseObject(line, new int[] {0}));
+               } catch(RuntimeException e)
+               {  System.err.printf("Skipping invalid record in %s: %s\n", f, e.getMessage());
+               }
+            }
+         } finally
+         {  in.close();
+         }
+      }
+   }
+
+   /**
+    * @param logName base name prefix of the experiment of the job.
+    * @return the exit status of jobName in the telemetry records of dir or
+    *         null if the job has not ended.
+    */
+   public static Double getEndStatus(File dir, String logName, String jobName) 
+   throws IOException
+   {  RecordReader reader = getReader(dir, logName);
+      synchronized(reader)
+      {  Double status = reader.statusByJob.get(jobName);
+         if(status == null) status = reader.read(jobName);
+         return status;
+      }
+   }
+
+   /**
+    * @return copy of the exit status by job name of the jobs in the telemetry
+    *         records of dir which have ended.
+    */
+   public static Map<String,Double> getEndStatus(File dir, String logName) 
+   throws IOException
+   {  RecordReader reader = getReader(dir, logName);
+      synchronized(reader)
+      {  reader.update();
+         return Collections.unmodifiableMap(new HashMap<String,Double>(reader.statusByJob));
+      }
+   }
+
+   private static RecordReader getReader(File dir, String logName)
+   {  File recordDir = getRecordDir(dir, logName);
+      synchronized(readers)
+      {  RecordReader reader = readers.get(recordDir.getPath());
+         if(reader == null)
+            readers.put(recordDir.getPath(), reader = new RecordReader(recordDir));
+         return reader;
+      }
+   }
+
+   /**
+    * Minimal parser for the flat records written by printEnd(): objects,
+    * strings and numbers.
+    */
+   static Map<String,Object> parseObject(String s, int[] pos)
+   {  Map<String,Object> map = new LinkedHashMap<String,Object>();
+      expect(s, pos, '{');
+      skipBlanks(s, pos);
+      if(s.charAt(pos[0]) == '}')
+      {  pos[0]++;
+         return map;
+      }
+      while(true)
+      {  skipBlanks(s, pos);
+         String key = parseString(s, pos);
+         skipBlanks(s, pos);
+         expect(s, pos, ':');
+         skipBlanks(s, pos);
+         char c = s.charAt(pos[0]);
+         if(c == '{')
+            map.put(key, parseObject(s, pos));
+         else if(c == '"')
+            map.put(key, parseString(s, pos));
+         else
+            map.put(key, parseNumber(s, pos));
+         skipBlanks(s, pos);
+         if(s.charAt(pos[0]) == '}')
+         {  pos[0]++;
+            return map;
+         }
+         expect(s, pos, ',');
+      }
+   }
+
+   private static String parseString(String s, int[] pos)
+   {  expect(s, pos, '"');
+      StringBuilder sb = new StringBuilder();
+      while(true)
+      {  if(pos[0] >= s.length()) throw new IllegalArgumentException("unterminated string");
+         char c = s.charAt(pos[0]++);
+         if(c == '"') return sb.toString();
+         if(c == '\\')
+         {  c = s.charAt(pos[0]++);
+            if(c == 'u')
+            {  c = (char)Integer.parseInt(s.substring(pos[0], pos[0]+4), 16);
+               pos[0] += 4;
+            }
+         }
+         sb.append(c);
+      }
+   }
+
+   private static Double parseNumber(String s, int[] pos)
+   {  int start = pos[0];
+      while(pos[0] < s.length() && "+-.eE0123456789".indexOf(s.charAt(pos[0])) >= 0)
+         pos[0]++;
+      if(start == pos[0]) throw new IllegalArgumentException("value expected at " + start);
+      return Double.valueOf(s.substring(start, pos[0]));
+   }
+
+   private static void expect(String s, int[] pos, char c)
+   {  if(pos[0] >= s.length() || s.charAt(pos[0]) != c)
+         throw new IllegalArgumentException("'" + c + "' expected at " + pos[0]);
+      pos[0]++;
+   }
+
+   private static void skipBlanks(String s, int[] pos)
+   {  while(pos[0] < s.length() && Character.isWhitespace(s.charAt(pos[0])))
+         pos[0]++;
+   }
+
+
+   /**
+    * Reads the record files added to the record directory of an experiment
+    * since the last update.
+    */
+   private static class RecordReader
+   {  private final File dir;
+      final Map<String,Double> statusByJob = new HashMap<String,Double>();
+
+      RecordReader(File dir)
+      {  this.dir = dir;
+      }
+
+      void update() throws IOException
+      {  String[] names = dir.list();
+         if(names == null) return;
+
+         for(String name : names)
+         {  if(name.startsWith(".") || ! name.endsWith(RECORDSuffix)) continue;
+            String jobName = name.substring(0, name.length() - RECORDSuffix.length());
+            if(! statusByJob.containsKey(jobName)) read(jobName);
+         }
+      }
+
+      /**
+       * @return the exit status in the record file of jobName or null if it
+       *         does not exist yet. An invalid record counts as ended with
+       *         status NaN.
+       */
+      Double read(String jobName) throws IOException
+      {  File f = new File(dir, jobName + RECORDSuffix);
+         if(! f.exists()) return null;
+
+         String line;
+         BufferedReader in = new BufferedReader(new FileReader(f));
+         try
+         {  line = in.readLine();
+         } finally
+         {  in.close();
+         }
+
+         Double status = Double.NaN;
+         try
+         {  Object s = parseObject(line == null ? "" : line.trim(), new int[] {0}).get("status");
+            if(s instanceof Double) status = (Double)s;
+         } catch(RuntimeException e)
+         {  System.err.printf("Invalid record in %s: %s\n", f, e.getMessage());
+         }
+         statusByJob.put(jobName, status);
+         return status;
+      }
+   }
+}
@@ -0,0 +1,218 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the csh scripts on this machine using a fixed number of threads.
+ *
+ * A job whose parent job is still pending or running is parked until the
+ * parent has finished so that waiting jobs never occupy a thread of the pool.
+ * As with the grid engine the children are released regardless of the exit
+ * status of the parent. The children of a job cancelled before it started
+ * are cancelled as well.
+ *
+ * The threads of the pool are daemon threads, so the executor needs no
+ * shutdown and may be reused after {@link #waitForCompletion}.
+ *
+ * stdout and stderr of a job are written to jobName.o and jobName.e, each
+ * job gets its own $TMPDIR which is removed when the job is done.
+ */
+public class LocalExecutor extends JobExecutor
+{  private final ExecutorService pool;
+   private final String shell;
+   private final String workDir;
+
+   /** jobs submitted but not yet finished */
+   private final Set<String> unfinished = new HashSet<String>();
+   /** jobs waiting for the job with the key name to finish */
+   private final Map<String,List<LocalJob>> waiting = new HashMap<String,List<LocalJob>>();
+   /** unfinished jobs which are not to be started */
+   private final Set<String> cancelled = new HashSet<String>();
+
+   LocalExecutor(int nThreads)
+   {  this(nThreads, "csh", System.getenv("PWD"));
+   }
+
+   /**
+    * @param shell runs the scripts with the option -f.
+    * @param workDir directory the scripts run in, null for the current one.
+    */
+   LocalExecutor(int nThreads, String shell, String workDir)
+   {  if(nThreads <= 0) nThreads = Runtime.getRuntime().availableProcessors();
+      this.pool = Executors.newFixedThreadPool(nThreads, new ThreadFactory()
+               {  public Thread newThread(Runnable r)
+                  {  Thread t = new Thread(r, "localJob");
+                     t.setDaemon(true);
+                     return t;
+                  }
+               });
+      this.shell = shell;
+      this.workDir = workDir;
+   }
+
+   @Override
+   synchronized QueueEntry submit(String jobName, JobExecution parent, 
+                                  ParameterValue[] paramVals, String cshName)
+   {  LocalJob job = new LocalJob(jobName, cshName);
+      unfinished.add(jobName);
+
+      String parentName = parent == null ? null : parent.getQueueJobName();
+      if(parentName != null && unfinished.contains(parentName))
+      {  List<LocalJob> children = waiting.get(parentName);
+         if(children == null)
+         {  children = new ArrayList<LocalJob>();
+            waiting.put(parentName, children);
+         }
+         children.add(job);
+         return new QueueEntry(jobName, 0);
+      }
+
+      pool.execute(job);
+      return new QueueEntry(jobName, 0);
+   }
+
+   /**
+    * Jobs which are already running are not stopped, the children of a job
+    * which has not yet started are cancelled with it.
+    */
+   @Override
+   synchronized void cancel(JobExecution exec)
+   {  if(unfinished.contains(exec.getQueueJobName()))
+         cancelled.add(exec.getQueueJobName());
+   }
+
+   private synchronized boolean isCancelled(String jobName)
+   {  return cancelled.remove(jobName);
+   }
+
+   @Override
+   synchronized QueueDepth getQueueDepth(String namePrefix)
+   {  int held = 0;
+      for(List<LocalJob> children : waiting.values())
+         held += children.size();
+
+      return new QueueDepth(unfinished.size(), held);
+   }
+
+   /**
+    * Local jobs do not survive this process, only its own jobs are found.
+    */
+   @Override
+   public synchronized Set<String> getQueuedJobNames(String namePrefix)
+   {  Set<String> names = new HashSet<String>();
+      for(String name : unfinished)
+      {  if(isJobOf(name, namePrefix)) names.add(name);
+      }
+      return names;
+   }
+
+   /**
+    * @param skipped true if the job was cancelled before it started.
+    */
+   private synchronized void finished(String jobName, boolean skipped)
+   {  unfinished.remove(jobName);
+      // cancelled while running
+      cancelled.remove(jobName);
+
+      List<LocalJob> children = waiting.remove(jobName);
+      if(children != null)
+      {  for(LocalJob child : children)
+         {  // the child skips itself and then its own children
+            if(skipped) cancelled.add(child.jobName);
+            pool.execute(child);
+         }
+      }
+
+      notifyAll();
+   }
+
+   @Override
+   public synchronized void waitForCompletion() throws IOException
+   {  try
+      {  while(unfinished.size() > 0)
+            wait();
+      } catch (InterruptedException e)
+      {  throw new Error("Interrupted while waiting for local jobs", e);
+      }
+   }
+
+   private static void deleteRecursive(File f)
+   {  File[] children = f.listFiles();
+      if(children != null)
+      {  for(File child : children)
+            deleteRecursive(child);
+      }
+      f.delete();
+   }
+
+
+   private class LocalJob implements Runnable
+   {  private final String jobName;
+      private final String cshName;
+
+      LocalJob(String jobName, String cshName)
+      {  this.jobName = jobName;
+         this.cshName = cshName;
+      }
+
+      public void run()
+      {  File tmpDir = null;
+         boolean skipped = false;
+         try
+         {  skipped = isCancelled(jobName);
+            if(skipped) return;
+
+            tmpDir = File.createTempFile("ac_" + jobName, ".dir");
+            tmpDir.delete();
+            if(! tmpDir.mkdir())
+               throw new IOException("Could not create " + tmpDir);
+
+            File dir = new File(workDir == null ? "." : workDir);
+            ProcessBuilder pb = new ProcessBuilder(shell, "-f", cshName);
+            pb.directory(dir);
+            pb.environment().put("TMPDIR", tmpDir.getAbsolutePath());
+            pb.redirectOutput(new File(dir, jobName + ".o"));
+            pb.redirectError(new File(dir, jobName + ".e"));
+
+            int exitCode = pb.start().waitFor();
+            if(exitCode != 0)
+               System.err.printf("Job %s exited with status %d\n", jobName, exitCode);
+
+         } catch (IOException e)
+         {  System.err.printf("Job %s could not be run: %s\n", jobName, e.getMessage());
+         } catch (InterruptedException e)
+         {  Thread.currentThread().interrupt();
+         } finally
+         {  if(tmpDir != null) deleteRecursive(tmpDir);
+            finished(jobName, skipped);
+         }
+      }
+   }
+}
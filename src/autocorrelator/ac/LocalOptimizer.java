@@ -20,10 +20,13 @@ package autocorrelator.ac;
 import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.jdom.Document;
 import org.jdom.Element;
@@ -33,8 +36,16 @@ import autocorrelator.ga.*;
 
 public class LocalOptimizer
 {  private static final String EXPLAIN=
-      "localOptimizer[-debug][-waitForKey] [-queOpts 'opts']\n"
+      "localOptimizer[-debug][-waitForKey] [-queOpts 'opts'] [-executor sge|local]\n"
+     +"  [-nThreads n]\n"
+     +"  [-patternSearch [-initialStep 0.25] [-maxEvaluations n] [-rescanSeconds 60]]\n"
      +"  -prefix namePrefix xmlConfig cycle\n"
+     +"  Submit all models differing from the best model in one parameter.\n"
+     +"  patternSearch: stay resident and move to the first neighbour which is\n"
+     +"     better than the current best as soon as its quality is known.\n"
+     +"     Range parameters move initialStep of their range, the step is\n"
+     +"     halved when no neighbour is better. Stops when the smallest step\n"
+     +"     does not improve or after maxEvaluations submitted models.\n"
      +"\n";
 
    private final int cycle;
@@ -48,8 +59,9 @@ public class LocalOptimizer
    public static void main(String[] args)
    throws IOException, Exception
    {  CommandLineParser cParser;
-      String[] modes    = {"-debug", "-waitForKey" };
-      String[] parms    = {"-prefix", "-queOpts"  };
+      String[] modes    = {"-debug", "-waitForKey", "-patternSearch" };
+      String[] parms    = {"-prefix", "-queOpts", "-executor", "-nThreads",
+                           "-initialStep", "-maxEvaluations", "-rescanSeconds" };
       String[] reqParms = {"-prefix" };
       
       cParser = new CommandLineParser(EXPLAIN,0,0,args,modes,parms,reqParms);
@@ -66,6 +78,7 @@ public class LocalOptimizer
       Settings.setNamePrefix(prefix, cycle);
       Settings.setDebugMode(cParser.wasGiven("-debug"));
       Settings.setQueueOptions(cParser.getValue("-queOpts"));
+      Settings.setJobExecutor(AutoCorrelator.createJobExecutor(cParser));
 
       if( cParser.wasGiven("-waitForKey") )
       {  System.err.println("You may now start the debug then press return:");
@@ -78,7 +91,22 @@ public class LocalOptimizer
       Document xmlDoc = builder.build(new File(xmlFile));
       
       LocalOptimizer ga = new LocalOptimizer(xmlDoc.getRootElement(), cycle);
-      ga.run();
+      if(cParser.wasGiven("-patternSearch"))
+      {  double initialStep = 0.25;
+         if(cParser.wasGiven("-initialStep"))
+            initialStep = Double.parseDouble(cParser.getValue("-initialStep"));
+         int maxEvaluations = Integer.MAX_VALUE;
+         if(cParser.wasGiven("-maxEvaluations"))
+            maxEvaluations = Integer.parseInt(cParser.getValue("-maxEvaluations"));
+         long rescanSec = 60;
+         if(cParser.wasGiven("-rescanSeconds"))
+            rescanSec = Long.parseLong(cParser.getValue("-rescanSeconds"));
+         
+         ga.patternSearch(initialStep, maxEvaluations, rescanSec * 1000);
+      }else
+      {  ga.run();
+      }
+      Settings.getJobExecutor().waitForCompletion();
    }
    
    
@@ -87,6 +115,9 @@ public class LocalOptimizer
       HashSet<Chromosome> allChromosomes = 
             new HashSet<Chromosome>(chromosomes.size() + 200);
       allChromosomes.addAll(chromosomes);
+      ExecutionCache cache = new ExecutionCache();
+      for(Chromosome c : chromosomes)
+         c.addExecutions(cache);
       
       // sort by quality
       Collections.sort(chromosomes, new Comparator<Chromosome>()
@@ -101,9 +132,98 @@ public class LocalOptimizer
          {  if(Settings.isDebugMode()) 
                System.err.println("\n\n=========== executing chromosomes");
          
-            child.execute();
+            child.execute(cache);
          }
          allChromosomes.add(child);
       }
    }  
+   
+   /**
+    * Opportunistic parallel pattern search starting at the best model: all
+    * unseen neighbours of the current point are submitted at once and the
+    * search moves to the best improving neighbour as soon as one reports its
+    * quality. Neighbours still running keep going, they are considered again
+    * when they finish.
+    * 
+    * The neighbourhoods do not depend on random numbers, so a restarted
+    * search resumes the submissions of its journal.
+    */
+   private void patternSearch(double stepFraction, int maxEvaluations, long rescanMS)
+   throws IOException, InterruptedException
+   {  RunContext ctx = RunContext.current();
+      RunJournal journal = ctx.openJournal();
+      RunStore store = ctx.getRunStore();
+      
+      // models read at the start which have no quality are not retried
+      Map<Chromosome,Chromosome> seen = new HashMap<Chromosome,Chromosome>();
+      ExecutionCache cache = new ExecutionCache();
+      Chromosome center = null;
+      for(Chromosome c : Chromosome.readChromosomes())
+      {  c.addExecutions(cache);
+         seen.put(c, c);
+         if(c.getExecIndex() >= 0 && (center == null || c.getQuality() > center.getQuality()))
+            center = c;
+      }
+      if(center == null)
+         throw new Error("No model with quality found to start the pattern search from");
+      
+      Map<Chromosome,JobExecution> running = new HashMap<Chromosome,JobExecution>();
+      int nSubmitted = 0;
+      ModelWatcher watcher = new ModelWatcher(ctx, rescanMS);
+      try
+      {  while(true)
+         {  Chromosome[] neighbours = center.getNeighbours(stepFraction, cycle);
+            for(Chromosome n : neighbours)
+            {  if(seen.containsKey(n) || nSubmitted >= maxEvaluations) continue;
+               seen.put(n, n);
+               running.put(n, n.execute(cache));
+               nSubmitted++;
+            }
+            
+            Chromosome better = null;
+            while(better == null && containsAny(running, neighbours))
+            {  watcher.await();
+               for(JobExecution model : watcher.collectFinished(running.values()))
+               {  if(! watcher.hasQuality(model)) continue;
+                  Chromosome c = new Chromosome(model, store);
+                  seen.put(c, c);
+                  if(c.getQuality() > center.getQuality()
+                     && (better == null || c.getQuality() > better.getQuality()))
+                     better = c;
+               }
+            }
+            
+            if(better != null)
+            {  center = better;
+               System.err.printf("Moved to quality %g, step %g\n", center.getQuality(), stepFraction);
+               continue;
+            }
+            if(nSubmitted >= maxEvaluations)
+            {  System.err.printf("Stopping after %d evaluations\n", nSubmitted);
+               break;
+            }
+            
+            // no neighbour is better: shrink the step of the range parameters
+            Chromosome[] smaller = center.getNeighbours(stepFraction / 2, cycle);
+            if(new HashSet<Chromosome>(Arrays.asList(smaller)).equals(
+                     new HashSet<Chromosome>(Arrays.asList(neighbours))))
+            {  System.err.printf("Converged after %d evaluations\n", nSubmitted);
+               break;
+            }
+            stepFraction /= 2;
+         }
+      } finally
+      {  watcher.close();
+         journal.close();
+      }
+      System.err.printf("Best model quality %g:\n%s\n", center.getQuality(), center);
+      if(journal.isResuming())
+         System.err.println("Resumed " + journal.getSummary());
+   }
+   
+   private static boolean containsAny(Map<Chromosome,JobExecution> running, Chromosome[] cs)
+   {  for(Chromosome c : cs)
+         if(running.containsKey(c)) return true;
+      return false;
+   }
 }
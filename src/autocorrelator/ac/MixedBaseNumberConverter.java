@@ -17,25 +17,54 @@ along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
 package autocorrelator.ac;
 
 
+import java.math.BigInteger;
+
  public class MixedBaseNumberConverter
 {  private int[] bases;
    public  long  maxVal;
+   private final BigInteger size;
+   private final boolean fitsLong;
 
    public MixedBaseNumberConverter(int[] bases)
   {   int i;
       this.bases = bases;
 
-      maxVal=bases[0];
-      for(i=1; i<bases.length; i++ )
-     {   maxVal *= bases[i];
+      BigInteger bigSize = BigInteger.ONE;
+      for(i=0; i<bases.length; i++ )
+     {   bigSize = bigSize.multiply(BigInteger.valueOf(bases[i]));
      }
-      maxVal--;
+      size = bigSize;
+      fitsLong = size.bitLength() < 64;
+
+      if( fitsLong )
+         maxVal = size.longValue() - 1;
+      else
+         maxVal = Long.MAX_VALUE;
   }
 
+  /**
+   * Only valid if {@link #fitsLong()}.
+   */
    public long getMaxValue()
   {   return maxVal;
   }
 
+  /**
+   * @return number of different mixed based numbers, this is the product of all
+   * bases.
+   */
+   public BigInteger getSize()
+  {   return size;
+  }
+
+  /**
+   * @return false if the number of mixed based numbers is too large for the
+   * long methods of this class.
+   */
+   public boolean fitsLong()
+  {   return fitsLong;
+  }
+
   /**
    * translate the number from Mixed based Digits to a long.
    *
@@ -62,8 +91,17 @@ package autocorrelator.ac;
    *
    */
    public int[] getMixedBasedDigits( long longNum )
-  {   int[] res = new int[ bases.length ];
-      int   i;
+  {   return getMixedBasedDigits( longNum, new int[ bases.length ] );
+  }
+
+  /**
+   * Same as {@link #getMixedBasedDigits(long)} but the digits are stored in res
+   * to avoid creating a new array for every number.
+   *
+   * @return res
+   */
+   public int[] getMixedBasedDigits( long longNum, int[] res )
+  {   int   i;
 
       for( i=0; i<bases.length; i++ )
      {   res[i] = (int)(longNum % bases[i]);
@@ -73,6 +111,26 @@ package autocorrelator.ac;
       return res;
   }
 
+  /**
+   * Transforms num into the digits of the mixed based number, this works for
+   * numbers larger than a long.
+   *
+   * num should be &gt;=0 and &lt; {@link #getSize()}.
+   *
+   * @return res
+   */
+   public int[] getMixedBasedDigits( BigInteger num, int[] res )
+  {   int   i;
+
+      for( i=0; i<bases.length; i++ )
+     {   BigInteger[] divRem = num.divideAndRemainder(BigInteger.valueOf(bases[i]));
+         res[i] = divRem[1].intValue();
+         num = divRem[0];
+     }
+
+      return res;
+  }
+
 
 /***************************************************************************
    static public void main(String args[])
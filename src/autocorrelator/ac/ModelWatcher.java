@@ -0,0 +1,171 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for submitted models to finish.
+ *
+ * A model has been evaluated when its quality appears in the correlation
+ * file, it failed when its R job has written its {@link JobTelemetry} record
+ * without a quality. Both are watched with a WatchService and checked again
+ * every rescanMS for changes made by other hosts.
+ *
+ * If the telemetry record of a model is lost, for example because its host
+ * crashed, the model counts as ended once its job has not been in the queue
+ * for LOSTGraceMS.
+ */
+public class ModelWatcher
+{  private static final long LOSTGraceMS = 5 * 60 * 1000;
+
+   private final RunContext ctx;
+   private final RunStore store;
+   private final long rescanMS;
+   private final WatchService watcher;
+   /** pending models not found in the queue by the time they were first missed */
+   private final Map<JobExecution,Long> missingSince = new IdentityHashMap<JobExecution,Long>();
+   private long lastQueueCheckMS = 0;
+
+   public ModelWatcher(RunContext ctx, long rescanMS) throws IOException
+   {  this.ctx = ctx;
+      this.store = ctx.getRunStore();
+      this.rescanMS = rescanMS;
+
+      watcher = FileSystems.getDefault().newWatchService();
+      new File(".").toPath().register(watcher, StandardWatchEventKinds.ENTRY_MODIFY);
+      File telemetryDir = JobTelemetry.getRecordDir(new File("."), ctx.getBasePrefix());
+      telemetryDir.mkdirs();
+      telemetryDir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                                     StandardWatchEventKinds.ENTRY_MODIFY);
+   }
+
+   /**
+    * Remove the finished models from pending.
+    *
+    * @return the removed models, {@link #hasQuality} tells whether they
+    *         succeeded.
+    */
+   public List<JobExecution> collectFinished(Collection<JobExecution> pending) throws IOException
+   {  store.updateQualities(ctx.getCorrelationFilename());
+
+      List<JobExecution> done = new ArrayList<JobExecution>();
+      for(Iterator<JobExecution> it = pending.iterator(); it.hasNext(); )
+      {  JobExecution model = it.next();
+         if(hasQuality(model) || hasEnded(ctx, model))
+         {  it.remove();
+            done.add(model);
+         }
+      }
+
+      long now = System.currentTimeMillis();
+      if(pending.size() > 0 && now - lastQueueCheckMS >= rescanMS)
+      {  lastQueueCheckMS = now;
+         try
+         {  collectLost(pending, done, now);
+         } catch(IOException e)
+         {  System.err.println("Could not read the queue: " + e.getMessage());
+         }
+      }
+      return done;
+   }
+
+   /**
+    * Move the models whose job has not been in the queue for LOSTGraceMS from
+    * pending to done.
+    */
+   private void collectLost(Collection<JobExecution> pending, List<JobExecution> done,
+                            long now) throws IOException
+   {  JobExecutor executor = ctx.getJobExecutor();
+      Map<String,Set<String>> queuedByPrefix = new HashMap<String,Set<String>>();
+      for(Iterator<JobExecution> it = pending.iterator(); it.hasNext(); )
+      {  JobExecution model = it.next();
+         String prefix = getNamePrefix(model);
+         Set<String> queued = queuedByPrefix.get(prefix);
+         if(queued == null)
+            queuedByPrefix.put(prefix, queued = executor.getQueuedJobNames(prefix));
+
+         if(queued.contains(model.getQueueJobName()))
+         {  missingSince.remove(model);
+            continue;
+         }
+         Long since = missingSince.get(model);
+         if(since == null)
+         {  missingSince.put(model, now);
+         }else if(now - since >= LOSTGraceMS)
+         {  System.err.printf("%s left the queue without telemetry record\n",
+                              model.getJobName());
+            missingSince.remove(model);
+            it.remove();
+            done.add(model);
+         }
+      }
+   }
+
+   /**
+    * @return the name prefix of the experiment which submitted model.
+    */
+   private static String getNamePrefix(JobExecution model)
+   {  String name = model.getJobName();
+      if(model.getJobDescription() == null) return name;
+      String suffix = model.getJobDescription().getType() + model.getExecutionId();
+      if(! name.endsWith(suffix)) return name;
+      return name.substring(0, name.length() - suffix.length());
+   }
+
+   public boolean hasQuality(JobExecution model)
+   {  return store.getQuality(model) != null;
+   }
+
+   /**
+    * The correlation line is written before the telemetry record.
+    */
+   public static boolean hasEnded(RunContext ctx, JobExecution model) throws IOException
+   {  return JobTelemetry.getEndStatus(new File("."), ctx.getBasePrefix(), 
+                                       model.getJobName()) != null;
+   }
+
+   /**
+    * Block until one of the watched files changed or rescanMS passed.
+    */
+   public void await() throws InterruptedException
+   {  WatchKey key = watcher.poll(rescanMS, TimeUnit.MILLISECONDS);
+      if(key != null)
+      {  key.pollEvents();
+         key.reset();
+      }
+   }
+
+   public void close() throws IOException
+   {  watcher.close();
+   }
+}
@@ -64,23 +64,29 @@ public class OERunner extends JobRunner
    String writeCsh(ParameterValue[] paramValues, String postJobCommands) throws IOException
    {  String currentDir = System.getenv("PWD");
       
-      String cshName = Settings.getNamePrefix() + "_" + getExecutableName() 
+      String cshName = ctx.getNamePrefix() + "_" + getExecutableName() 
                      + "_" + getJobId() + ".csh";    
       PrintStream out = new PrintStream(new FileOutputStream(cshName));
 
       out.println("#!/bin/csh -f\n");
       out.println("cd $TMPDIR\n");
       out.println("echo $HOST\n");
-      out.printf("cp %s/*.pdb .\n", currentDir);
-      out.printf("cp %s/*.mol .\n", currentDir);
-      out.printf("cp %s/*.mol2 .\n", currentDir);
-      out.printf("cp %s/%s .\n", currentDir,parentExec.getOutputFileName());
-      out.println(getExecutionCommand(paramValues));
+      JobTelemetry telemetry = createTelemetry(paramValues, currentDir);
+      telemetry.printStart(out);
+      String command = getExecutionCommand(paramValues);
+      StagingManifest staging = new StagingManifest(currentDir, command);
+      staging.addJobOutput(parentExec.getOutputFileName());
+      staging.print(out);
+      telemetry.printStaged(out);
+      out.println(command);
+      telemetry.printExecuted(out);
       out.printf("cp %s %s\n", getOutputFileName(), currentDir);
+      telemetry.printCopied(out);
       out.println(postJobCommands);
+      telemetry.printEnd(out);
       out.println("time");
       
-      if(Settings.isDebugMode())
+      if(ctx.isDebugMode())
          printDirCopyStatments(out, currentDir, cshName);
       out.close();
       
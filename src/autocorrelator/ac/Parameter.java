@@ -18,7 +18,9 @@ package autocorrelator.ac;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jdom.Element;
 
@@ -32,6 +34,9 @@ public class Parameter implements Serializable
    transient private final String type;
    transient private final String[] values;
    transient private final ParameterValue defaultValue;
+   /** index of every value, values not in the config follow the config values */
+   transient private final Map<String,Integer> valueIndex = new HashMap<String,Integer>();
+   transient private final List<String> otherValues = new ArrayList<String>();
    
    @SuppressWarnings("unchecked")
    public Parameter(Element xml, String parentId)
@@ -39,7 +44,7 @@ public class Parameter implements Serializable
       this.type = xml.getAttributeValue("type");
       this.id = parentId + '.' + name;
       
-      if( Settings.isDebugMode() )
+      if( RunContext.current().isDebugMode() )
          System.err.println(this.name + "\t" + this.type);  
       if("list".equals(type) || "value".equals(type))
          values = parseListPatameter(xml.getChildren("value"));
@@ -54,6 +59,8 @@ public class Parameter implements Serializable
          throw new Error("unknown parameter type " + type);
 
       defaultValue = parseDefaultValue(xml.getAttributeValue("default"));
+      for(int i=0; i<values.length; i++)
+         if(! valueIndex.containsKey(values[i])) valueIndex.put(values[i], i);
    }
 
    /**
@@ -143,8 +150,31 @@ public class Parameter implements Serializable
    {  return values.length;
    }
 
+   /**
+    * @param i index below {@link #getNValues} or returned by {@link #indexOf}.
+    */
    public String getValue(int i)
-   {  return values[i];
+   {  if(i < values.length) return values[i];
+      synchronized(otherValues)
+      {  return otherValues.get(i - values.length);
+      }
+   }
+
+   /**
+    * @return the index of value, a value which is not in the config file, eg.
+    *         a default value or one of an older config, gets an index of
+    *         {@link #getNValues} or larger.
+    */
+   public int indexOf(String value)
+   {  synchronized(otherValues)
+      {  Integer idx = valueIndex.get(value);
+         if(idx == null)
+         {  idx = values.length + otherValues.size();
+            otherValues.add(value);
+            valueIndex.put(value, idx);
+         }
+         return idx;
+      }
    }
 
    public ParameterValue getDefaultValue()
@@ -156,8 +186,12 @@ public class Parameter implements Serializable
    
    // This method is called immediately after an object of this class is deserialized.
    // This method returns the singleton instance.
+   /**
+    * Resolve to the Parameter of the RunContext bound by the deserializing
+    * thread.
+    */
    protected Object readResolve()
-   {  Parameter param = Settings.getConfigFile().getJobParameter(this.id);
+   {  Parameter param = RunContext.current().getConfigFile().getJobParameter(this.id);
       if(param == null) 
          throw new Error(String.format(
            "Error desirializing parameter %s: parameter does not exist in configfile!",
@@ -42,4 +42,12 @@ public class ParameterValue implements Serializable
    public int hashCode()
    {  return parameter.hashCode()*31 + value.hashCode();
    }
+
+   @Override
+   public boolean equals(Object o)
+   {  if(o == this) return true;
+      if(! (o instanceof ParameterValue)) return false;
+      ParameterValue other = (ParameterValue)o;
+      return parameter == other.parameter && value.equals(other.value);
+   }
 }
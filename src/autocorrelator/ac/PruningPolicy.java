@@ -0,0 +1,178 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prunes the subtree of a job execution whose models score poorly.
+ *
+ * Once minModels models below an execution have reported a quality and the
+ * best of them is below the given percentile of the qualities of all models
+ * of the experiment, the execution is pruned: the jobs below it submitted by
+ * this process are cancelled and {@link #isPruned} tells the submitter not to
+ * submit any more.
+ *
+ * Qualities are read from the correlation file at most every UPDATEIntervalMS.
+ * Without -maxInFlight all jobs are usually submitted before the first
+ * quality is known, pruning can then only cancel queued jobs.
+ */
+public class PruningPolicy
+{  private static final long UPDATEIntervalMS = 30000;
+
+   private final RunContext ctx;
+   private final int minModels;
+   private final double percentile;
+
+   /** number and best quality of the models below each execution by key */
+   private final Map<String,double[]> below = new HashMap<String,double[]>();
+   /** output files of the models whose quality was counted */
+   private final Set<String> counted = new HashSet<String>();
+   private final List<Double> qualities = new ArrayList<Double>();
+   private final Set<String> pruned = new HashSet<String>();
+   /** output files of the cancelled executions */
+   private final Set<String> cancelled = new HashSet<String>();
+   /** executions submitted by this process below each execution by key */
+   private final Map<String,List<JobExecution>> submittedBelow =
+      new HashMap<String,List<JobExecution>>();
+   private long lastUpdateMS = 0;
+   private int nCancelled = 0;
+
+   /**
+    * @param minModels number of models with quality needed before the subtree
+    *        of an execution may be pruned.
+    * @param percentile 0 - 100
+    */
+   public PruningPolicy(int minModels, double percentile)
+   {  this.ctx = RunContext.current();
+      this.minModels = minModels;
+      this.percentile = percentile;
+   }
+
+   /**
+    * Record that exec was submitted so that it is cancelled if one of its
+    * parents is pruned.
+    */
+   public synchronized void addSubmitted(JobExecution exec)
+   {  for(JobExecution anc = exec.getParentExecution();
+          anc != null && anc.getJobDescription() != null;
+          anc = anc.getParentExecution())
+      {  String key = ExecutionCache.getKey(anc);
+         List<JobExecution> execs = submittedBelow.get(key);
+         if(execs == null)
+         {  execs = new ArrayList<JobExecution>();
+            submittedBelow.put(key, execs);
+         }
+         execs.add(exec);
+      }
+   }
+
+   /**
+    * @return true if exec or one of its parents was pruned.
+    */
+   public synchronized boolean isPruned(JobExecution exec) throws IOException
+   {  if(System.currentTimeMillis() - lastUpdateMS > UPDATEIntervalMS)
+         update();
+
+      for(JobExecution e = exec; e != null && e.getJobDescription() != null;
+          e = e.getParentExecution())
+      {  if(pruned.contains(ExecutionCache.getKey(e))) return true;
+      }
+      return false;
+   }
+
+   private void update() throws IOException
+   {  lastUpdateMS = System.currentTimeMillis();
+      RunStore store = ctx.getRunStore();
+      store.updateQualities(ctx.getCorrelationFilename());
+
+      for(JobExecution model : store.getModels())
+      {  if(counted.contains(model.getOutputFileName())) continue;
+         String[] vals = store.getQuality(model);
+         if(vals == null) continue;
+
+         counted.add(model.getOutputFileName());
+         double quality = vals.length > 1 ? Double.parseDouble(vals[1]) : 0;
+         qualities.add(quality);
+         for(JobExecution anc = model.getParentExecution();
+             anc != null && anc.getJobDescription() != null;
+             anc = anc.getParentExecution())
+         {  String key = ExecutionCache.getKey(anc);
+            double[] stats = below.get(key);
+            if(stats == null)
+               below.put(key, new double[] { 1, quality });
+            else
+            {  stats[0]++;
+               stats[1] = Math.max(stats[1], quality);
+            }
+         }
+      }
+      if(qualities.size() < minModels) return;
+
+      List<Double> sorted = new ArrayList<Double>(qualities);
+      Collections.sort(sorted);
+      int idx = (int)Math.min(sorted.size()-1, Math.floor(percentile / 100 * sorted.size()));
+      double threshold = sorted.get(idx);
+
+      for(Map.Entry<String,double[]> e : below.entrySet())
+      {  double[] stats = e.getValue();
+         if(stats[0] >= minModels && stats[1] < threshold && ! pruned.contains(e.getKey()))
+            prune(e.getKey(), stats[1], threshold);
+      }
+   }
+
+   private void prune(String key, double best, double threshold) throws IOException
+   {  pruned.add(key);
+      List<JobExecution> execs = submittedBelow.remove(key);
+      System.err.printf("Pruning %s: best quality %g below %g\n", key, best, threshold);
+      if(execs == null) return;
+
+      // children were submitted after their parents
+      JobExecutor executor = ctx.getJobExecutor();
+      for(int i=execs.size()-1; i>=0; i--)
+      {  JobExecution exec = execs.get(i);
+         if(counted.contains(exec.getOutputFileName())) continue;
+         executor.cancel(exec);
+         cancelled.add(exec.getOutputFileName());
+         nCancelled++;
+      }
+   }
+
+   /**
+    * @return true if exec or one of its parents was cancelled, a cancelled
+    *         model never reports a quality or ends.
+    */
+   public synchronized boolean isCancelled(JobExecution exec)
+   {  for(JobExecution e = exec; e != null && e.getJobDescription() != null;
+          e = e.getParentExecution())
+      {  if(cancelled.contains(e.getOutputFileName())) return true;
+      }
+      return false;
+   }
+
+   public synchronized String getSummary()
+   {  return String.format("Pruned %d subtrees, cancelled %d jobs", pruned.size(), nCancelled);
+   }
+}
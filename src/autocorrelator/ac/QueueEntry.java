@@ -0,0 +1,43 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+/**
+ * Name and task index under which a {@link JobExecutor} queued a job.
+ *
+ * For jobs submitted on their own this is the job name and task index 0,
+ * for tasks of an array job this is the name of the array job and the 1 based
+ * index of the task.
+ */
+public class QueueEntry
+{  private final String queueJobName;
+   private final int taskIndex;
+
+   public QueueEntry(String queueJobName, int taskIndex)
+   {  this.queueJobName = queueJobName;
+      this.taskIndex = taskIndex;
+   }
+
+   public String getQueueJobName()
+   {  return queueJobName;
+   }
+
+   public int getTaskIndex()
+   {  return taskIndex;
+   }
+}
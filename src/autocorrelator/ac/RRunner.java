@@ -19,7 +19,6 @@ package autocorrelator.ac;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Map;
@@ -31,9 +30,9 @@ public class RRunner extends JobRunner
    
    RRunner(String jobType, JobExecution parentExec)
    {  super(jobType, parentExec);
-      this.responseFile = Settings.getConfigFile().getMolSourceDesc()
+      this.responseFile = ctx.getConfigFile().getMolSourceDesc()
                      .getMoleculeSource().getTabDataFileName();
-      this.correlationFileName = Settings.getCorrelationFilename();
+      this.correlationFileName = ctx.getCorrelationFilename();
    }
 
    @Override
@@ -47,7 +46,7 @@ public class RRunner extends JobRunner
    @Override
    String writeCsh(ParameterValue[] paramValues, String postJobCommands) throws IOException
    {  String currentDir = System.getenv("PWD");
-      String outFileBase = Settings.getNamePrefix() + "_R_"+ getJobId();    
+      String outFileBase = ctx.getNamePrefix() + "_R_"+ getJobId();    
       String cshName     = outFileBase + ".csh";
       
       PrintStream out = new PrintStream(new FileOutputStream(cshName));
@@ -57,9 +56,14 @@ public class RRunner extends JobRunner
       
       out.println("#!/bin/csh -f");
       out.println("cd $TMPDIR");
+      if(ctx.getConfigFile().useToolDaemon())
+         out.println("acToolDaemon.csh");
+      JobTelemetry telemetry = createTelemetry(paramValues, currentDir);
+      telemetry.printStart(out);
       //out.printf("cp %s/%s .\n", currentDir, rCommandFile);
       out.printf("cp %s/%s .\n", currentDir, parentExec.getOutputFileName());
       out.printf("cp %s/%s ./inhibs.tab\n", currentDir, "inhibitors.tab");
+      telemetry.printStaged(out);
       
 
       // Clean and seperate out the "legal" variables
@@ -102,13 +106,16 @@ public class RRunner extends JobRunner
       out.printf("R --no-save --vanilla < autoCorrelate.R\n");
       out.printf("rEvaluator.csh -tabFile autoCorrelate.tab -runId %s -currentDir %s\n"
                , getOutputFileName(), currentDir);
+      telemetry.printExecuted(out);
       out.printf("cp eval.txt %s/%s\n", currentDir, getOutputFileName());
-      out.printf("cat best.txt >> %s/%s\n", currentDir, Settings.getCorrelationFilename());
+      out.printf("cat best.txt >> %s/%s\n", currentDir, ctx.getCorrelationFilename());
+      telemetry.printCopied(out);
       
       out.println(postJobCommands);
+      telemetry.printEnd(out);
       out.println("time");
       
-      if(Settings.isDebugMode())
+      if(ctx.isDebugMode())
          printDirCopyStatments(out, currentDir, cshName);
       
       out.close();
@@ -116,18 +123,9 @@ public class RRunner extends JobRunner
       return cshName;
    }
 
-   public JobExecution executeJob(JobDescription jd, ParameterValue[] paramVals, 
-            JobExecution parent, int cycle, String postJobCommands) throws IOException
-   {  JobExecution jobExec = super.executeJob(jd, paramVals, parent, cycle, postJobCommands);
-   
-      String outFileBase = Settings.getNamePrefix() + "_R_" + getJobId();    
-      String jobExecFile = outFileBase + ".jobExec";
-      ObjectOutputStream oStrm = new ObjectOutputStream(new FileOutputStream(jobExecFile, true));
-      oStrm.writeObject(jobExec);
-      oStrm.close();
-      
-      
-      return jobExec;
+   @Override
+   protected boolean isModel()
+   {  return true;
    }
    
    @Override
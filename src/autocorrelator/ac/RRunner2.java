@@ -18,7 +18,6 @@ package autocorrelator.ac;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Map;
@@ -29,9 +28,9 @@ public class RRunner2 extends JobRunner
    
    RRunner2(String jobType, JobExecution parentExec)
    {  super(jobType, parentExec);
-      this.responseFile = Settings.getConfigFile().getMolSourceDesc()
+      this.responseFile = ctx.getConfigFile().getMolSourceDesc()
                      .getMoleculeSource().getTabDataFileName();
-      this.correlationFileName = Settings.getCorrelationFilename();
+      this.correlationFileName = ctx.getCorrelationFilename();
    }
 
    @Override
@@ -45,7 +44,7 @@ public class RRunner2 extends JobRunner
    @Override
    String writeCsh(ParameterValue[] paramValues, String postJobCommands) throws IOException
    {  String currentDir = System.getenv("PWD");
-      String outFileBase = Settings.getNamePrefix() + "_R_"+ getJobId();    
+      String outFileBase = ctx.getNamePrefix() + "_R_"+ getJobId();    
       String cshName     = outFileBase + ".csh";
       
       PrintStream out = new PrintStream(new FileOutputStream(cshName));
@@ -57,8 +56,13 @@ public class RRunner2 extends JobRunner
       out.println("#!/bin/csh -f");
       out.println("echo $HOSTNAME");
       out.println("cd $TMPDIR");
+      if(ctx.getConfigFile().useToolDaemon())
+         out.println("acToolDaemon.csh");
+      JobTelemetry telemetry = createTelemetry(paramValues, currentDir);
+      telemetry.printStart(out);
       out.printf("cp %s/%s .\n", currentDir, parentExec.getOutputFileName());
       out.printf("cp %s/%s ./inhibs.tab\n", currentDir, responseFile);
+      telemetry.printStaged(out);
 
       out.printf("acAnalyse.pl -mol %s -tab inhibs.tab -nvar %s -responseTag IC50 "
                + "-method %s -outR2File r2file.txt -log %s\n",
@@ -66,17 +70,20 @@ public class RRunner2 extends JobRunner
                pvMap.get("numberOfVariables"),
                pvMap.get("method"),
                getOutputFileName());
+      telemetry.printExecuted(out);
       
       out.printf("echo %s `cat r2file.txt` >> %s/%s\n",
                getOutputFileName(),
                currentDir, correlationFileName);
    
       out.printf("cp %s %s\n", getOutputFileName(), currentDir);
+      telemetry.printCopied(out);
    
       out.println(postJobCommands);
+      telemetry.printEnd(out);
       out.println("time");
       
-      if(Settings.isDebugMode())
+      if(ctx.isDebugMode())
          printDirCopyStatments(out, currentDir, cshName);
       
       out.close();
@@ -85,17 +92,8 @@ public class RRunner2 extends JobRunner
    }
 
    @Override
-   public JobExecution executeJob(JobDescription jd, ParameterValue[] paramVals, 
-            JobExecution parent, int cycle, String postJobCommands) throws IOException
-   {  JobExecution jobExec = super.executeJob(jd, paramVals, parent, cycle, postJobCommands);
-   
-      String outFileBase = Settings.getNamePrefix() + "_R_" + getJobId();    
-      String jobExecFile = outFileBase + ".jobExec";
-      ObjectOutputStream oStrm = new ObjectOutputStream(new FileOutputStream(jobExecFile, true));
-      oStrm.writeObject(jobExec);
-      oStrm.close();
-      
-      return jobExec;
+   protected boolean isModel()
+   {  return true;
    }
    
    @Override
@@ -0,0 +1,255 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdom.Element;
+
+/**
+ * State of one autocorrelator experiment: config file, name prefix, debug
+ * mode, queue options, job executor, journal and the job id allocator.
+ *
+ * Several experiments may run in one JVM, each driven by its own thread which
+ * binds its RunContext with {@link #bind}. Threads started by a bound thread
+ * inherit its context. Objects which need the context keep the one current
+ * when they were created, deserialized JobDescriptions and Parameters are
+ * resolved against the context bound by the deserializing thread.
+ *
+ * {@link Settings} gives static access to the current context.
+ */
+public class RunContext
+{  private static final RunContext DEFAULTContext = new RunContext();
+   private static final InheritableThreadLocal<RunContext> CURRENT =
+      new InheritableThreadLocal<RunContext>();
+
+   private String namePrefix = null;
+   private String basePrefix = null;
+   private String correlationFileName = null;
+   private Boolean debug = null;
+   private ConfigFile configFile = null;
+   private String queueOptions = "";
+   private final AtomicInteger executionCounter = new AtomicInteger();
+   private JobExecutor jobExecutor = null;
+   private RunJournal journal = null;
+   private RunStore runStore = null;
+
+   public RunContext()
+   {
+   }
+
+   /**
+    * @return the context bound to this thread or the process wide default.
+    */
+   public static RunContext current()
+   {  RunContext ctx = CURRENT.get();
+      if(ctx == null) return DEFAULTContext;
+      return ctx;
+   }
+
+   /**
+    * Make ctx the current context of this thread.
+    *
+    * @return the previously bound context, to be passed to bind() again when
+    *         done, may be null.
+    */
+   public static RunContext bind(RunContext ctx)
+   {  RunContext previous = CURRENT.get();
+      if(ctx == null)
+         CURRENT.remove();
+      else
+         CURRENT.set(ctx);
+      return previous;
+   }
+
+   public synchronized void setNamePrefix(String prefix)
+   {  assert namePrefix == null : "namePrefix should be set only once";
+      namePrefix = prefix;
+      basePrefix = prefix;
+      correlationFileName = prefix + "_ModelCorrelation.txt";
+   }
+
+   /** for use by GA */
+   public synchronized void setNamePrefix(String prefix, int cycle)
+   {  assert namePrefix == null : "namePrefix should be set only once";
+      namePrefix = prefix + '_' + cycle;
+      basePrefix = prefix;
+      correlationFileName = prefix + "_ModelCorrelation.txt";
+   }
+
+   /**
+    * For the part of a split experiment starting at designStart: queue jobs,
+    * script, output and journal files are named with prefix_dStart so that
+    * parts running in the same directory do not overwrite each other. As for
+    * the GA cycles the store, telemetry and correlation file of prefix are
+    * shared so that a GA finds the models of all parts.
+    */
+   public synchronized void setNamePrefix(String prefix, String designStart)
+   {  assert namePrefix == null : "namePrefix should be set only once";
+      namePrefix = prefix + "_d" + designStart;
+      basePrefix = prefix;
+      correlationFileName = prefix + "_ModelCorrelation.txt";
+   }
+
+   public synchronized void setDebugMode(boolean isDebug)
+   {  assert debug == null : "DebugMode should be set only once";
+      debug = isDebug;
+   }
+
+   /**
+    * Parse the config file with this context bound so that the job
+    * descriptions and parameters register with it.
+    */
+   public void readConfigFile(Element rootElement)
+   {  ConfigFile cFile;
+      synchronized(this)
+      {  assert configFile == null : "ConfigFile should be read only once!";
+         cFile = configFile = new ConfigFile();
+      }
+
+      RunContext previous = bind(this);
+      try
+      {  cFile.init(rootElement);
+      } finally
+      {  bind(previous);
+      }
+   }
+
+   /**
+    * Prefix to make filenames and queue naes unique for this autocorrelator run.
+    */
+   public String getNamePrefix()
+   {  return namePrefix;
+   }
+
+   /**
+    * Prefix shared by all GA cycles and design parts of this run, the name
+    * prefix otherwise.
+    */
+   public synchronized String getBasePrefix()
+   {  return basePrefix;
+   }
+
+   public int getNextExecutionCount()
+   {  return executionCounter.getAndIncrement();
+   }
+
+   /**
+    * Make sure the next execution count is at least next.
+    */
+   private void reserveExecutionCounts(int next)
+   {  int current;
+      while((current = executionCounter.get()) < next
+            && ! executionCounter.compareAndSet(current, next))
+      {  // retry
+      }
+   }
+
+   public boolean isDebugMode()
+   {  return debug != null && debug;
+   }
+
+   public ConfigFile getConfigFile()
+   {  return configFile;
+   }
+
+   /**
+    * @see Settings#getCorrelationFilename()
+    */
+   public String getCorrelationFilename()
+   {  return correlationFileName;
+   }
+
+   public void setQueueOptions(String queOpts)
+   {  if(queOpts == null) return;
+      queueOptions = queOpts;
+   }
+
+   public String getQueueOptions()
+   {  return queueOptions;
+   }
+
+   public synchronized void setJobExecutor(JobExecutor executor)
+   {  assert jobExecutor == null : "JobExecutor should be set only once";
+      jobExecutor = executor;
+   }
+
+   /**
+    * The backend running the jobs, the grid engine unless set otherwise.
+    */
+   public synchronized JobExecutor getJobExecutor()
+   {  if(jobExecutor == null)
+         jobExecutor = new GridEngineExecutor(false);
+      return jobExecutor;
+   }
+
+   /**
+    * Open the journal namePrefix.journal which records all submissions of this
+    * run, execution ids continue after those of the journaled run.
+    */
+   public synchronized RunJournal openJournal() throws IOException
+   {  assert journal == null : "Journal should be opened only once";
+      journal = new RunJournal(this);
+      reserveExecutionCounts(journal.getMaxExecutionId() + 1);
+      return journal;
+   }
+
+   /**
+    * Continue a GA run in the same process with the next cycle: the name
+    * prefix becomes basePrefix_cycle and the journal of the previous cycle is
+    * replaced by the one of this cycle.
+    */
+   public synchronized RunJournal startCycle(int cycle) throws IOException
+   {  assert basePrefix != null : "namePrefix should be set before the next cycle";
+      namePrefix = basePrefix + '_' + cycle;
+      if(journal != null)
+      {  journal.close();
+         journal = null;
+      }
+      return openJournal();
+   }
+
+   /**
+    * @return the journal of this run or null if none was opened.
+    */
+   public synchronized RunJournal getJournal()
+   {  return journal;
+   }
+
+   /**
+    * @return the store of the models of this experiment, shared with the GA
+    *         cycles of the same base name prefix.
+    */
+   public synchronized RunStore getRunStore() throws IOException
+   {  if(runStore == null)
+      {  runStore = new RunStore(this, new File(basePrefix + RunStore.SUFFIX));
+         runStore.refresh();
+      }
+      return runStore;
+   }
+
+   /**
+    * Runtimes of job types learned from earlier runs in the current directory,
+    * shared by all contexts.
+    */
+   public RuntimeEstimator getRuntimeEstimator() throws IOException
+   {  return RuntimeEstimator.getInstance();
+   }
+}
@@ -0,0 +1,240 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append only journal of the executions submitted by one run so that a run
+ * which died partway continues where it stopped when started again with the
+ * same name prefix.
+ *
+ * The journal namePrefix.journal has tab separated lines:
+ * <pre>
+ * seed  designSeed
+ * S     executionId jobName queueJobName taskIndex cycle outputFile key
+ * F     key
+ * </pre>
+ * key is the {@link ExecutionCache} key of the execution. Every line is
+ * flushed when written, a line truncated by a crash is ignored.
+ *
+ * An execution of an earlier run has finished if its {@link JobTelemetry}
+ * record reports status 0, or, without record, if its output exists and the
+ * job is no longer queued. Finished executions found by {@link #resume} are
+ * journaled as F lines.
+ */
+public class RunJournal
+{  public static final String SUFFIX = ".journal";
+
+   private final RunContext ctx;
+   private final File file;
+   private final PrintStream out;
+   /** executions submitted by earlier runs by key */
+   private final Map<String,Entry> earlier = new HashMap<String,Entry>();
+   private final Set<String> finished = new HashSet<String>();
+   /** keys of journaled executions which were submitted again */
+   private final Set<String> resubmitted = new HashSet<String>();
+   private Set<String> queuedNames = null;
+   private Long seed = null;
+   private int maxExecutionId = -1;
+
+   private int nFinished = 0;
+   private int nReattached = 0;
+   private int nResubmitted = 0;
+
+   RunJournal(RunContext ctx) throws IOException
+   {  this.ctx = ctx;
+      this.file = new File(ctx.getNamePrefix() + SUFFIX);
+      if(file.exists())
+         read();
+
+      out = new PrintStream(new FileOutputStream(file, true));
+      if(! endsWithNewline(file)) out.println();
+   }
+
+   private void read() throws IOException
+   {  BufferedReader in = new BufferedReader(new FileReader(file));
+      try
+      {  String line;
+         while((line = in.readLine()) != null)
+         {  String[] fields = line.split("\t", 8);
+            try
+            {  if("seed".equals(fields[0]) && fields.length == 2)
+                  seed = Long.valueOf(fields[1]);
+               else if("F".equals(fields[0]) && fields.length == 2)
+                  finished.add(fields[1]);
+               else if("S".equals(fields[0]) && fields.length == 8)
+               {  Entry e = new Entry(fields);
+                  earlier.put(e.key, e);
+                  maxExecutionId = Math.max(maxExecutionId, e.executionId);
+               }
+            } catch(NumberFormatException e)
+            {  // truncated line
+            }
+         }
+      } finally
+      {  in.close();
+      }
+   }
+
+   private static boolean endsWithNewline(File f) throws IOException
+   {  if(f.length() == 0) return true;
+      RandomAccessFile raf = new RandomAccessFile(f, "r");
+      try
+      {  raf.seek(f.length() - 1);
+         return raf.read() == '\n';
+      } finally
+      {  raf.close();
+      }
+   }
+
+   /**
+    * @return true if an earlier run journaled executions.
+    */
+   public boolean isResuming()
+   {  return earlier.size() > 0;
+   }
+
+   /**
+    * @return the execution ids of the new run must be larger than this so
+    *         that job and file names do not collide with earlier runs.
+    */
+   int getMaxExecutionId()
+   {  return maxExecutionId;
+   }
+
+   /**
+    * @return the seed journaled by an earlier run, defaultSeed is journaled
+    *         and returned if there is none.
+    */
+   public synchronized long getSeed(long defaultSeed)
+   {  if(seed == null)
+      {  seed = defaultSeed;
+         out.println("seed\t" + seed);
+         out.flush();
+      }
+      return seed;
+   }
+
+   synchronized void recordSubmission(JobExecution exec)
+   {  out.printf("S\t%d\t%s\t%s\t%d\t%d\t%s\t%s\n", exec.getExecutionId(),
+            exec.getJobName(), exec.getQueueJobName(), exec.getTaskIndex(),
+            exec.getCycle(), exec.getOutputFileName(), ExecutionCache.getKey(exec));
+      out.flush();
+   }
+
+   /**
+    * Look up the execution of jd with paramVals and parent in the journal of
+    * the earlier run.
+    *
+    * Executions whose parent was submitted again are not resumed because
+    * their input is recomputed.
+    *
+    * @return the execution if it has finished or is still queued, null if it
+    *         has to be submitted.
+    */
+   public synchronized JobExecution resume(JobExecution parent, JobDescription jd,
+                                           ParameterValue[] paramVals) throws IOException
+   {  if(earlier.size() == 0) return null;
+
+      String key = ExecutionCache.getKey(parent, jd, paramVals);
+      Entry e = earlier.get(key);
+      if(e == null) return null;
+
+      boolean parentValid = parent.getJobDescription() == null
+                         || ! resubmitted.contains(ExecutionCache.getKey(parent));
+      if(parentValid && (finished.contains(key) || hasFinished(e)))
+      {  nFinished++;
+      }else if(parentValid && getQueuedNames().contains(e.queueJobName))
+      {  nReattached++;
+      }else
+      {  earlier.remove(key);
+         resubmitted.add(key);
+         nResubmitted++;
+         return null;
+      }
+      return new JobExecution(e.jobName, e.executionId, parent, jd, paramVals,
+               e.outputFile, e.cycle, new QueueEntry(e.queueJobName, e.taskIndex));
+   }
+
+   private boolean hasFinished(Entry e) throws IOException
+   {  Double status = JobTelemetry.getEndStatus(new File("."), ctx.getBasePrefix(), e.jobName);
+      boolean done;
+      if(status != null)
+         done = status.doubleValue() == 0;
+      else
+         done = new File(e.outputFile).exists()
+                && ! getQueuedNames().contains(e.queueJobName);
+
+      if(done)
+      {  finished.add(e.key);
+         out.println("F\t" + e.key);
+         out.flush();
+      }
+      return done;
+   }
+
+   private Set<String> getQueuedNames() throws IOException
+   {  if(queuedNames == null)
+         queuedNames = ctx.getJobExecutor().getQueuedJobNames(ctx.getNamePrefix());
+      return queuedNames;
+   }
+
+   /**
+    * @return summary of the executions resumed so far.
+    */
+   public synchronized String getSummary()
+   {  return String.format("%s: %d finished, %d still queued, %d submitted again",
+                           file, nFinished, nReattached, nResubmitted);
+   }
+
+   public synchronized void close()
+   {  out.close();
+   }
+
+
+   private static class Entry
+   {  final int executionId;
+      final String jobName;
+      final String queueJobName;
+      final int taskIndex;
+      final int cycle;
+      final String outputFile;
+      final String key;
+
+      Entry(String[] fields)
+      {  executionId  = Integer.parseInt(fields[1]);
+         jobName      = fields[2];
+         queueJobName = fields[3];
+         taskIndex    = Integer.parseInt(fields[4]);
+         cycle        = Integer.parseInt(fields[5]);
+         outputFile   = fields[6];
+         key          = fields[7];
+      }
+   }
+}
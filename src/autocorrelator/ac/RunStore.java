@@ -0,0 +1,518 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Append only binary store of the model executions of an experiment and their
+ * qualities, shared by the AutoCorrelator run and all GA cycles with the same
+ * base name prefix: basePrefix.acstore.
+ *
+ * The file starts with the magic number "ACST" and the format VERSION,
+ * followed by records: type byte, payload length, payload and CRC32 of the
+ * payload. Records are:
+ * <dl>
+ * <dt>D</dt><dd>dictionary string, strings are numbered in file order</dd>
+ * <dt>E</dt><dd>execution: parent, JobDescription id, parameter ids and values
+ *               as dictionary indexes, names and output file. Executions are
+ *               numbered in file order, parents are stored before their
+ *               children.</dd>
+ * <dt>Q</dt><dd>quality of a model execution</dd>
+ * <dt>H</dt><dd>bytes and lines of the correlation file read into Q
+ *               records</dd>
+ * <dt>P</dt><dd>pending correlation line of a model of this experiment which
+ *               was not yet stored, it becomes a Q record once the model
+ *               is stored</dd>
+ * </dl>
+ * Writers append under an exclusive file lock after reading the records
+ * appended by other processes, so dictionary and execution numbers are the
+ * same for all readers. A record truncated by a crash is ignored and
+ * overwritten by the next append.
+ *
+ * Executions are looked up by output file name, which is unique per execution.
+ */
+public class RunStore
+{  public static final String SUFFIX = ".acstore";
+   static final int VERSION = 1;
+   private static final int MAGIC = 0x41435354;
+   private static final int HEADERLength = 8;
+
+   private static final byte DICTIONARY = 'D';
+   private static final byte EXECUTION  = 'E';
+   private static final byte QUALITY    = 'Q';
+   private static final byte CORRELATIONMark = 'H';
+   private static final byte PENDINGLine = 'P';
+
+   private final RunContext ctx;
+   private final File file;
+
+   private final List<String> strings = new ArrayList<String>();
+   private final Map<String,Integer> stringIds = new HashMap<String,Integer>();
+   /** executions by store id */
+   private final List<JobExecution> executions = new ArrayList<JobExecution>();
+   private final Map<String,Integer> byOutputFile = new HashMap<String,Integer>();
+   private final List<JobExecution> models = new ArrayList<JobExecution>();
+   private final Map<Integer,Quality> qualities = new HashMap<Integer,Quality>();
+   /** correlation lines read before their model was stored by output file */
+   private final Map<String,Quality> pendingLines = new HashMap<String,Quality>();
+   /** bytes of the file read so far */
+   private long loadedLength = 0;
+   /** bytes and lines of the correlation file whose qualities are stored */
+   private long correlationOffset = 0;
+   private int correlationLines = 0;
+
+   /** dictionary strings and records of the append in progress */
+   private final Map<String,Integer> pendingIds = new HashMap<String,Integer>();
+   private int pendingExecutions = 0;
+   private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+   RunStore(RunContext ctx, File file)
+   {  this.ctx = ctx;
+      this.file = file;
+   }
+
+   /**
+    * Read the records appended since the last call.
+    */
+   public synchronized void refresh() throws IOException
+   {  if(! file.exists()) return;
+
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try
+      {  catchUp(raf.getChannel());
+      } finally
+      {  raf.close();
+      }
+   }
+
+   /**
+    * @return the model executions in the order they were stored.
+    */
+   public synchronized List<JobExecution> getModels()
+   {  return new ArrayList<JobExecution>(models);
+   }
+
+   /**
+    * @return the stored execution with outputFileName or null.
+    */
+   public synchronized JobExecution getExecution(String outputFileName)
+   {  Integer id = byOutputFile.get(outputFileName);
+      if(id == null) return null;
+      return executions.get(id);
+   }
+
+   /**
+    * @return quality strings as found in the correlation file, the output
+    *         file name followed by the values, or null if not yet stored.
+    */
+   public synchronized String[] getQuality(JobExecution model)
+   {  Quality q = getQualityRecord(model);
+      return q == null ? null : q.values;
+   }
+
+   /**
+    * @return position of the quality in the correlation file or -1 if not
+    *         yet stored.
+    */
+   public synchronized int getQualityIndex(JobExecution model)
+   {  Quality q = getQualityRecord(model);
+      return q == null ? -1 : q.index;
+   }
+
+   private Quality getQualityRecord(JobExecution model)
+   {  Integer id = byOutputFile.get(model.getOutputFileName());
+      if(id == null) return null;
+      return qualities.get(id);
+   }
+
+   /**
+    * Store model and the chain of its parent executions.
+    */
+   public void addModel(final JobExecution model) throws IOException
+   {  append(new RecordWriter()
+      {  public void write() throws IOException
+         {  writeExecution(model, true);
+         }
+      });
+   }
+
+   /**
+    * Store the qualities of the lines appended to the correlation file since
+    * the last update, lines are "outputFileName quality ...". Only the first
+    * line of an execution is used.
+    *
+    * The number of bytes and lines read from the correlation file is stored
+    * so that the file is read once in total instead of once per model. Lines
+    * of models of this experiment which are not yet stored, eg. because the
+    * submitter was slower than the job, are kept pending in the store.
+    */
+   public void updateQualities(final String correlationFileName) throws IOException
+   {  final File corrFile = new File(correlationFileName);
+      refresh();
+      if((! corrFile.exists() || corrFile.length() <= correlationOffset)
+         && ! hasResolvablePending())
+         return;
+
+      append(new RecordWriter()
+      {  public void write() throws IOException
+         {  readCorrelations(corrFile);
+         }
+      });
+   }
+
+   private synchronized boolean hasResolvablePending()
+   {  for(String outputFile : pendingLines.keySet())
+      {  if(byOutputFile.containsKey(outputFile)) return true;
+      }
+      return false;
+   }
+
+   private void readCorrelations(File corrFile) throws IOException
+   {  Set<Integer> found = new HashSet<Integer>();
+      // lines whose model has been stored since they were read
+      for(Quality q : pendingLines.values())
+      {  Integer id = byOutputFile.get(q.values[0]);
+         if(id != null && ! qualities.containsKey(id) && found.add(id))
+            writeQuality(id, q.index, q.values);
+      }
+      if(! corrFile.exists()) return;
+
+      Set<String> foundPending = new HashSet<String>();
+      int lineNo = correlationLines;
+      long end = correlationOffset;
+      RandomAccessFile raf = new RandomAccessFile(corrFile, "r");
+      try
+      {  // whole lines up to the current length only, jobs may be appending
+         long len = raf.length();
+         if(len <= correlationOffset) return;
+         raf.seek(correlationOffset);
+         InputStream in = new BufferedInputStream(Channels.newInputStream(raf.getChannel()));
+         ByteArrayOutputStream line = new ByteArrayOutputStream();
+         for(long pos=correlationOffset; pos<len; pos++)
+         {  int b = in.read();
+            if(b < 0) break;
+            if(b != '\n')
+            {  line.write(b);
+               continue;
+            }
+            readCorrelation(line.toString("ISO-8859-1"), lineNo++, found, foundPending);
+            line.reset();
+            end = pos + 1;
+         }
+      } finally
+      {  raf.close();
+      }
+      if(end == correlationOffset) return;
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(12);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeLong(end);
+      out.writeInt(lineNo);
+      writeRecord(CORRELATIONMark, bytes.toByteArray());
+   }
+
+   /**
+    * Store the quality of line lineNo of the correlation file if its model
+    * is stored and has no quality yet, keep it pending if the model is one of
+    * this experiment but not yet stored.
+    */
+   private void readCorrelation(String line, int lineNo, Set<Integer> found,
+                                Set<String> foundPending) throws IOException
+   {  String[] vals = line.trim().split("\\s+");
+      if(vals.length < 2) return;
+
+      Integer id = byOutputFile.get(vals[0]);
+      if(id == null)
+      {  // lines of other experiments sharing the file are skipped
+         String prefix = ctx.getBasePrefix();
+         if(prefix != null && isOwnOutput(vals[0], prefix)
+            && ! pendingLines.containsKey(vals[0]) && foundPending.add(vals[0]))
+            writeLine(PENDINGLine, -1, lineNo, vals);
+         return;
+      }
+      if(qualities.containsKey(id) || ! found.add(id)) return;
+      writeQuality(id, lineNo, vals);
+   }
+
+   /**
+    * @return true if outputFile was written by a job of the experiment
+    *         basePrefix: the name starts with basePrefix followed by "_".
+    *         Experiments whose prefix only starts with basePrefix do not match.
+    */
+   static boolean isOwnOutput(String outputFile, String basePrefix)
+   {  String name = outputFile.substring(outputFile.lastIndexOf('/') + 1);
+      return name.startsWith(basePrefix + '_');
+   }
+
+   private synchronized void append(RecordWriter writer) throws IOException
+   {  RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try
+      {  FileChannel ch = raf.getChannel();
+         FileLock lock = ch.lock();
+         try
+         {  catchUp(ch);
+
+            pending.reset();
+            pendingIds.clear();
+            if(ch.size() < HEADERLength)
+            {  DataOutputStream out = new DataOutputStream(pending);
+               out.writeInt(MAGIC);
+               out.writeInt(VERSION);
+               loadedLength = 0;
+            }
+
+            writer.write();
+
+            if(pending.size() > 0)
+            {  // drop a record left incomplete by a crashed writer
+               ch.truncate(loadedLength);
+               ch.write(ByteBuffer.wrap(pending.toByteArray()), loadedLength);
+               ch.force(false);
+               catchUp(ch);
+            }
+         } finally
+         {  lock.release();
+         }
+      } finally
+      {  raf.close();
+      }
+   }
+
+   /**
+    * @return store id of exec, the id the pending record will get if exec
+    *         is not yet stored.
+    */
+   private int writeExecution(JobExecution exec, boolean isModel) throws IOException
+   {  Integer id = byOutputFile.get(exec.getOutputFileName());
+      if(id != null) return id;
+
+      int parentId = -1;
+      if(exec.getParentExecution() != null)
+         parentId = writeExecution(exec.getParentExecution(), false);
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(100);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(parentId);
+      JobDescription jd = exec.getJobDescription();
+      out.writeInt(jd == null ? -1 : stringId(jd.getId()));
+      out.writeBoolean(isModel);
+      out.writeInt(exec.getExecutionId());
+      out.writeInt(exec.getCycle());
+      out.writeUTF(exec.getJobName());
+      out.writeUTF(exec.getQueueJobName());
+      out.writeInt(exec.getTaskIndex());
+      out.writeUTF(exec.getOutputFileName());
+      ParameterValue[] vals = exec.getParamVals();
+      out.writeInt(vals == null ? 0 : vals.length);
+      for(int i=0; vals != null && i<vals.length; i++)
+      {  out.writeInt(stringId(vals[i].getParameter().getId()));
+         out.writeInt(stringId(vals[i].getValue()));
+      }
+      writeRecord(EXECUTION, bytes.toByteArray());
+
+      id = executions.size() + pendingExecutions++;
+      byOutputFile.put(exec.getOutputFileName(), id);
+      return id;
+   }
+
+   private void writeQuality(int execId, int index, String[] values) throws IOException
+   {  writeLine(QUALITY, execId, index, values);
+   }
+
+   private void writeLine(byte type, int execId, int index, String[] values) 
+   throws IOException
+   {  ByteArrayOutputStream bytes = new ByteArrayOutputStream(100);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(execId);
+      out.writeInt(index);
+      out.writeInt(values.length);
+      for(String v : values)
+         out.writeUTF(v);
+      writeRecord(type, bytes.toByteArray());
+   }
+
+   private int stringId(String s) throws IOException
+   {  Integer id = stringIds.get(s);
+      if(id == null) id = pendingIds.get(s);
+      if(id != null) return id;
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(s.length() + 2);
+      new DataOutputStream(bytes).writeUTF(s);
+      writeRecord(DICTIONARY, bytes.toByteArray());
+
+      id = strings.size() + pendingIds.size();
+      pendingIds.put(s, id);
+      return id;
+   }
+
+   private void writeRecord(byte type, byte[] payload) throws IOException
+   {  DataOutputStream out = new DataOutputStream(pending);
+      out.writeByte(type);
+      out.writeInt(payload.length);
+      out.write(payload);
+      out.writeInt(crc(payload));
+   }
+
+   private static int crc(byte[] payload)
+   {  CRC32 crc = new CRC32();
+      crc.update(payload);
+      return (int)crc.getValue();
+   }
+
+   /**
+    * Read the complete records after loadedLength.
+    */
+   private void catchUp(FileChannel ch) throws IOException
+   {  // ids handed out for an append which was not written are invalid
+      pendingIds.clear();
+      if(pendingExecutions > 0)
+      {  byOutputFile.clear();
+         for(int i=0; i<executions.size(); i++)
+            byOutputFile.put(executions.get(i).getOutputFileName(), i);
+         pendingExecutions = 0;
+      }
+
+      long size = ch.size();
+      long pos = loadedLength;
+      ch.position(pos);
+      DataInputStream in = new DataInputStream(
+                                 new BufferedInputStream(Channels.newInputStream(ch)));
+      if(pos == 0)
+      {  if(size < HEADERLength) return;
+         if(in.readInt() != MAGIC)
+            throw new IOException(file + " is not an autocorrelator run store");
+         int version = in.readInt();
+         if(version > VERSION)
+            throw new Error(String.format("%s has version %d, only %d is supported",
+                                          file, version, VERSION));
+         pos = HEADERLength;
+      }
+
+      while(pos + 9 <= size)
+      {  byte type = in.readByte();
+         int len = in.readInt();
+         if(len < 0 || pos + 9 + len > size) break;
+         byte[] payload = new byte[len];
+         in.readFully(payload);
+         if(in.readInt() != crc(payload)) break;
+
+         apply(type, new DataInputStream(new ByteArrayInputStream(payload)));
+         pos += 9 + len;
+      }
+      loadedLength = pos;
+   }
+
+   private void apply(byte type, DataInputStream in) throws IOException
+   {  if(type == DICTIONARY)
+      {  String s = in.readUTF();
+         stringIds.put(s, strings.size());
+         strings.add(s);
+
+      }else if(type == EXECUTION)
+      {  int parentId = in.readInt();
+         int jdId = in.readInt();
+         boolean isModel = in.readBoolean();
+         int execId = in.readInt();
+         int cycle = in.readInt();
+         String jobName = in.readUTF();
+         String queueJobName = in.readUTF();
+         int taskIndex = in.readInt();
+         String outputFile = in.readUTF();
+         ParameterValue[] vals = new ParameterValue[in.readInt()];
+         for(int i=0; i<vals.length; i++)
+         {  String paramId = strings.get(in.readInt());
+            Parameter param = ctx.getConfigFile().getJobParameter(paramId);
+            if(param == null)
+               throw new Error(String.format(
+                  "Error reading %s: parameter %s does not exist in configfile!",
+                  file, paramId));
+            vals[i] = new ParameterValue(param, strings.get(in.readInt()));
+         }
+
+         JobDescription jd = null;
+         if(jdId >= 0)
+         {  jd = (JobDescription)ctx.getConfigFile().getJobDescription(strings.get(jdId));
+            if(jd == null)
+               throw new Error(String.format(
+                  "Error reading %s: job %s does not exist in configfile!",
+                  file, strings.get(jdId)));
+         }
+         JobExecution parent = parentId < 0 ? null : executions.get(parentId);
+
+         JobExecution exec = new JobExecution(jobName, execId, parent, jd, vals,
+                  outputFile, cycle, new QueueEntry(queueJobName, taskIndex));
+         byOutputFile.put(outputFile, executions.size());
+         executions.add(exec);
+         if(isModel) models.add(exec);
+
+      }else if(type == QUALITY || type == PENDINGLine)
+      {  int execId = in.readInt();
+         int index = in.readInt();
+         String[] values = new String[in.readInt()];
+         for(int i=0; i<values.length; i++)
+            values[i] = in.readUTF();
+         if(type == QUALITY)
+         {  qualities.put(execId, new Quality(index, values));
+            pendingLines.remove(executions.get(execId).getOutputFileName());
+         }else if(! pendingLines.containsKey(values[0]))
+            pendingLines.put(values[0], new Quality(index, values));
+
+      }else if(type == CORRELATIONMark)
+      {  correlationOffset = in.readLong();
+         correlationLines = in.readInt();
+      }
+      // records of unknown type written by newer versions are skipped
+   }
+
+
+   private interface RecordWriter
+   {  /** write records to pending */
+      void write() throws IOException;
+   }
+
+
+   private static class Quality
+   {  final int index;
+      final String[] values;
+
+      Quality(int index, String[] values)
+      {  this.index = index;
+         this.values = values;
+      }
+   }
+}
@@ -0,0 +1,237 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Estimates the runtime and output size of a job by its job type from earlier
+ * runs in the current directory.
+ *
+ * The time from start to end of earlier jobs is read from their
+ * {@link JobTelemetry} records. For jobs without telemetry the job type is
+ * looked up in HISTORYFile, where every submitted job is recorded as
+ * "jobType jobName", and the elapsed time printed by the "time" builtin at the
+ * end of the csh script is read from the job output file (jobName.o or
+ * jobName.o<queueId>).
+ *
+ * Job types without any finished job use a default from DEFAULTSec. Output
+ * sizes are only known from telemetry records.
+ */
+public class RuntimeEstimator
+{  static final String HISTORYFile = "acJobHistory.tab";
+
+   /** rough relative runtimes used until a job type has finished once */
+   private static final Map<String,Double> DEFAULTSec = new HashMap<String,Double>();
+   static
+   {  DEFAULTSec.put("omega2",    600D);
+      DEFAULTSec.put("rocs",      300D);
+      DEFAULTSec.put("eon",       300D);
+      DEFAULTSec.put("szybki",    900D);
+      DEFAULTSec.put("fred2.1",  1800D);
+      DEFAULTSec.put("fred2.2",  1800D);
+      DEFAULTSec.put("gold_auto",3600D);
+      DEFAULTSec.put("R",          60D);
+      DEFAULTSec.put("R2",         60D);
+   }
+   private static final double UNKNOWNSec = 600;
+
+   /** csh time output: "12.3u 0.4s 1:02.33 20.1% ..." elapsed may be h:mm:ss */
+   private static final Pattern TIMEPattern =
+      Pattern.compile("^\\s*[\\d.]+u\\s+[\\d.]+s\\s+([\\d:.]+)\\s");
+   private static final Pattern OUTFilePattern = Pattern.compile("(.+)\\.o\\d*");
+   /** submissions buffered before they are written to HISTORYFile */
+   private static final int HISTORYFlushLines = 1000;
+
+   private static RuntimeEstimator instance = null;
+
+   private final Map<String,Double> sumSec = new HashMap<String,Double>();
+   private final Map<String,Integer> count = new HashMap<String,Integer>();
+   private final Map<String,double[]> outBytes = new HashMap<String,double[]>();
+   private PrintStream history = null;
+   private int unflushed = 0;
+
+   private RuntimeEstimator() throws IOException
+   {  load(new File("."));
+   }
+
+   /**
+    * @return the estimator for the current directory, loaded on first use.
+    */
+   static synchronized RuntimeEstimator getInstance() throws IOException
+   {  if(instance == null)
+         instance = new RuntimeEstimator();
+      return instance;
+   }
+
+   /**
+    * @return estimated seconds for one execution of jobType.
+    */
+   public double getEstimate(String jobType)
+   {  Integer n = count.get(jobType);
+      if(n != null)
+         return sumSec.get(jobType) / n;
+
+      Double def = DEFAULTSec.get(jobType);
+      if(def != null) return def;
+      return UNKNOWNSec;
+   }
+
+   /**
+    * @return average size in bytes of the output file of jobType or -1 if no
+    *         job of the type was recorded with telemetry.
+    */
+   public double getOutBytes(String jobType)
+   {  double[] sumAndCount = outBytes.get(jobType);
+      if(sumAndCount == null) return -1;
+      return sumAndCount[0] / sumAndCount[1];
+   }
+
+   /**
+    * Remember the job type of jobName so that its runtime can be learned in
+    * later runs.
+    *
+    * The lines are buffered and written every HISTORYFlushLines submissions
+    * and when the process exits.
+    */
+   public synchronized void recordSubmission(String jobName, String jobType) throws IOException
+   {  if(history == null)
+      {  history = new PrintStream(new BufferedOutputStream(
+                                 new FileOutputStream(HISTORYFile, true), 65536));
+         Runtime.getRuntime().addShutdownHook(new Thread()
+            {  public void run()
+               {  flush();
+               }
+            });
+      }
+      history.printf("%s\t%s\n", jobType, jobName);
+      if(++unflushed >= HISTORYFlushLines)
+         flush();
+   }
+
+   /**
+    * Write the buffered submissions to HISTORYFile.
+    */
+   public synchronized void flush()
+   {  if(history == null) return;
+      history.flush();
+      unflushed = 0;
+   }
+
+   private void load(File dir) throws IOException
+   {  Set<String> withTelemetry = new HashSet<String>();
+      for(Map<String,Object> rec : JobTelemetry.readRecords(dir))
+      {  Object start = rec.get("start");
+         Object end = rec.get("end");
+         if(!(start instanceof Double) || !(end instanceof Double)) continue;
+
+         String type = (String)rec.get("type");
+         withTelemetry.add((String)rec.get("job"));
+         addRuntime(type, (Double)end - (Double)start);
+
+         Object bytes = rec.get("outBytes");
+         if(bytes instanceof Double)
+         {  double[] sumAndCount = outBytes.get(type);
+            if(sumAndCount == null) outBytes.put(type, sumAndCount = new double[2]);
+            sumAndCount[0] += (Double)bytes;
+            sumAndCount[1]++;
+         }
+      }
+
+      File history = new File(dir, HISTORYFile);
+      if(history.exists())
+         loadHistory(dir, history, withTelemetry);
+
+      if(Settings.isDebugMode())
+      {  for(String type : count.keySet())
+            System.err.printf("runtime %s: %.1fs from %d jobs\n",
+                              type, getEstimate(type), count.get(type));
+      }
+   }
+
+   private void loadHistory(File dir, File history, Set<String> skip) throws IOException
+   {  Map<String,String> nameToType = new HashMap<String,String>();
+      BufferedReader in = new BufferedReader(new FileReader(history));
+      try
+      {  String line;
+         while((line = in.readLine()) != null)
+         {  String[] tokens = line.split("\t");
+            if(tokens.length == 2) nameToType.put(tokens[1], tokens[0]);
+         }
+      } finally
+      {  in.close();
+      }
+
+      String[] files = dir.list();
+      if(files == null) return;
+      for(String fName : files)
+      {  Matcher mat = OUTFilePattern.matcher(fName);
+         if(! mat.matches()) continue;
+         String type = nameToType.get(mat.group(1));
+         if(type == null || skip.contains(mat.group(1))) continue;
+
+         double sec = readElapsed(new File(dir, fName));
+         if(sec < 0) continue;
+
+         addRuntime(type, sec);
+      }
+   }
+
+   private void addRuntime(String type, double sec)
+   {  Double sum = sumSec.get(type);
+      sumSec.put(type, sum == null ? sec : sum + sec);
+      Integer n = count.get(type);
+      count.put(type, n == null ? 1 : n + 1);
+   }
+
+   /**
+    * @return elapsed seconds from the last time line in outFile or -1.
+    */
+   static double readElapsed(File outFile) throws IOException
+   {  BufferedReader in = new BufferedReader(new FileReader(outFile));
+      double sec = -1;
+      try
+      {  String line;
+         while((line = in.readLine()) != null)
+         {  Matcher mat = TIMEPattern.matcher(line);
+            if(! mat.find()) continue;
+
+            sec = 0;
+            for(String part : mat.group(1).split(":"))
+               sec = sec * 60 + Double.parseDouble(part);
+         }
+      } catch(NumberFormatException e)
+      {  return -1;
+      } finally
+      {  in.close();
+      }
+      return sec;
+   }
+}
@@ -17,82 +17,106 @@ along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
 package autocorrelator.ac;
 
 
+import java.io.IOException;
 import java.util.Random;
 
 import org.jdom.Element;
 
 
+/**
+ * Static access to the {@link RunContext} of the current thread.
+ */
 public class Settings
-{  private static String CORRELATIONFileName;
-
-   private static String namePrefix = null;
-   private static Boolean debug = null;
-   private static ConfigFile configFile = null;
-   private static String QUEUEOptions = "";
-   private static int executionCounter = 0;
-   
+{
    public static void setNamePrefix(String prefix)
-   {  assert namePrefix == null : "namePrefix should be set only once";
-      namePrefix = prefix;
-      CORRELATIONFileName = prefix + "_ModelCorrelation.txt";
+   {  RunContext.current().setNamePrefix(prefix);
    }
 
    /** for use by GA */
    public static void setNamePrefix(String prefix, int cycle)
-   {  assert namePrefix == null : "namePrefix should be set only once";
-      namePrefix = prefix + '_' + cycle;
-      CORRELATIONFileName = prefix + "_ModelCorrelation.txt";
+   {  RunContext.current().setNamePrefix(prefix, cycle);
+   }
+
+   /** for one part of an experiment split by -designStart */
+   public static void setNamePrefix(String prefix, String designStart)
+   {  RunContext.current().setNamePrefix(prefix, designStart);
    }
 
    public static void setDebugMode(boolean isDebug)
-   {  assert debug == null : "DebugMode should be set only once";
-      debug = isDebug;
+   {  RunContext.current().setDebugMode(isDebug);
    }
-   
+
    public static void readConfigFile(Element rootElement)
-   {  assert configFile == null : "ConfigFile should be read only once!";
-      configFile = new ConfigFile();
-      configFile.init(rootElement);
+   {  RunContext.current().readConfigFile(rootElement);
    }
 
    /**
     * Prefix to make filenames and queue naes unique for this autocorrelator run.
     */
    public static String getNamePrefix()
-   {  return namePrefix;
+   {  return RunContext.current().getNamePrefix();
    }
-   
+
    public static int getNextExecutionCount()
-   {  return executionCounter++;
+   {  return RunContext.current().getNextExecutionCount();
    }
-   
+
    public static boolean isDebugMode()
-   {  return debug;
+   {  return RunContext.current().isDebugMode();
    }
 
    public static ConfigFile getConfigFile()
-   {  return configFile;
+   {  return RunContext.current().getConfigFile();
    }
 
    /**
     * return filename for file storing all correlation results.
-    * 
-    * This file should contain one line per output file from any runs with the 
+    *
+    * This file should contain one line per output file from any runs with the
     * following format:<br/>
-    * outputFileName correlationCoeficient<br/> 
+    * outputFileName correlationCoeficient<br/>
     */
    public static String getCorrelationFilename()
-   {  return CORRELATIONFileName;
+   {  return RunContext.current().getCorrelationFilename();
    }
 
    public static final Random MYRandom = new Random();
 
    public static void setQueueOptions(String queOpts)
-   {  if(queOpts == null) return;
-      QUEUEOptions = queOpts;
+   {  RunContext.current().setQueueOptions(queOpts);
    }
 
    public static String getQueueOptions()
-   {  return QUEUEOptions;
+   {  return RunContext.current().getQueueOptions();
+   }
+
+   public static void setJobExecutor(JobExecutor executor)
+   {  RunContext.current().setJobExecutor(executor);
+   }
+
+   /**
+    * The backend running the jobs, the grid engine unless set otherwise.
+    */
+   public static JobExecutor getJobExecutor()
+   {  return RunContext.current().getJobExecutor();
+   }
+
+   public static RunJournal openJournal() throws IOException
+   {  return RunContext.current().openJournal();
+   }
+
+   public static RunJournal startCycle(int cycle) throws IOException
+   {  return RunContext.current().startCycle(cycle);
+   }
+
+   public static RunJournal getJournal()
+   {  return RunContext.current().getJournal();
+   }
+
+   /**
+    * Runtimes of job types learned from earlier runs in the current directory.
+    */
+   public static RuntimeEstimator getRuntimeEstimator() throws IOException
+   {  return RunContext.current().getRuntimeEstimator();
    }
 }
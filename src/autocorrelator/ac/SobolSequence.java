@@ -0,0 +1,137 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.util.Random;
+
+/**
+ * Sobol low discrepancy sequence in up to MAXDimensions dimensions with the
+ * direction numbers of Joe and Kuo (new-joe-kuo-6.21201).
+ *
+ * The sequence is scrambled by a random digital shift per dimension and
+ * random linear scrambling of the direction numbers, both derived from the
+ * seed. Any point can be computed directly from its index so that slices of
+ * a design do not need the points before them.
+ */
+class SobolSequence
+{  private static final int BITS = 32;
+
+   /** s, a, m_1 .. m_s of dimensions 2 .. MAXDimensions */
+   private static final int[][] DIRECTIONS =
+   {  {1, 0, 1},
+      {2, 1, 1, 3},
+      {3, 1, 1, 3, 1},
+      {3, 2, 1, 1, 1},
+      {4, 1, 1, 1, 3, 3},
+      {4, 4, 1, 3, 5, 13},
+      {5, 2, 1, 1, 5, 5, 17},
+      {5, 4, 1, 1, 5, 5, 5},
+      {5, 7, 1, 1, 7, 11, 19},
+      {5, 11, 1, 1, 5, 1, 1},
+      {5, 13, 1, 1, 1, 3, 11},
+      {5, 14, 1, 3, 5, 5, 31},
+      {6, 1, 1, 3, 3, 9, 7, 49},
+      {6, 13, 1, 1, 1, 15, 21, 21},
+      {6, 16, 1, 3, 1, 13, 27, 49},
+      {6, 19, 1, 1, 1, 15, 7, 5},
+      {6, 22, 1, 3, 1, 15, 13, 25},
+      {6, 25, 1, 1, 5, 5, 19, 61},
+      {7, 1, 1, 3, 7, 11, 23, 15, 103},
+      {7, 4, 1, 3, 7, 13, 13, 15, 69}
+   };
+   static final int MAXDimensions = DIRECTIONS.length + 1;
+
+   /** direction numbers by dimension and bit */
+   private final int[][] v;
+   private final int[] shift;
+
+   SobolSequence(int nDimensions, long seed)
+   {  if(nDimensions > MAXDimensions)
+         throw new Error(String.format(
+            "Sobol design supports at most %d parameters, found %d",
+            MAXDimensions, nDimensions));
+
+      Random rand = new Random(seed);
+      v = new int[nDimensions][];
+      shift = new int[nDimensions];
+      for(int d=0; d<nDimensions; d++)
+      {  v[d] = scramble(directionNumbers(d), rand);
+         shift[d] = rand.nextInt();
+      }
+   }
+
+   private static int[] directionNumbers(int dim)
+   {  int[] dv = new int[BITS];
+      if(dim == 0)
+      {  for(int k=0; k<BITS; k++)
+            dv[k] = 1 << (BITS-1-k);
+         return dv;
+      }
+
+      int[] dir = DIRECTIONS[dim-1];
+      int s = dir[0];
+      int a = dir[1];
+      for(int k=0; k<BITS; k++)
+      {  if(k < s)
+         {  dv[k] = dir[2+k] << (BITS-1-k);
+         }else
+         {  dv[k] = dv[k-s] ^ (dv[k-s] >>> s);
+            for(int j=1; j<s; j++)
+               if(((a >>> (s-1-j)) & 1) != 0) dv[k] ^= dv[k-j];
+         }
+      }
+      return dv;
+   }
+
+   /**
+    * Multiply the direction numbers by a random lower triangular matrix with
+    * unit diagonal, this keeps the net properties of the sequence.
+    */
+   private static int[] scramble(int[] dv, Random rand)
+   {  int[] lower = new int[BITS];
+      for(int row=0; row<BITS; row++)
+      {  // output digit row depends on the input digits up to row, the more
+         // significant bits
+         int diag = 1 << (BITS-1-row);
+         lower[row] = diag | (rand.nextInt() & ~(diag | (diag-1)));
+      }
+
+      int[] scrambled = new int[BITS];
+      for(int k=0; k<BITS; k++)
+      {  int x = 0;
+         for(int row=0; row<BITS; row++)
+         {  // output bit row is the parity of lower[row] and dv[k]
+            if((Integer.bitCount(lower[row] & dv[k]) & 1) != 0)
+               x |= 1 << (BITS-1-row);
+         }
+         scrambled[k] = x;
+      }
+      return scrambled;
+   }
+
+   /**
+    * @return coordinate dim of point index in [0,1).
+    */
+   double get(long index, int dim)
+   {  long gray = index ^ (index >>> 1);
+      int x = shift[dim];
+      for(int k=0; gray != 0 && k<BITS; k++, gray >>>= 1)
+         if((gray & 1) != 0) x ^= v[dim][k];
+      return (x & 0xFFFFFFFFL) / (double)(1L << BITS);
+   }
+}
@@ -0,0 +1,245 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The input files a job needs in its $TMPDIR and the csh commands to stage them.
+ *
+ * Only receptor and ligand files (INPUTSuffixes) from the working directory
+ * which are referenced by the job, eg. as parameter value or in a config file,
+ * are staged. When the job is submitted the file is copied into the snapshot
+ * directory SNAPSHOTDir of the working directory, named by the SHA-1 of the
+ * copied content, so that the job stages the version it was submitted with even
+ * if the file is changed before it runs. The snapshot is copied once per node
+ * into a cache next to $TMPDIR named by the SHA-1 and hard linked into the job
+ * directory from there, falling back to cp if linking fails. Snapshots and
+ * cached files are write protected so that a job can not modify the copy
+ * shared with other jobs.
+ *
+ * Outputs of parent jobs do not exist when the job is submitted, they are
+ * cached by name, size and modification time instead.
+ *
+ * Directory listings and hashes are cached for resident drivers submitting
+ * many passes, a directory is listed again when its modification time
+ * changes and a file is copied and hashed again when its size or modification
+ * time changes.
+ */
+public class StagingManifest
+{  static final String[] INPUTSuffixes = { ".pdb", ".mol", ".mol2" };
+   static final String SNAPSHOTDir = "acSnapshot";
+   /** cache entries not linked by any job are removed after this many minutes */
+   private static final int CACHEKeepMin = 24 * 60;
+
+   /** input files and modification time of a directory by directory */
+   private static final Map<String,Listing> candidatesByDir =
+      new HashMap<String,Listing>();
+   /** "size mtime" and SHA-1 of the last snapshot of a file by path */
+   private static final Map<String,String[]> hashByFile =
+      new HashMap<String,String[]>();
+
+   private final String currentDir;
+   private final List<String> inputFiles = new ArrayList<String>();
+   private final List<String> jobOutputs = new ArrayList<String>();
+
+   /**
+    * @param referencingTexts command lines and config files of the job, every
+    *        input file whose name, with or without extension, appears as word
+    *        in one of them is staged.
+    */
+   StagingManifest(String currentDir, String ... referencingTexts)
+   {  this.currentDir = currentDir;
+
+      Set<String> words = new HashSet<String>();
+      for(String text : referencingTexts)
+      {  for(String w : text.split("[\\s=,;:\"'/]+"))
+            words.add(w);
+      }
+
+      for(String name : getCandidates(currentDir))
+      {  String base = name.substring(0, name.lastIndexOf('.'));
+         if(words.contains(name) || words.contains(base))
+            inputFiles.add(name);
+      }
+   }
+
+   /**
+    * Stage fileName, the output of a parent job.
+    */
+   void addJobOutput(String fileName)
+   {  jobOutputs.add(fileName);
+   }
+
+   public List<String> getInputFiles()
+   {  return inputFiles;
+   }
+
+   /**
+    * Print the csh commands staging all files into the current directory.
+    */
+   void print(PrintStream out) throws IOException
+   {  out.println("set acStage=$TMPDIR:h/acStage_$USER");
+      out.println("mkdir -p $acStage");
+      out.printf("find $acStage -type f -links 1 -mmin +%d -exec rm -f {} \\; >& /dev/null\n",
+                 CACHEKeepMin);
+
+      File snapshotDir = new File(currentDir, SNAPSHOTDir);
+      for(String name : inputFiles)
+      {  String hash = snapshot(new File(currentDir, name), snapshotDir);
+         String src = snapshotDir.getPath() + '/' + hash;
+         printStage(out, src, name, hash);
+      }
+
+      for(String name : jobOutputs)
+      {  String src = currentDir + '/' + name;
+         out.printf("set acKey=%s_`stat -c %%s_%%Y %s`\n", name, src);
+         printStage(out, src, name, "$acKey");
+      }
+   }
+
+   private static void printStage(PrintStream out, String src, String name, String key)
+   {  out.printf("if ( ! -e $acStage/%s ) then\n", key);
+      out.printf("   cp %s $acStage/%s.$$ && chmod a-w $acStage/%s.$$ && mv -f $acStage/%s.$$ $acStage/%s\n",
+                 src, key, key, key, key);
+      out.println("endif");
+      out.printf("ln $acStage/%s %s >& /dev/null || cp %s %s\n", key, name, src, name);
+   }
+
+   /**
+    * @return content of a config file written for the job as referencing text.
+    */
+   static String readText(String fileName) throws IOException
+   {  StringBuilder sb = new StringBuilder();
+      InputStream in = new FileInputStream(fileName);
+      try
+      {  byte[] buf = new byte[8*1024];
+         int len;
+         while((len = in.read(buf)) > 0)
+            sb.append(new String(buf, 0, len, "ISO-8859-1"));
+      } finally
+      {  in.close();
+      }
+      return sb.toString();
+   }
+
+   private static synchronized List<String> getCandidates(String dir)
+   {  long mTime = new File(dir).lastModified();
+      Listing listing = candidatesByDir.get(dir);
+      if(listing != null && listing.mTime == mTime) return listing.candidates;
+
+      List<String> candidates = new ArrayList<String>();
+      String[] names = new File(dir).list();
+      if(names != null)
+      {  for(String name : names)
+         {  for(String suffix : INPUTSuffixes)
+            {  if(name.endsWith(suffix))
+               {  candidates.add(name);
+                  break;
+               }
+            }
+         }
+      }
+      candidatesByDir.put(dir, new Listing(mTime, candidates));
+      return candidates;
+   }
+
+   /**
+    * Copy f into snapshotDir named by the SHA-1 of the copied bytes unless the
+    * snapshot of this version of f exists already.
+    *
+    * @return the SHA-1, the name of the snapshot.
+    */
+   private static synchronized String snapshot(File f, File snapshotDir) throws IOException
+   {  String version = f.length() + " " + f.lastModified();
+      String[] versionAndHash = hashByFile.get(f.getPath());
+      if(versionAndHash != null && versionAndHash[0].equals(version)
+         && new File(snapshotDir, versionAndHash[1]).exists())
+         return versionAndHash[1];
+
+      MessageDigest md;
+      try
+      {  md = MessageDigest.getInstance("SHA-1");
+      } catch (NoSuchAlgorithmException e)
+      {  throw new Error("SHA-1 not supported", e);
+      }
+
+      if(! snapshotDir.isDirectory() && ! snapshotDir.mkdirs() && ! snapshotDir.isDirectory())
+         throw new IOException("Could not create " + snapshotDir);
+      // the hash is of the bytes copied, even if f is written meanwhile
+      File tmp = File.createTempFile(f.getName(), ".tmp", snapshotDir);
+      InputStream in = new FileInputStream(f);
+      try
+      {  OutputStream out = new FileOutputStream(tmp);
+         try
+         {  byte[] buf = new byte[64*1024];
+            int len;
+            while((len = in.read(buf)) > 0)
+            {  md.update(buf, 0, len);
+               out.write(buf, 0, len);
+            }
+         } finally
+         {  out.close();
+         }
+      } finally
+      {  in.close();
+      }
+
+      StringBuilder sb = new StringBuilder(40);
+      for(byte b : md.digest())
+         sb.append(String.format("%02x", b));
+      String hash = sb.toString();
+
+      // another submitter may have created the same snapshot
+      File snap = new File(snapshotDir, hash);
+      tmp.setWritable(false, false);
+      if(snap.exists() || ! tmp.renameTo(snap))
+      {  tmp.delete();
+         if(! snap.exists())
+            throw new IOException("Could not create " + snap);
+      }
+
+      hashByFile.put(f.getPath(), new String[] { version, hash });
+      return hash;
+   }
+
+
+   private static class Listing
+   {  final long mTime;
+      final List<String> candidates;
+
+      Listing(long mTime, List<String> candidates)
+      {  this.mTime = mTime;
+         this.candidates = candidates;
+      }
+   }
+}
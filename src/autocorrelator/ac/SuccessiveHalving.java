@@ -0,0 +1,228 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import autocorrelator.apps.SdfSplicer;
+
+/**
+ * Multi-fidelity evaluation of the experimental design: the complete design
+ * is run on a small stratified sample of the molecules, only the models with
+ * the best quality reported by the R analysis are run again on the next
+ * larger sample and so on until the survivors are run on all molecules.
+ *
+ * The samples are written by {@link SdfSplicer#sample} from the molecule file
+ * of the root execution with the design seed, so they are nested and a
+ * resumed run uses the same ones. Every sample is a root execution of its
+ * own, the chain of a surviving model is submitted again below the root of
+ * the next sample.
+ */
+public class SuccessiveHalving
+{  /**
+    * Submits the complete experimental design below a root execution.
+    */
+   interface DesignRunner
+   {  void runDesign(JobExecution root) throws DAException, SQLException, IOException;
+   }
+
+   private final RunContext ctx;
+   private final double[] fractions;
+   private final double keepFraction;
+   private final String stratumTag;
+   private final long seed;
+   private final long rescanMS;
+   private final PruningPolicy pruning;
+   private final ExecutionCache cache = new ExecutionCache();
+
+   /**
+    * @param fractions increasing fractions of the molecules below 1 used by
+    *        the rungs before the one on all molecules.
+    * @param keepFraction fraction of the models of a rung promoted to the next.
+    * @param stratumTag tag by which the molecules are stratified or null.
+    * @param pruning policy pruning the first rung or null.
+    */
+   SuccessiveHalving(double[] fractions, double keepFraction, String stratumTag,
+                     long seed, long rescanMS, PruningPolicy pruning)
+   {  for(int i=0; i<fractions.length; i++)
+      {  if(fractions[i] <= 0 || fractions[i] >= 1 || (i > 0 && fractions[i] <= fractions[i-1]))
+            throw new Error("Subset fractions must increase and lie between 0 and 1: "
+                           + fractions[i]);
+      }
+      if(keepFraction <= 0 || keepFraction > 1)
+         throw new Error("keepFraction must lie in (0,1]: " + keepFraction);
+
+      this.ctx = RunContext.current();
+      this.fractions = fractions;
+      this.keepFraction = keepFraction;
+      this.stratumTag = stratumTag;
+      this.seed = seed;
+      this.rescanMS = rescanMS;
+      this.pruning = pruning;
+   }
+
+   /**
+    * Run the rungs, return after the survivors were submitted on all molecules.
+    *
+    * @param fullRoot root execution of the complete molecule file.
+    */
+   void run(JobExecution fullRoot, DesignRunner designRunner)
+   throws DAException, SQLException, IOException, InterruptedException
+   {  List<JobExecution> survivors = null;
+      for(int rung=0; rung<=fractions.length; rung++)
+      {  JobExecution root = fullRoot;
+         if(rung < fractions.length)
+            root = createSampleRoot(fullRoot, rung);
+
+         List<JobExecution> models;
+         if(rung == 0)
+         {  designRunner.runDesign(root);
+            models = getModels(root);
+         }else
+         {  models = new ArrayList<JobExecution>(survivors.size());
+            for(JobExecution model : survivors)
+               models.add(submitChain(model, root));
+         }
+         System.err.printf("Rung %d: %d models on %s\n",
+                           rung, models.size(), root.getOutputFileName());
+         if(rung == fractions.length) break;
+
+         waitFor(models);
+         survivors = selectBest(models);
+      }
+   }
+
+   private JobExecution createSampleRoot(JobExecution fullRoot, int rung)
+   {  String fullName = fullRoot.getOutputFileName();
+      int dot = fullName.lastIndexOf('.');
+      String ext = dot < 0 ? "" : fullName.substring(dot);
+      String sampleName = String.format("%s_sample%d%s", ctx.getNamePrefix(), rung, ext);
+
+      // a resumed run uses the sample its jobs were started with
+      if(! new File(sampleName).exists())
+      {  int n = SdfSplicer.sample(fullName, sampleName, fractions[rung], seed, stratumTag);
+         System.err.printf("Wrote %d molecules to %s\n", n, sampleName);
+      }
+      return new JobExecution("root", ctx.getNextExecutionCount(), null, null,
+                              new ParameterValue[0], sampleName, 0);
+   }
+
+   /**
+    * @return the models in the run store computed below root.
+    */
+   private List<JobExecution> getModels(JobExecution root) throws IOException
+   {  RunStore store = ctx.getRunStore();
+      store.refresh();
+
+      List<JobExecution> models = new ArrayList<JobExecution>();
+      for(JobExecution model : store.getModels())
+      {  JobExecution exec = model;
+         while(exec.getParentExecution() != null)
+            exec = exec.getParentExecution();
+         if(exec.getOutputFileName().equals(root.getOutputFileName()))
+            models.add(model);
+      }
+      return models;
+   }
+
+   /**
+    * Submit the jobs leading to model again below root, jobs shared with
+    * other survivors are submitted only once.
+    */
+   private JobExecution submitChain(JobExecution model, JobExecution root) throws IOException
+   {  List<JobExecution> chain = new ArrayList<JobExecution>();
+      for(JobExecution exec = model; exec.getParentExecution() != null;
+          exec = exec.getParentExecution())
+         chain.add(exec);
+      Collections.reverse(chain);
+
+      RunJournal journal = ctx.getJournal();
+      JobExecution parent = root;
+      for(JobExecution exec : chain)
+      {  JobDescription jd = exec.getJobDescription();
+         ParameterValue[] paramVals = exec.getParamVals();
+
+         JobExecution next = cache.getReusable(parent, jd, paramVals);
+         if(next == null && journal != null)
+            next = journal.resume(parent, jd, paramVals);
+         if(next == null)
+            next = jd.createJobRunner(parent).executeJob(jd, paramVals, parent, 0, "");
+         cache.addSubmitted(next);
+         parent = next;
+      }
+      return parent;
+   }
+
+   /**
+    * Block until every model has a quality, has ended or was cancelled by
+    * pruning.
+    */
+   private void waitFor(List<JobExecution> models) throws IOException, InterruptedException
+   {  List<JobExecution> pending = new ArrayList<JobExecution>();
+      for(JobExecution model : models)
+      {  if(pruning == null || ! pruning.isCancelled(model))
+            pending.add(model);
+      }
+      ModelWatcher watcher = new ModelWatcher(ctx, rescanMS);
+      try
+      {  while(true)
+         {  watcher.collectFinished(pending);
+            if(pending.size() == 0) break;
+            watcher.await();
+         }
+      } finally
+      {  watcher.close();
+      }
+   }
+
+   /**
+    * @return the keepFraction best models with a quality, at least one.
+    */
+   private List<JobExecution> selectBest(List<JobExecution> models) throws IOException
+   {  RunStore store = ctx.getRunStore();
+      final Map<JobExecution,Double> quality = new IdentityHashMap<JobExecution,Double>();
+      List<JobExecution> evaluated = new ArrayList<JobExecution>();
+      for(JobExecution model : models)
+      {  String[] vals = store.getQuality(model);
+         if(vals == null) continue;
+         // the first quality value ranks the models as in the GA
+         quality.put(model, vals.length > 1 ? Double.parseDouble(vals[1]) : 0);
+         evaluated.add(model);
+      }
+      if(evaluated.size() == 0)
+         throw new Error("No model of this rung reported a quality!");
+
+      Collections.sort(evaluated, new Comparator<JobExecution>()
+               {  public int compare(JobExecution o1, JobExecution o2)
+                  {  return -Double.compare(quality.get(o1), quality.get(o2));
+                  }
+               });
+      int nKeep = Math.max(1, (int)Math.ceil(evaluated.size() * keepFraction));
+      System.err.printf("Promoting %d of %d models, best quality %s\n", nKeep,
+                        evaluated.size(), quality.get(evaluated.get(0)));
+      return evaluated.subList(0, nKeep);
+   }
+}
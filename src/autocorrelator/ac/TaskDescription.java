@@ -18,6 +18,7 @@ package autocorrelator.ac;
 
 
 import java.io.Serializable;
+import java.math.BigInteger;
 import java.util.List;
 
 import org.jdom.Element;
@@ -72,12 +73,24 @@ public class TaskDescription implements Serializable
 
    /**
     * 
-    * @return the number of possible parameter and subTask combinations.
+    * @return the number of possible parameter and subTask combinations or
+    *         Long.MAX_VALUE if the number does not fit into a long.
     */
    public long getPossibilities()
-   {  long posibilities = 1;
+   {  BigInteger posibilities = getPossibilityCount();
+      if(posibilities.bitLength() >= 64) return Long.MAX_VALUE;
+      
+      return posibilities.longValue();
+   }
+
+   /**
+    * 
+    * @return the number of possible parameter and subTask combinations.
+    */
+   public BigInteger getPossibilityCount()
+   {  BigInteger posibilities = BigInteger.ONE;
       for(Parameter p : getParameter())
-         posibilities  *= p.getNValues();
+         posibilities  = posibilities.multiply(BigInteger.valueOf(p.getNValues()));
 
       return posibilities;
    }
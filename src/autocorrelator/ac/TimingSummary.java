@@ -0,0 +1,151 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import autocorrelator.apps.CommandLineParser;
+
+/**
+ * Summarizes the job telemetry written by {@link JobTelemetry}: hours spent
+ * per job type and stage, and execution hours per parameter value.
+ *
+ * The time a job waited for its parent job to finish is reported as hold,
+ * the remaining time between submission and start as queue.
+ */
+public class TimingSummary
+{  private static final String EXPLAIN=
+      "TimingSummary [-prefix namePrefix] [dir]\n"
+     +"  Report where cluster hours go per job type, stage and parameter value.\n"
+     +"  dir: directory containing the " + JobTelemetry.DIRName + " directory (default .)\n"
+     +"  prefix: only jobs whose name starts with namePrefix.\n";
+
+   static final String[] STAGES = { "hold", "queue", "stage", "exec", "copyBack", "post" };
+
+   /** seconds by job type and stage */
+   private final Map<String,double[]> byType = new TreeMap<String,double[]>();
+   private final Map<String,Integer> countByType = new TreeMap<String,Integer>();
+   /** execution seconds and count by "type param=value" */
+   private final Map<String,double[]> byParamValue = new TreeMap<String,double[]>();
+   private int nFailed = 0;
+
+   public static void main(String[] args) throws IOException
+   {  String[] modes    = {};
+      String[] parms    = {"-prefix"};
+      String[] reqParms = {};
+      CommandLineParser cParser = new CommandLineParser(EXPLAIN,0,1,args,modes,parms,reqParms);
+      String[] restArgs = cParser.getRestArgs();
+      File dir = new File(restArgs.length > 0 ? restArgs[0] : ".");
+
+      TimingSummary summary = new TimingSummary();
+      summary.add(JobTelemetry.readRecords(dir), cParser.getValue("-prefix"));
+      summary.print(System.out);
+   }
+
+   @SuppressWarnings("unchecked")
+   void add(List<Map<String,Object>> records, String prefix)
+   {  Map<String,Double> endByJob = new HashMap<String,Double>();
+      for(Map<String,Object> rec : records)
+         endByJob.put((String)rec.get("job"), (Double)rec.get("end"));
+
+      for(Map<String,Object> rec : records)
+      {  String job = (String)rec.get("job");
+         if(prefix != null && ! job.startsWith(prefix)) continue;
+
+         String type = (String)rec.get("type");
+         double submitted = (Double)rec.get("submitted");
+         double start     = (Double)rec.get("start");
+         Double parentEnd = endByJob.get(rec.get("parent"));
+         double released  = parentEnd == null ? submitted : Math.max(submitted, parentEnd);
+         released = Math.min(released, start);
+
+         double[] stageSec = new double[STAGES.length];
+         stageSec[0] = released - submitted;
+         stageSec[1] = start - released;
+         stageSec[2] = (Double)rec.get("staged")   - start;
+         stageSec[3] = (Double)rec.get("executed") - (Double)rec.get("staged");
+         stageSec[4] = (Double)rec.get("copied")   - (Double)rec.get("executed");
+         stageSec[5] = (Double)rec.get("end")      - (Double)rec.get("copied");
+
+         double[] sum = byType.get(type);
+         if(sum == null) byType.put(type, sum = new double[STAGES.length]);
+         for(int i=0; i<STAGES.length; i++)
+            sum[i] += Math.max(0, stageSec[i]);
+         Integer n = countByType.get(type);
+         countByType.put(type, n == null ? 1 : n + 1);
+
+         Object status = rec.get("status");
+         if(status instanceof Double && (Double)status != 0) nFailed++;
+
+         Map<String,Object> params = (Map<String,Object>)rec.get("params");
+         for(Map.Entry<String,Object> pv : params.entrySet())
+         {  String key = type + '\t' + pv.getKey() + '\t' + pv.getValue();
+            double[] exec = byParamValue.get(key);
+            if(exec == null) byParamValue.put(key, exec = new double[2]);
+            exec[0] += Math.max(0, stageSec[3]);
+            exec[1]++;
+         }
+      }
+   }
+
+   void print(PrintStream out)
+   {  out.print("type\tjobs");
+      for(String stage : STAGES)
+         out.print("\t" + stage + "[h]");
+      out.println("\tslot[h]");
+
+      double[] total = new double[STAGES.length];
+      for(Map.Entry<String,double[]> e : byType.entrySet())
+      {  double[] sec = e.getValue();
+         out.printf("%s\t%d", e.getKey(), countByType.get(e.getKey()));
+         for(int i=0; i<STAGES.length; i++)
+         {  out.printf("\t%.2f", sec[i] / 3600);
+            total[i] += sec[i];
+         }
+         out.printf("\t%.2f\n", slotSec(sec) / 3600);
+      }
+      out.print("total\t");
+      for(int i=0; i<STAGES.length; i++)
+         out.printf("\t%.2f", total[i] / 3600);
+      out.printf("\t%.2f\n", slotSec(total) / 3600);
+      if(nFailed > 0)
+         out.printf("%d jobs with non zero exit status\n", nFailed);
+
+      out.println();
+      out.println("type\tparameter\tvalue\tjobs\texec[h]\tmeanExec[s]");
+      for(Map.Entry<String,double[]> e : byParamValue.entrySet())
+      {  double[] exec = e.getValue();
+         out.printf("%s\t%d\t%.2f\t%.1f\n", e.getKey(), (int)exec[1],
+                    exec[0] / 3600, exec[0] / exec[1]);
+      }
+   }
+
+   /** time a job occupied a queue slot: everything after it has started */
+   private static double slotSec(double[] stageSec)
+   {  double sec = 0;
+      for(int i=2; i<STAGES.length; i++)
+         sec += stageSec[i];
+      return sec;
+   }
+}
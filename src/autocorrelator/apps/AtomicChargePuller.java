@@ -36,7 +36,7 @@ public class AtomicChargePuller
          if( args.length != 1 )
          {  System.err.println("Exactly one smarts must be given!\n"
                               +EXPLAIN );
-            System.exit(1);
+            ToolExit.exit(1);
          }
 
          oemolistream ifs = new oemolistream(in);
@@ -148,7 +148,7 @@ public class CommandLineParser
                 if(i+1 >= args.length)
                 {   System.err.println("\n" + args[i] + " requires value");
                     System.err.println(explain);
-                    System.exit(1);
+                    ToolExit.exit(1);
                 }
 
                 doubleComHash.put(com,args[++i]);
@@ -156,7 +156,7 @@ public class CommandLineParser
             {
                 System.err.println("\n" + args[i] + " unknown parameter");
                 System.err.println(explain);
-                System.exit(1);
+                ToolExit.exit(1);
             }
 
             i++;
@@ -166,14 +166,14 @@ public class CommandLineParser
         {
             System.err.println("\n" + "To few arguments");
             System.err.println(explain);
-            System.exit(1);
+            ToolExit.exit(1);
         }
 
         if( maxRestArgs > 0 && args.length - i > maxRestArgs )
         {
             System.err.println("\n" + "To many arguments: " +(args.length - i));
             System.err.println(explain);
-            System.exit(1);
+            ToolExit.exit(1);
         }
 
         rest = new String[args.length-i];
@@ -187,7 +187,7 @@ public class CommandLineParser
             {
                 System.err.println("\n"+ requiredDoubleComs[i] +" not given");
                 System.err.println(explain);
-                System.exit(1);
+                ToolExit.exit(1);
             }
         }
 
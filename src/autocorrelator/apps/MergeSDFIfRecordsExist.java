@@ -50,17 +50,17 @@ public class MergeSDFIfRecordsExist {
          if (val == null)
          {
             System.err.println("MergeSDFIfRecordsExist: Value Missing " + tagsI);
-            System.exit(0);
+            ToolExit.exit(0);
          }
          if (val.length() == 0)
          {
             System.err.println("MergeSDFIfRecordsExist: Value Missing " + tagsI);
-            System.exit(0);
+            ToolExit.exit(0);
          }
          if (val == "0")
          {
             System.err.println("MergeSDFIfRecordsExist: Aborted Run " + tagsI);
-            System.exit(0);
+            ToolExit.exit(0);
          }
          System.out.print(val);
          System.out.print('\t');
@@ -78,7 +78,7 @@ public class MergeSDFIfRecordsExist {
       oechem.OEWriteMolecule(ofs, mol);      
       ifs.close();      
       ofs.close();
-      System.exit(1);
+      ToolExit.exit(1);
    }
 	
  
@@ -65,7 +65,7 @@ public class MergeTabs {
                   }
                }     
                if (pivot1 == -1)
-               {System.err.println("No pivot found (-in1)!!!\n"); System.exit(15);}
+               {System.err.println("No pivot found (-in1)!!!\n"); ToolExit.exit(15);}
                continue; 
             }
             BufferedReader br2 = new BufferedReader(new FileReader(cParser.getValue("-in2")));
@@ -92,7 +92,7 @@ public class MergeTabs {
                      }                     
                   }
                   if (pivot2 == -1)
-                  {System.err.println("No pivot found (-in2)!!!\n"); System.exit(25);}
+                  {System.err.println("No pivot found (-in2)!!!\n"); ToolExit.exit(25);}
                   continue; 
                }
                
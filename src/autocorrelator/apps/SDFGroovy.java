@@ -373,7 +373,7 @@ public class SDFGroovy
    {  MetaMethod m = script.getMetaClass().getMetaMethod("help", null);
       if( m != null )
       {  script.invokeMethod("help", null);
-         System.exit(1);
+         ToolExit.exit(1);
       }
    }
 
@@ -399,7 +399,7 @@ public class SDFGroovy
       }
       System.out.println("Imported internal functions:");
       System.out.println(sb);
-      System.exit(1);
+      ToolExit.exit(1);
 
    }
 
@@ -46,7 +46,6 @@ public class Sdf2Tab {
          "Tags must be in same order\n";
 
    private static final Pattern NEWLinePattern = Pattern.compile("[\r\n]+");
-   private static String newLineReplacement;
 
    public static void main(String argv[]) throws IOException
    {  // Generate Canonical SMILES of inhibitors
@@ -61,7 +60,8 @@ public class Sdf2Tab {
          readTags(cParser.getValue("-tags"), tags);
 
 
-      newLineReplacement = cParser.getValue("-newLineReplacement");
+      // local, the ToolDaemon runs several invocations at once
+      String newLineReplacement = cParser.getValue("-newLineReplacement");
 
       OEGraphMol mol = new OEGraphMol();
 
@@ -93,13 +93,13 @@ public class Sdf2Tab {
          if(tags.size()>0)
          {  for(int i=0; i<tags.size()-1; i++)
             {  String tag = tags.get(i);
-               printField(mol, tag);
+               printField(mol, tag, newLineReplacement);
                System.out.print('\t');
             }
 
             // now print last tag without tab
             String tag = tags.get(tags.size()-1);
-            printField(mol, tag);
+            printField(mol, tag, newLineReplacement);
             System.out.print("\n");
          }
 
@@ -132,7 +132,7 @@ public class Sdf2Tab {
 
 
 
-   private static void printField(OEGraphMol mol, String tag)
+   private static void printField(OEGraphMol mol, String tag, String newLineReplacement)
    {  String val;
       if("SMILES".equals(tag))
       {  oechem.OE3DToInternalStereo(mol);
@@ -232,6 +232,13 @@ public class Sdf2Tab {
    }
 
    public static void toTab(ArrayList<OEGraphMol> mollist)
+   {  toTab(mollist, null);
+   }
+
+   /**
+    * @param newLineReplacement replaces new lines in the values if not null.
+    */
+   public static void toTab(ArrayList<OEGraphMol> mollist, String newLineReplacement)
    {
      boolean readHeader = false;
      for (Iterator<OEGraphMol> iter = mollist.iterator(); iter.hasNext();)
@@ -53,7 +53,7 @@ public class SdfSmartsGrep
       boolean makeHImplicit = cParser.wasGiven("-makeHImplicit");
       if( makeHExplicit && makeHImplicit )
       {  System.err.println("makeHImplicit may not be used with makeHExplicit");
-         System.exit(1);
+         ToolExit.exit(1);
       }
 
 
@@ -64,7 +64,7 @@ public class SdfSmartsGrep
       } else if( args.length != 1 )
       {  System.err.println("Exactly one smarts must be given!\n"
                            +EXPLAIN );
-         System.exit(1);
+         ToolExit.exit(1);
       }
 
       oemolistream ifs = new oemolistream(in);
@@ -64,7 +64,7 @@ public class SdfSorter
          {  Comparator<OEGraphMol> comparator;
             if(i+1 == args.length)
             {  System.err.printf("Missing tag name\n%s", EXPLAIN);
-               System.exit(1);
+               ToolExit.exit(1);
             }
             String sortTag = args[++i];
             if(isNumeric)
@@ -91,7 +91,7 @@ public class SdfSorter
       {  String[] dummy = repeatLimitTag .split("=");
          if(dummy.length != 2 || ! dummy[1].matches("^\\d+$"))
          {  System.err.println("Bad Limit Expression: "+ repeatLimitTag);
-            System.exit(1);
+            ToolExit.exit(1);
          }
          repeatLimitTag = dummy[0];
          maxRepeat = Integer.parseInt(dummy[1]);
@@ -16,7 +16,12 @@ along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
 */
 package autocorrelator.apps;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import openeye.oechem.*;
@@ -90,12 +95,12 @@ public class SdfSplicer
       if(cParser.wasGiven("-end") && cParser.wasGiven("-count"))
       {  System.err.println("only one of -end and -count is allowed!\n");
          System.err.println(EXPLAIN);
-         System.exit(1);
+         ToolExit.exit(1);
       }
 
       if(start >= end)
       {  System.err.println(EXPLAIN);
-         System.exit(1);
+         ToolExit.exit(1);
       }
 
 
@@ -161,4 +166,63 @@ public class SdfSplicer
       ofs.delete();
       mol.delete();
    }
+
+   /**
+    * Write a stratified random sample of in to out: the records are grouped
+    * by the value of stratumTag and fraction of the records of every group,
+    * rounded up, is selected. Samples of different fractions with the same
+    * seed are nested, the smaller is contained in the larger one.
+    *
+    * The input is read twice, once to find the stratum of every record and
+    * once to write the selected records, so that only the record indexes are
+    * kept in memory. in must therefore be a file and not stdin.
+    *
+    * @param stratumTag null to sample from all records.
+    * @return the number of records written.
+    */
+   public static int sample(String in, String out, double fraction, long seed,
+                            String stratumTag)
+   {  oemolistream ifs = new oemolistream(in);
+      int nRecords = 0;
+      Map<String,List<Integer>> strata = new LinkedHashMap<String,List<Integer>>();
+
+      OEGraphMol mol = new OEGraphMol();
+      while(oechem.OEReadMolecule(ifs, mol))
+      {  String stratum = stratumTag == null ? "" : oechem.OEGetSDData(mol, stratumTag);
+         List<Integer> members = strata.get(stratum);
+         if(members == null)
+         {  members = new ArrayList<Integer>();
+            strata.put(stratum, members);
+         }
+         members.add(nRecords++);
+      }
+      ifs.close();
+      ifs.delete();
+
+      boolean[] selected = new boolean[nRecords];
+      Random rnd = new Random(seed);
+      for(List<Integer> members : strata.values())
+      {  Collections.shuffle(members, rnd);
+         int n = (int)Math.ceil(fraction * members.size());
+         for(int i=0; i<n && i<members.size(); i++)
+            selected[members.get(i)] = true;
+      }
+
+      // keep the input order
+      ifs = new oemolistream(in);
+      oemolostream ofs = new oemolostream(out);
+      int nOut = 0;
+      for(int i=0; i<nRecords && oechem.OEReadMolecule(ifs, mol); i++)
+      {  if(selected[i])
+         {  oechem.OEWriteMolecule(ofs, mol);
+            nOut++;
+         }
+      }
+      ifs.close();
+      ifs.delete();
+      ofs.close();
+      ofs.delete();
+      mol.delete();
+      return nOut;
+   }
 }
@@ -98,7 +98,7 @@ public class SdfTabMerger
       else if(!mergeModeFlags.contains(mergeMode))
       {  System.err.printf("Valid -mergeMode flags are first, last, multiRecord and multiRecordKeepTemplate\n%s\n\n",
                EXPLAIN);
-      System.exit(1);
+      ToolExit.exit(1);
       }
 
       String templateRecordValue = null;
@@ -109,7 +109,7 @@ public class SdfTabMerger
          if( parts.length != 2 || parts[0].length() == 0 || parts[1].length() == 0)
          {  System.err.println("-templateRecord invalid format");
             System.err.println(EXPLAIN);
-            System.exit(1);
+            ToolExit.exit(1);
          }
          templateRecordTag = parts[0];
          templateRecordValue = parts[1];
@@ -118,7 +118,7 @@ public class SdfTabMerger
       if( ! "multiRecordKeepTemplate".equals(mergeMode) && templateRecordTag != null )
       {  System.err.println("-templateRecord only allowed for -mergeMode multiRecordKeepTemplate");
          System.err.println(EXPLAIN);
-         System.exit(1);
+         ToolExit.exit(1);
       }
 
       SdfTabMerger merger = new SdfTabMerger(tabFile, mergeCol, quiet);
@@ -177,7 +177,7 @@ public class SdfTagTool
       {  String[] parts = dummy.split("(?<!\\\\)(?>\\\\\\\\)*/",-1);
          if( parts.length != 4 || parts[0].length() == 0 || parts[1].length() == 0)
          {  System.err.printf("Invalid transform: %s\n", dummy);
-            System.exit(1);
+            ToolExit.exit(1);
          }
 
          transTag = unQuoteBackSlash(parts[0]);
@@ -191,7 +191,7 @@ public class SdfTagTool
       if( rmRepeatTag != null )
       {  if( ! rmRepeatTag.matches("^.*=\\d+$") )
          {  System.err.println("invalid rmRepeatTag: " + rmRepeatTag);
-            System.exit(1);
+            ToolExit.exit(1);
          }
          rmRepeatMap = new HashMap<String, Integer>(2000);
          dummy = rmRepeatTag.substring(rmRepeatTag.indexOf('=')+1);
@@ -208,14 +208,14 @@ public class SdfTagTool
       if( dummy != null )
       {  if(! dummy.matches("[^=]+=.*\\{[^}]+\\}.*") )
          {  System.err.println("invalid format string: " + dummy);
-            System.exit(1);
+            ToolExit.exit(1);
          }
 
          formatOutTag = dummy.substring(0,dummy.indexOf("="));
          formatParser = Pattern.compile("\\{(([^}]+?)(:(r)\\d+)?)\\}").matcher(dummy.substring(formatOutTag.length()+1));
          if( ! formatParser.find() )
          {  System.err.println("No input tags ({tagName}) specified in -format " + dummy);
-            System.exit(1);
+            ToolExit.exit(1);
          }
          formatParser.reset();
       }
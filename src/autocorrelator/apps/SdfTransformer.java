@@ -68,11 +68,17 @@ public class SdfTransformer
          "  -out........output file (any OE filetype), for stdout use .type.\n" +
          "\n";
 
-   private static String neutralTrans = "[O,S,#7,#6;-1;!$(*[*+]):1]>>[*+0:1][H] [#7,#15;+1:1][H]>>[*;+0:1]";
+   private static final String neutralTrans = "[O,S,#7,#6;-1;!$(*[*+]):1]>>[*+0:1][H] [#7,#15;+1:1][H]>>[*;+0:1]";
 
-   private static boolean debug = false;
+   /** options of one invocation, the ToolDaemon runs several at once */
+   private final boolean debug;
 
-   private static MyTransFormFactory transFormFactory;
+   private final MyTransFormFactory transFormFactory;
+
+   private SdfTransformer(boolean debug, MyTransFormFactory transFormFactory)
+   {  this.debug = debug;
+      this.transFormFactory = transFormFactory;
+   }
 
    public static void main(String[] args)
    throws IOException
@@ -83,19 +89,17 @@ public class SdfTransformer
       String[] reqParms = {"-in", "-out" };
 
       cParser = new CommandLineParser(EXPLAIN,0,0,args,modes,parms,reqParms);
-      debug = cParser.wasGiven("-debug");
-
-
-      transFormFactory = new MyTransFormFactory(cParser.wasGiven("-singleReactionSite"));
+      SdfTransformer st = new SdfTransformer(cParser.wasGiven("-debug"),
+                  new MyTransFormFactory(cParser.wasGiven("-singleReactionSite")));
 
       String trans = cParser.getValue("-trans");
-      MyTransform[] reacts = getTransformations(trans);
+      MyTransform[] reacts = st.getTransformations(trans);
       if(cParser.wasGiven("-scaffold"))
-         reacts = getScaffolds(reacts,cParser.getValue("-scaffold"));
+         reacts = st.getScaffolds(reacts,cParser.getValue("-scaffold"));
       if( reacts.length == 0 )
       {  System.err.println("Either -trans or -scaffold must be given");
          System.err.println(EXPLAIN);
-         System.exit(1);
+         ToolExit.exit(1);
       }
 
       String in = cParser.getValue("-in");
@@ -113,7 +117,7 @@ public class SdfTransformer
 
       if( makeHExplicit && makeHImplicit )
       {  System.err.println("makeHImplicit may not be used with makeHExplicit");
-         System.exit(1);
+         ToolExit.exit(1);
       }
 
       oemolistream ifs = new oemolistream(in);
@@ -191,7 +195,7 @@ public class SdfTransformer
    }
 
 
-   private static MyTransform[] getTransformations(String smirksOrFNames) throws IOException
+   private MyTransform[] getTransformations(String smirksOrFNames) throws IOException
    {  if( smirksOrFNames == null )
          return new MyTransform[0];
 
@@ -210,7 +214,7 @@ public class SdfTransformer
    }
 
 
-   private static void addTransform(String smirksOrFName, List<MyTransform> reaList ) throws IOException
+   private void addTransform(String smirksOrFName, List<MyTransform> reaList ) throws IOException
    {  if( new File(smirksOrFName).canRead() )
       {  readTransform(smirksOrFName, reaList);
          return;
@@ -219,7 +223,7 @@ public class SdfTransformer
       reaList.add(transFormFactory.create(smirksOrFName, ""));
    }
 
-   private static void readTransform(String fName, List<MyTransform> reaList) throws IOException
+   private void readTransform(String fName, List<MyTransform> reaList) throws IOException
    {  if( fName.toLowerCase().endsWith("rxn") )
       {  readRXN(fName,reaList);
          return;
@@ -247,7 +251,7 @@ public class SdfTransformer
    }
 
 
-   private static void readRXN(String fName, List<MyTransform> reaList)
+   private void readRXN(String fName, List<MyTransform> reaList)
    {  oemolistream rFile = new oemolistream(fName);
       OEQMol reaction = new OEQMol();
 
@@ -271,7 +275,7 @@ public class SdfTransformer
     *              newline separated smiles. The smiles must contain [U+n] to mark the
     *              rGRoups.
     */
-   private static MyTransform[] getScaffolds(MyTransform[] reacts, String smartsOrFNames)
+   private MyTransform[] getScaffolds(MyTransform[] reacts, String smartsOrFNames)
          throws IOException
    {  if( smartsOrFNames == null )
          return reacts;
@@ -287,7 +291,7 @@ public class SdfTransformer
       return reaList.toArray(new MyUniMolecularTransform[reaList.size()]);
    }
 
-   private static void addScaffold(String smartsOrFName, List<MyTransform> reaList ) throws IOException
+   private void addScaffold(String smartsOrFName, List<MyTransform> reaList ) throws IOException
    {  String fName = smartsOrFName.toLowerCase();
       if( fName.endsWith(".mol") || fName.endsWith(".txt"))
       {  readScaffold(smartsOrFName, reaList);
@@ -297,7 +301,7 @@ public class SdfTransformer
       parseScaffold( smartsOrFName, reaList );
    }
 
-   private static void parseScaffold(String smarts, List<MyTransform> reaList )
+   private void parseScaffold(String smarts, List<MyTransform> reaList )
    {
       if( ! smarts.contains("[U") )
          throw new Error(String.format("Scaffold Smarts (%s) must contain at least one [U+]", smarts));
@@ -308,7 +312,7 @@ public class SdfTransformer
    }
 
 
-   private static void readScaffold(String fName, List<MyTransform> reaList ) throws IOException
+   private void readScaffold(String fName, List<MyTransform> reaList ) throws IOException
    {  if( fName.toLowerCase().endsWith(".mol") )
       {  readMDLScaffold(fName, reaList );
          return;
@@ -340,7 +344,7 @@ public class SdfTransformer
     * Read MDL query mol file and generate transformation.
     * Recognize Rn groups and supports query features.
     */
-   private static void readMDLScaffold(String fName,
+   private void readMDLScaffold(String fName,
          List<MyTransform> reaList)
    {  oemolistream ifs = new oemolistream(fName);
       if(! ifs.IsValid() ) throw new IOError(new Error("Error reading " + fName));
@@ -456,7 +460,7 @@ public class SdfTransformer
    private static final Pattern CHARGEPat = Pattern.compile("\\d+");
 
 
-   private static String scaffoldToSmirks(String scaffoldSma)
+   private String scaffoldToSmirks(String scaffoldSma)
    {  // Goal convert [U+1]c1[n,c]c([U+2])ncc1 to
       // [*:7][c:1]1[n,c:2][c:3]([*:8])[n:4][c:5][c:6]1
       //    >>  [U+101][c:1]1[n,c:2][c:3]([U+102])[n:4][c:5][c:6]1.[U+][*:7].[U+2][*:8];
@@ -0,0 +1,446 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.apps;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import jdk.net.ExtendedSocketOptions;
+import jdk.net.UnixDomainPrincipal;
+
+/**
+ * Per user daemon which runs the main methods of the autocorrelator.apps tools
+ * in one warm JVM so that short tool invocations in csh pipelines do not pay
+ * for JVM startup and loading of the OEChem native libraries.
+ *
+ * The client (exe/acTool.pl) connects to a unix domain socket in a directory
+ * which only the user may access and sends its
+ * working directory, a directory with three fifos (stdin, stdout, stderr), the
+ * main class and the arguments. Each string is sent as 4 byte big endian
+ * length followed by the UTF-8 bytes, preceded by the number of strings. The
+ * daemon answers with the 4 byte exit status. Connections from other users
+ * are closed without reading the request.
+ *
+ * System.in, System.out and System.err are routed to the fifos of the request
+ * running in the current thread. The OEChem libraries read and write the file
+ * descriptors of the process, so "-in .ext" and "-out .ext" are replaced by
+ * links to the fifos with the same extension. Relative arguments which name a
+ * file are made absolute with the client's working directory. Tools end with
+ * {@link ToolExit#exit}, which ends only the request.
+ *
+ * Only one daemon runs per user and host, it is started by the first caller
+ * of exe/acToolDaemon.csh. The R job scripts call it only if the root element
+ * of the config file has toolDaemon='true'. Requests run concurrently, so the
+ * tools keep the options of an invocation in local variables or instances
+ * and not in static fields. The daemon exits after idleMinutes without
+ * requests. After maxHours it removes its socket so that the next caller
+ * starts a fresh daemon, and exits once its running requests are done.
+ */
+public class ToolDaemon
+{  private static final String EXPLAIN=
+      "ToolDaemon [-socket path] [-idleMinutes n] [-maxHours n]\n"
+     +"  Runs autocorrelator.apps tools for acTool.pl clients of the same user.\n"
+     +"  socket: default /tmp/acTool_$USER/daemon.sock, the directory must be\n"
+     +"          owned by the user and not be accessible by others.\n"
+     +"  idleMinutes: exit after this many minutes without request (default 30)\n"
+     +"  maxHours: stop accepting requests after this many hours and exit when\n"
+     +"          the running requests are done (default 12)\n"
+     +"  Needs java 16 or newer.\n";
+
+   private static final String APPSPackage = "autocorrelator.apps.";
+   /** created by acToolDaemon.csh next to the socket while a daemon starts */
+   private static final String STARTLock = "starting";
+   private static final Set<PosixFilePermission> PRIVATEDir =
+      PosixFilePermissions.fromString("rwx------");
+   /** relative arguments which may be file names */
+   private static final Pattern PATHLike = Pattern.compile("[\\w.+~-][\\w.+~/-]*");
+   private static final Pattern EXTENSION = Pattern.compile(".*\\.[A-Za-z]\\w*");
+
+   private static final ThreadLocal<InputStream> IN = new InheritableThreadLocal<InputStream>();
+   private static final ThreadLocal<PrintStream> OUT = new InheritableThreadLocal<PrintStream>();
+   private static final ThreadLocal<PrintStream> ERR = new InheritableThreadLocal<PrintStream>();
+
+   private final Path socketPath;
+   private final long idleMS;
+   private final long maxLifeMS;
+   private final long startMS = System.currentTimeMillis();
+   private final AtomicInteger running = new AtomicInteger();
+   private volatile long lastRequestMS = startMS;
+   /** the socket was removed, it may belong to a new daemon by now */
+   private boolean retired = false;
+
+   private ToolDaemon(Path socketPath, long idleMS, long maxLifeMS)
+   {  this.socketPath = socketPath;
+      this.idleMS = idleMS;
+      this.maxLifeMS = maxLifeMS;
+   }
+
+   public static void main(String[] args) throws IOException
+   {  String[] modes    = {};
+      String[] parms    = {"-socket", "-idleMinutes", "-maxHours"};
+      String[] reqParms = {};
+      CommandLineParser cParser = new CommandLineParser(EXPLAIN,0,0,args,modes,parms,reqParms);
+
+      String socket = cParser.getValue("-socket");
+      if(socket == null)
+         socket = "/tmp/acTool_" + System.getProperty("user.name") + "/daemon.sock";
+      long idleMin = 30;
+      if(cParser.wasGiven("-idleMinutes"))
+         idleMin = Long.parseLong(cParser.getValue("-idleMinutes"));
+      long maxHours = 12;
+      if(cParser.wasGiven("-maxHours"))
+         maxHours = Long.parseLong(cParser.getValue("-maxHours"));
+
+      new ToolDaemon(new File(socket).getAbsoluteFile().toPath(), 
+                     idleMin * 60000, maxHours * 3600000).serve();
+   }
+
+   private void serve() throws IOException
+   {  UserPrincipal user = checkSocketDir();
+      ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+      try
+      {  removeStaleSocket();
+         server.bind(UnixDomainSocketAddress.of(socketPath));
+         Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+      } finally
+      {  // the next caller of acToolDaemon.csh may start a daemon again
+         Files.deleteIfExists(socketPath.resolveSibling(STARTLock));
+      }
+      Runtime.getRuntime().addShutdownHook(new Thread()
+      {  public void run()
+         {  removeSocket();
+         }
+      });
+
+      installRouting();
+      startLifetimeWatch();
+
+      ExecutorService pool = Executors.newCachedThreadPool();
+      while(true)
+      {  final SocketChannel client = server.accept();
+         if(! isSameUser(client, user))
+         {  client.close();
+            continue;
+         }
+         lastRequestMS = System.currentTimeMillis();
+         running.incrementAndGet();
+         pool.execute(new Runnable()
+         {  public void run()
+            {  try
+               {  handle(client);
+               } catch(Throwable e)
+               {  e.printStackTrace();
+               } finally
+               {  lastRequestMS = System.currentTimeMillis();
+                  running.decrementAndGet();
+                  try { client.close(); } catch(IOException e) { /* ignore */ }
+               }
+            }
+         });
+      }
+   }
+
+   /**
+    * Create the directory of the socket accessible only by this user. An
+    * existing directory must be owned by the user and not be accessible by
+    * others, otherwise another user could connect to or replace the socket.
+    *
+    * @return this user.
+    */
+   private UserPrincipal checkSocketDir() throws IOException
+   {  Path dir = socketPath.getParent();
+      UserPrincipal user = dir.getFileSystem().getUserPrincipalLookupService()
+                              .lookupPrincipalByName(System.getProperty("user.name"));
+      if(! Files.exists(dir, LinkOption.NOFOLLOW_LINKS))
+         Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(PRIVATEDir));
+
+      if(! Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)
+         || ! Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS).getName().equals(user.getName())
+         || ! Files.getPosixFilePermissions(dir, LinkOption.NOFOLLOW_LINKS).equals(PRIVATEDir))
+         throw new Error(String.format("%s must be a directory owned by %s with mode 700",
+                                       dir, user.getName()));
+      return user;
+   }
+
+   /**
+    * @return true if the client process runs as user.
+    */
+   private static boolean isSameUser(SocketChannel client, UserPrincipal user)
+   {  try
+      {  UnixDomainPrincipal peer = client.getOption(ExtendedSocketOptions.SO_PEERCRED);
+         return peer.user().getName().equals(user.getName());
+      } catch(IOException e)
+      {  return false;
+      }
+   }
+
+   /**
+    * A socket file without a daemon listening is left by a daemon which was
+    * killed, a running daemon is not replaced.
+    */
+   private void removeStaleSocket() throws IOException
+   {  if(! Files.exists(socketPath)) return;
+      try
+      {  SocketChannel probe = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+         probe.close();
+         throw new Error("ToolDaemon is already running on " + socketPath);
+      } catch(IOException e)
+      {  Files.delete(socketPath);
+      }
+   }
+
+   /**
+    * Remove the socket unless it was removed when the daemon retired.
+    */
+   private synchronized void removeSocket()
+   {  if(retired) return;
+      retired = true;
+      socketPath.toFile().delete();
+   }
+
+   private synchronized boolean isRetired()
+   {  return retired;
+   }
+
+   private void startLifetimeWatch()
+   {  Thread watch = new Thread("lifetimeWatch")
+      {  public void run()
+         {  while(true)
+            {  try { Thread.sleep(60000); } catch(InterruptedException e) { return; }
+               long now = System.currentTimeMillis();
+               // new clients start a new daemon while the running requests finish
+               if(now - startMS > maxLifeMS)
+                  removeSocket();
+
+               if(running.get() == 0 && (isRetired() || now - lastRequestMS > idleMS))
+               {  removeSocket();
+                  Runtime.getRuntime().halt(0);
+               }
+            }
+         }
+      };
+      watch.setDaemon(true);
+      watch.start();
+   }
+
+   private void handle(SocketChannel client) throws IOException
+   {  DataInputStream req = new DataInputStream(
+                              new BufferedInputStream(Channels.newInputStream(client)));
+      int nStrings = req.readInt();
+      String[] strings = new String[nStrings];
+      for(int i=0; i<nStrings; i++)
+      {  byte[] buf = new byte[req.readInt()];
+         req.readFully(buf);
+         strings[i] = new String(buf, "UTF-8");
+      }
+
+      String cwd       = strings[0];
+      File   fifoDir   = new File(strings[1]);
+      String mainClass = strings[2];
+      String[] args = new String[nStrings-3];
+      System.arraycopy(strings, 3, args, 0, args.length);
+
+      // opening a fifo blocks until the client has opened the other end
+      PrintStream out = new PrintStream(new FileOutputStream(new File(fifoDir, "stdout")), true);
+      PrintStream err = new PrintStream(new FileOutputStream(new File(fifoDir, "stderr")), true);
+      LazyFifoInputStream in = new LazyFifoInputStream(new File(fifoDir, "stdin"));
+
+      int status;
+      IN.set(in);
+      OUT.set(out);
+      ERR.set(err);
+      ToolExit.enterDaemon(true);
+      try
+      {  status = runTool(mainClass, rewriteArgs(args, cwd, fifoDir), err);
+      } finally
+      {  ToolExit.enterDaemon(false);
+         IN.remove();
+         OUT.remove();
+         ERR.remove();
+         out.close();
+         err.close();
+         in.close();
+      }
+
+      DataOutputStream resp = new DataOutputStream(Channels.newOutputStream(client));
+      resp.writeInt(status);
+      resp.flush();
+   }
+
+   private static int runTool(String mainClass, String[] args, PrintStream err)
+   {  if(! mainClass.startsWith(APPSPackage) || mainClass.equals(ToolDaemon.class.getName()))
+      {  err.println("ToolDaemon does not run " + mainClass);
+         return 1;
+      }
+
+      try
+      {  Method main = Class.forName(mainClass).getMethod("main", String[].class);
+         main.invoke(null, (Object)args);
+         return 0;
+      } catch(InvocationTargetException e)
+      {  Throwable cause = e.getCause();
+         if(cause instanceof ToolExit)
+            return ((ToolExit)cause).status;
+         cause.printStackTrace(err);
+         return 1;
+      } catch(Exception e)
+      {  e.printStackTrace(err);
+         return 1;
+      }
+   }
+
+   /**
+    * Make file arguments independent of the working directory of the daemon.
+    */
+   static String[] rewriteArgs(String[] args, String cwd, File fifoDir) throws IOException
+   {  List<String> newArgs = new ArrayList<String>(args.length);
+      int nLinks = 0;
+      for(int i=0; i<args.length; i++)
+      {  String arg = args[i];
+         String option = i > 0 ? args[i-1] : "";
+         boolean isIn  = option.matches("-in\\d*");
+         boolean isOut = option.matches("-out\\d*");
+
+         if((isIn || isOut) && arg.startsWith(".") && arg.indexOf('/') < 0)
+         {  // OE convention: ".ext" is stdin or stdout in format ext
+            File link = new File(fifoDir, "std" + (nLinks++) + arg);
+            Files.createSymbolicLink(link.toPath(),
+                           new File(fifoDir, isIn ? "stdin" : "stdout").toPath());
+            arg = link.getPath();
+         }else if(! arg.startsWith("/") && ! arg.startsWith("-")
+                  && (isIn || isOut || isPath(arg, cwd)))
+         {  arg = new File(cwd, arg).getPath();
+         }
+         newArgs.add(arg);
+      }
+      return newArgs.toArray(new String[newArgs.size()]);
+   }
+
+   /**
+    * @return true if the relative argument arg names a file: it exists in cwd
+    *         or looks like a file name with a directory or an extension. Tag
+    *         names, numbers and SMARTS are left alone.
+    */
+   private static boolean isPath(String arg, String cwd)
+   {  if(new File(cwd, arg).exists()) return true;
+      return PATHLike.matcher(arg).matches()
+          && (arg.indexOf('/') > 0 || EXTENSION.matcher(arg).matches());
+   }
+
+   private static void installRouting()
+   {  final PrintStream sysOut = System.out;
+      final PrintStream sysErr = System.err;
+      final InputStream sysIn  = System.in;
+
+      System.setOut(new PrintStream(new RoutingOutputStream(OUT, sysOut), true));
+      System.setErr(new PrintStream(new RoutingOutputStream(ERR, sysErr), true));
+      System.setIn(new InputStream()
+      {  private InputStream target()
+         {  InputStream in = IN.get();
+            return in == null ? sysIn : in;
+         }
+         public int read() throws IOException
+         {  return target().read();
+         }
+         public int read(byte[] b, int off, int len) throws IOException
+         {  return target().read(b, off, len);
+         }
+         public int available() throws IOException
+         {  return target().available();
+         }
+      });
+   }
+
+
+   private static class RoutingOutputStream extends OutputStream
+   {  private final ThreadLocal<PrintStream> route;
+      private final PrintStream fallback;
+
+      RoutingOutputStream(ThreadLocal<PrintStream> route, PrintStream fallback)
+      {  this.route = route;
+         this.fallback = fallback;
+      }
+
+      private PrintStream target()
+      {  PrintStream out = route.get();
+         return out == null ? fallback : out;
+      }
+
+      public void write(int b)
+      {  target().write(b);
+      }
+
+      public void write(byte[] b, int off, int len)
+      {  target().write(b, off, len);
+      }
+
+      public void flush()
+      {  target().flush();
+      }
+   }
+
+
+   /**
+    * Opens the stdin fifo only if the tool reads System.in, opening it blocks
+    * until the client writes.
+    */
+   private static class LazyFifoInputStream extends InputStream
+   {  private final File fifo;
+      private InputStream in = null;
+
+      LazyFifoInputStream(File fifo)
+      {  this.fifo = fifo;
+      }
+
+      private synchronized InputStream target() throws IOException
+      {  if(in == null) in = new BufferedInputStream(new FileInputStream(fifo));
+         return in;
+      }
+
+      public int read() throws IOException
+      {  return target().read();
+      }
+
+      public int read(byte[] b, int off, int len) throws IOException
+      {  return target().read(b, off, len);
+      }
+
+      public synchronized void close() throws IOException
+      {  if(in != null) in.close();
+      }
+   }
+
+}
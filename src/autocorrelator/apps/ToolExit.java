@@ -0,0 +1,52 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.apps;
+
+
+/**
+ * Replacement of System.exit() for the autocorrelator.apps tools.
+ *
+ * Run from the command line the tool exits. Run in the {@link ToolDaemon}
+ * ToolExit is thrown instead, which ends only the request of the calling
+ * thread without exiting the daemon.
+ */
+public class ToolExit extends Error
+{  private static final long serialVersionUID = 1L;
+   private static final ThreadLocal<Boolean> IN_DAEMON = new InheritableThreadLocal<Boolean>();
+
+   final int status;
+
+   private ToolExit(int status)
+   {  super("exit(" + status + ")");
+      this.status = status;
+   }
+
+   public static void exit(int status)
+   {  if(IN_DAEMON.get() != null) throw new ToolExit(status);
+      System.exit(status);
+   }
+
+   /**
+    * Mark the current thread as running a request of the ToolDaemon.
+    */
+   static void enterDaemon(boolean inDaemon)
+   {  if(inDaemon)
+         IN_DAEMON.set(Boolean.TRUE);
+      else
+         IN_DAEMON.remove();
+   }
+}
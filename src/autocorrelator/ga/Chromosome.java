@@ -17,15 +17,15 @@ along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
 package autocorrelator.ga;
 
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import autocorrelator.apps.*;
 import autocorrelator.ac.*;
@@ -36,9 +36,22 @@ public class Chromosome
 {  private final int cycle;
    private final double quality;
    private final int execIndex;
+   /** true if the quality was taken from a {@link GenomeRegistry} */
+   private final boolean fromRegistry;
    private final String[] qualityStrings;
-   private final JobDescriptionAndValues[] allJobs;
+   /** jobs in execution order, the first is the molecule source without description */
+   private final JobDescription[] jobs;
+   /** genome positions of the parameters of jobs[j] start at jobStart[j] */
+   private final int[] jobStart;
+   /** parameter of each genome position, shared by chromosomes bred from each other */
+   private final Parameter[] slots;
+   /** index of the value of each parameter, see {@link Parameter#indexOf} */
+   private final int[] genome;
+   private final long hash;
+   /** executions of jobs if this chromosome was computed, else null */
+   private final JobExecution[] execs;
    private final JobExecution rootExecution;
+   private final RunContext ctx;
    private String parent1 = "";
    private String parent2 = "";
    
@@ -47,49 +60,146 @@ public class Chromosome
     * starting with an omega job and ending with a R job correlating the results.
     * 
     * A Chromosome is not mutable, all methods in this class retunring a modified 
-    * Chromosome will have created a new instance and all fields will be deep copies.
+    * Chromosome will have created a new instance.
+    * The parameter values are stored as an array of value indexes, the
+    * genome, so that breeding, hashing and comparing do not touch strings.
     *  
     * @param baseExecution the jobExecution which yielded the results.
     */
    public Chromosome(JobExecution baseExecution) throws IOException
-   {  List<JobExecution> jobSeqList = new ArrayList<JobExecution>();
+   {  this(baseExecution, updatedStore(RunContext.current()));
+   }
+
+   /**
+    * @param store run store with the qualities read from the correlation file,
+    *        see {@link RunStore#updateQualities}.
+    */
+   public Chromosome(JobExecution baseExecution, RunStore store)
+   {  ctx = RunContext.current();
+      List<JobExecution> jobSeqList = new ArrayList<JobExecution>();
       
       JobExecution exec = baseExecution;
       while(exec != null)
       {  jobSeqList.add(exec);
          exec = exec.getParentExecution();
       }
-      rootExecution = jobSeqList.get(jobSeqList.size()-1);
+      // jobSeqList is in last executed order but execs is in first to execute order
+      Collections.reverse(jobSeqList);
+      execs = jobSeqList.toArray(new JobExecution[jobSeqList.size()]);
+      rootExecution = execs[0];
       
-      allJobs = new JobDescriptionAndValues[jobSeqList.size()];
-      // jobSeqList is in last executed order but allJobs is in first to execute order
-      JobExecution[] jobSequence = new JobExecution[jobSeqList.size()];
-      for(int i=0, j=jobSequence.length-1; i<jobSequence.length; i++, j--)
-      {  JobExecution je = jobSeqList.get(i);
-         allJobs[j] = new JobDescriptionAndValues(je);;
+      jobs = new JobDescription[execs.length];
+      jobStart = new int[execs.length+1];
+      List<Parameter> params = new ArrayList<Parameter>();
+      List<String> vals = new ArrayList<String>();
+      for(int j=0; j<execs.length; j++)
+      {  jobs[j] = execs[j].getJobDescription();
+         jobStart[j] = params.size();
+         // the molecule source is not part of the genome
+         if(j == 0) continue;
+         for(ParameterValue pv : execs[j].getParamVals())
+         {  params.add(pv.getParameter());
+            vals.add(pv.getValue());
+         }
       }
+      jobStart[execs.length] = params.size();
+      slots = params.toArray(new Parameter[params.size()]);
+      genome = new int[slots.length];
+      for(int s=0; s<slots.length; s++)
+         genome[s] = slots[s].indexOf(vals.get(s));
+      hash = computeHash();
 
-      QualityInfo qi = readQuality(baseExecution);
+      QualityInfo qi = getQuality(baseExecution, store);
       qualityStrings = qi.qualStr;
       execIndex = qi.execIndex;
+      fromRegistry = false;
       
       if(qualityStrings.length > 1)
          quality = Double.parseDouble(qualityStrings[1]);
       else
          quality = 0;
       
-      cycle = allJobs[allJobs.length-1].jobExec.getCycle();
+      cycle = baseExecution.getCycle();
    }
    
-   private Chromosome(JobDescriptionAndValues[] jobs, JobExecution rootExecution, int cycle)
-   {  this.allJobs = jobs;
-      this.quality = Double.NaN;
-      this.qualityStrings = new String[0];
-      this.execIndex = 0;
-      this.rootExecution = rootExecution;
+   /**
+    * Chromosome with the jobs of template and the given genome.
+    */
+   private Chromosome(Chromosome template, int[] genome, int cycle)
+   {  this(template, genome, cycle, Double.NaN);
+   }
+
+   /**
+    * @param quality quality known from a {@link GenomeRegistry} or NaN.
+    */
+   private Chromosome(Chromosome template, int[] genome, int cycle, double quality)
+   {  this.jobs = template.jobs;
+      this.jobStart = template.jobStart;
+      this.slots = template.slots;
+      this.genome = genome;
+      this.hash = computeHash();
+      this.execs = null;
+      this.ctx = template.ctx;
+      this.quality = quality;
+      if(Double.isNaN(quality))
+         this.qualityStrings = new String[0];
+      else
+         this.qualityStrings = new String[] { "registry", Double.toString(quality) };
+      this.execIndex = -1;
+      this.fromRegistry = ! Double.isNaN(quality);
+      this.rootExecution = template.rootExecution;
       this.cycle = cycle;
    }
 
+   private long computeHash()
+   {  long h = 1125899906842597L;
+      for(JobDescription jd : jobs)
+         h = 31*h + (jd == null ? 0 : jd.hashCode());
+      for(int g : genome)
+         h = 0x100000001b3L * (h ^ g);
+      return h;
+   }
+
+   /**
+    * @return hash of the parameter ids and values, the same in every run on
+    *         the same config.
+    */
+   long getContentHash()
+   {  long h = 0xcbf29ce484222325L;
+      for(int s=0; s<slots.length; s++)
+      {  h = GenomeRegistry.hash(h, slots[s].getId());
+         h = GenomeRegistry.hash(h, slots[s].getValue(genome[s]));
+      }
+      return h;
+   }
+
+   /**
+    * @return id and value of every parameter.
+    */
+   List<String[]> getParameterIdsAndValues()
+   {  List<String[]> vals = new ArrayList<String[]>(slots.length);
+      for(int s=0; s<slots.length; s++)
+         vals.add(new String[] { slots[s].getId(), slots[s].getValue(genome[s]) });
+      return vals;
+   }
+
+   /**
+    * @return chromosome with the jobs of this and the given values, null if
+    *         ids are not exactly the parameters of this.
+    */
+   Chromosome withValues(String[] ids, String[] vals, double quality, int cycle)
+   {  if(ids.length != slots.length) return null;
+      
+      int[] newGenome = new int[slots.length];
+      for(int s=0; s<slots.length; s++)
+      {  // ids are in genome order unless the config changed
+         int i = ids[s].equals(slots[s].getId()) ? s : Arrays.asList(ids).indexOf(slots[s].getId());
+         if(i < 0) return null;
+         newGenome[s] = slots[s].indexOf(vals[i]);
+      }
+      return new Chromosome(this, newGenome, cycle, quality);
+   }
+
    /**
     * @return array of all possible chromosomes which differ only in one 
     *    parametervalue from this. 
@@ -97,29 +207,48 @@ public class Chromosome
    public Chromosome[] getAllSingleChanged(int cycle)
    {  List<Chromosome> all = new ArrayList<Chromosome>();
    
-      // start with 1 we are ignoring the loadData job for now
-      for(int flexJobIdx=1; flexJobIdx<allJobs.length; flexJobIdx++)
-      {  for(int flexParamIdx=0; flexParamIdx<allJobs[flexJobIdx].jobDesc.getNParameter(); flexParamIdx++)
-         {  Parameter flexParam = allJobs[flexJobIdx].jobDesc.getParameter()[flexParamIdx];
-            
-            for(String newParamVal: flexParam.getValues())
-            {  JobDescriptionAndValues[] newJobs = allJobs.clone();
-               
-               // clone  
-               // start with 1 we are ignoring the loadData job for now               
-               for(int j=0; j<newJobs.length; j++)
-               {  newJobs[j] = new JobDescriptionAndValues(newJobs[j]);
-               }
-               
-               newJobs[flexJobIdx].paramValues[flexParamIdx] =
-                  new ParameterValue(flexParam, newParamVal);
-               all.add(new Chromosome(newJobs, rootExecution, cycle));
-            }
+      for(int s=0; s<slots.length; s++)
+      {  for(int v=0; v<slots[s].getNValues(); v++)
+         {  int[] newGenome = genome.clone();
+            newGenome[s] = v;
+            all.add(new Chromosome(this, newGenome, cycle));
+         }
+      }
+      return all.toArray(new Chromosome[all.size()]);
+   }
+
+   /**
+    * Neighbourhood of a pattern search: like {@link #getAllSingleChanged} but
+    * range parameters only move stepFraction of their range up or down, at
+    * least one value and clamped to the ends of the range.
+    */
+   public Chromosome[] getNeighbours(double stepFraction, int cycle)
+   {  List<Chromosome> all = new ArrayList<Chromosome>();
+   
+      for(int s=0; s<slots.length; s++)
+      {  int nValues = slots[s].getNValues();
+         int idx = genome[s];
+         
+         if("range".equals(slots[s].getType()) && idx < nValues)
+         {  int step = Math.max(1, (int)Math.round(stepFraction * (nValues-1)));
+            int down = Math.max(0, idx - step);
+            int up   = Math.min(nValues-1, idx + step);
+            if(down != idx) all.add(withValue(s, down, cycle));
+            if(up   != idx) all.add(withValue(s, up, cycle));
+         }else
+         {  for(int v=0; v<nValues; v++)
+               if(v != idx) all.add(withValue(s, v, cycle));
          }
       }
       return all.toArray(new Chromosome[all.size()]);
    }
 
+   private Chromosome withValue(int slot, int valueIdx, int cycle)
+   {  int[] newGenome = genome.clone();
+      newGenome[slot] = valueIdx;
+      return new Chromosome(this, newGenome, cycle);
+   }
+
    /**
     * @param rate the probablyity of mutating a single parameterValue, note the 
     *   probablility of mutating chromosome in any location is 
@@ -127,23 +256,14 @@ public class Chromosome
     * @return a newly created chromosome possibly mutated. 
     */
    public Chromosome mutate(double rate, int cycle)
-   {  JobDescriptionAndValues[] newJobs = allJobs.clone();
+   {  int[] newGenome = genome.clone();
    
       // TODO Chuck suggested gaussian or kaussian distribution for probablility
-      for(int j=0; j<newJobs.length; j++)
-      {  // clone  
-         newJobs[j] = new JobDescriptionAndValues(newJobs[j]);
-      
-         ParameterValue[] pVals = newJobs[j].paramValues;
-         for(int p=0; p<pVals.length; p++)
-         {  if( Settings.MYRandom.nextDouble() < rate )
-            {  Parameter param = pVals[p].getParameter();
-               String newVal = param.getRandomValue();
-               pVals[p] = new ParameterValue(param,newVal);
-            }
-         }
+      for(int s=0; s<newGenome.length; s++)
+      {  if( Settings.MYRandom.nextDouble() < rate )
+            newGenome[s] = Settings.MYRandom.nextInt(slots[s].getNValues());
       }
-      return new Chromosome(newJobs, rootExecution, cycle);
+      return new Chromosome(this, newGenome, cycle);
    }
  
    public Chromosome crossOver(Chromosome partner, int cycle)
@@ -153,12 +273,9 @@ public class Chromosome
       //    and values from partner with n > cp
 
       int nVariableParam = 0;
-      for(int j=0; j<allJobs.length; j++)
-      {  ParameterValue[] pVals = allJobs[j].paramValues;
-         for(int p=0; p<pVals.length; p++)
-         {  if(pVals[p].getParameter().getNValues() > 1)
-               nVariableParam++;
-         }
+      for(Parameter param : slots)
+      {  if(param.getNValues() > 1)
+            nVariableParam++;
       }
          
       if(nVariableParam < 2)
@@ -166,89 +283,72 @@ public class Chromosome
       
       int crossOverPoint = Settings.MYRandom.nextInt(nVariableParam-1);
       
-      JobDescriptionAndValues[] newJobs = allJobs.clone();
-      for(int j=0; j<newJobs.length; j++)
-      {  // clone  
-         newJobs[j] = new JobDescriptionAndValues(newJobs[j]);
-         JobDescriptionAndValues partnerJob = partner.allJobs[j];
+      int[] newGenome = genome.clone();
+      for(int s=0; s<newGenome.length; s++)
+      {  if(slots[s].getNValues() <= 1) continue;
          
-         ParameterValue[] pVals = newJobs[j].paramValues;
-         for(int p=0; p<pVals.length; p++)
-         {  if(pVals[p].getParameter().getNValues() <= 1) continue;
-            
-            if(crossOverPoint-- < 0 )
-            {  pVals[p] = partnerJob.paramValues[p];
-            }
-         }
+         if(crossOverPoint-- < 0 )
+            newGenome[s] = partner.genome[s];
       }
 
-      Chromosome newChr = new Chromosome(newJobs, rootExecution, cycle);
+      Chromosome newChr = new Chromosome(this, newGenome, cycle);
       if(this   .qualityStrings.length > 0) newChr.parent1 = this.qualityStrings[0];
       if(partner.qualityStrings.length > 0) newChr.parent2 = partner.qualityStrings[0];
       
       return newChr;
    }
    
+   /**
+    * @return new array with the parameter values of jobs[j].
+    */
+   private ParameterValue[] getParamValues(int j)
+   {  ParameterValue[] vals = new ParameterValue[jobStart[j+1] - jobStart[j]];
+      for(int p=0; p<vals.length; p++)
+      {  Parameter param = slots[jobStart[j] + p];
+         vals[p] = new ParameterValue(param, param.getValue(genome[jobStart[j] + p]));
+      }
+      return vals;
+   }
    
    /**
     * @return array of strings first is output name of correlation callcualtion
     *         followed by an abritrary number of quality parameter; the GA only 
     *         usess the first quality parameter for ranking.
     */
-   private QualityInfo readQuality(JobExecution rExecution) throws IOException
-   {  BufferedReader in = new BufferedReader(
-                           new FileReader(Settings.getCorrelationFilename()));
-      try
-      {  String line;
-         String outFilename = rExecution.getOutputFileName();
-         int pos = -1;
-         while((line=in.readLine()) != null)
-         {  pos++;
-            if(! line.startsWith(outFilename)) continue;
-            //format should be "filename R2"
-            String vals[] = line.split("\\s+");
-            if(vals==null || vals.length<2) continue;
-            QualityInfo qi = new QualityInfo(pos, vals);
-            return qi;
-         }
-         System.err.printf("Line with quality not found for %s in %s.\n", 
-                  outFilename, Settings.getCorrelationFilename());
-         QualityInfo qi = new QualityInfo(-1, 
-                                 new String[] { rExecution.getOutputFileName() });
-         return qi;
-      }finally
-      {  in.close();
-      }
+   private QualityInfo getQuality(JobExecution rExecution, RunStore store)
+   {  String[] vals = store.getQuality(rExecution);
+      if(vals != null)
+         return new QualityInfo(store.getQualityIndex(rExecution), vals);
       
+      System.err.printf("Line with quality not found for %s in %s.\n", 
+               rExecution.getOutputFileName(), ctx.getCorrelationFilename());
+      return new QualityInfo(-1, new String[] { rExecution.getOutputFileName() });
    }
-
-   /**
-    * Execute sequence off jobs as described by this chromosome.
-    * @throws IOException 
-    */
-   public void execute(int nChildren) throws IOException
-   {  
-      String basePrefix = Settings.getNamePrefix();   // remove cycle number
-      basePrefix = basePrefix.substring(0,basePrefix.lastIndexOf("_"));
-      String postRJobCommands = String.format(
-            "gaReleaseNext.pl -nTotal %d -percentLeft 20 -prefix %s -cycle %d",
-                  nChildren, basePrefix, cycle);
-      execute(postRJobCommands);
+   
+   private static RunStore updatedStore(RunContext ctx) throws IOException
+   {  RunStore store = ctx.getRunStore();
+      store.updateQualities(ctx.getCorrelationFilename());
+      return store;
    }
 
    /**
     * Execute sequence off jobs as described by this chromosome.
+    * 
+    * @param cache executions already computed, leading jobs of this chromosome
+    *        found in the cache are not submitted again.
+    * @return the execution of the last job, the model.
     * @throws IOException 
     */
-   public void execute() throws IOException
-   {  execute("");
+   public JobExecution execute(ExecutionCache cache) throws IOException
+   {  return execute("", cache);
    }
 
    /**
     * Execute sequence off jobs as described by this chromosome.
     * @throws IOException 
     */
-   private void execute(String postRJobCommand) throws IOException
+   private JobExecution execute(String postRJobCommand, ExecutionCache cache) 
+   throws IOException
    {  
 //      DbMoleculeSource moleculeSource = 
 //         Settings.getConfigFile().getMolSourceDesc().getMoleculeSource();
@@ -261,20 +361,83 @@ public class Chromosome
 //                                       moleculeSource.getMoleculeFileName());
 
       JobExecution parentExec = rootExecution;
-      
-      // skip first job for now the first job is the datasource which is currently treated separatly
-      for(int j=1; j<allJobs.length; j++)
-      {  JobDescriptionAndValues jv = allJobs[j];
-         JobDescription jDesc = jv.jobDesc;
-         JobRunner runner = JobRunner.factory(parentExec, jDesc.getType());
-         ParameterValue[] paramVals = jv.paramValues;
+      RunContext previous = RunContext.bind(ctx);
+      try
+      {  return executeJobs(parentExec, postRJobCommand, cache);
+      } finally
+      {  RunContext.bind(previous);
+      }
+   }
+
+   private JobExecution executeJobs(JobExecution parentExec, String postRJobCommand, 
+                                    ExecutionCache cache) throws IOException
+   {  // skip first job for now the first job is the datasource which is currently treated separatly
+      for(int j=1; j<jobs.length; j++)
+      {  JobDescription jDesc = jobs[j];
+         ParameterValue[] paramVals = getParamValues(j);
          
          String myPostJobCommands = "";
-         if(j == allJobs.length-1) // only on R execution
+         if(j == jobs.length-1) // only on R execution
          {  myPostJobCommands = postRJobCommand;
+         
+         }else
+         {  // upstream job with the same parameters and parent was computed before
+            JobExecution done = cache.getReusable(parentExec, jDesc, paramVals);
+            if(done != null)
+            {  parentExec = done;
+               continue;
+            }
+         }
+         
+         // submitted by an earlier run of this cycle
+         RunJournal journal = ctx.getJournal();
+         JobExecution resumed = null;
+         if(journal != null) resumed = journal.resume(parentExec, jDesc, paramVals);
+         if(resumed != null)
+         {  parentExec = resumed;
+            cache.addSubmitted(resumed);
+            continue;
          }
+         
+         JobRunner runner = JobRunner.factory(parentExec, jDesc.getType());
          parentExec = runner.executeJob(jDesc, paramVals, parentExec, cycle, myPostJobCommands);
+         cache.addSubmitted(parentExec);
       }   
+      return parentExec;
+   }
+
+   /**
+    * @return estimated seconds to execute this chromosome, jobs found in cache
+    *         are not counted.
+    */
+   public double getRemainingRuntime(ExecutionCache cache, JobDag dag)
+   {  // skip first job, the datasource is not executed
+      JobDescription[] jDescs = new JobDescription[jobs.length-1];
+      ParameterValue[][] paramVals = new ParameterValue[jobs.length-1][];
+      for(int j=1; j<jobs.length; j++)
+      {  jDescs[j-1] = jobs[j];
+         paramVals[j-1] = getParamValues(j);
+      }
+      return dag.getRemainingPath(rootExecution, jDescs, paramVals, cache);
+   }
+
+   /**
+    * Add the executions which computed this chromosome to cache.
+    */
+   public void addExecutions(ExecutionCache cache)
+   {  if(execs != null) cache.add(execs[execs.length-1]);
+   }
+
+   /**
+    * @return the parameter values of all jobs of this chromosome.
+    */
+   List<ParameterValue> getParameterValues()
+   {  List<ParameterValue> vals = new ArrayList<ParameterValue>();
+      for(int j=0; j<jobs.length; j++)
+      {  for(ParameterValue pv : getParamValues(j))
+            vals.add(pv);
+      }
+      return vals;
    }
 
    public double getQuality()
@@ -293,6 +456,23 @@ public class Chromosome
    public int getExecIndex()
    {  return execIndex;
    }
+
+   /**
+    * @return true if the model of this chromosome was evaluated by this
+    *         experiment, false if it has no quality yet or its quality was
+    *         taken from a {@link GenomeRegistry}.
+    */
+   public boolean isEvaluated()
+   {  return ! fromRegistry && execIndex >= 0;
+   }
+
+   /**
+    * @return true if the quality of this chromosome was evaluated by another
+    *         experiment and taken from a {@link GenomeRegistry}.
+    */
+   public boolean isFromRegistry()
+   {  return fromRegistry;
+   }
    
    
    /**
@@ -303,14 +483,14 @@ public class Chromosome
       
       sb.append("cycle");
 
-      for(JobDescriptionAndValues jv : allJobs)
-      {  JobDescription jDesc = jv.jobDesc;
+      for(int j=0; j<jobs.length; j++)
+      {  JobDescription jDesc = jobs[j];
          
          String jName = jDesc == null ? "molsource" : jDesc.getType(); 
          sb.append('\t').append(jName);
          
-         for(ParameterValue pv : jv.paramValues)
-         {  sb.append('\t').append(pv.getParameter().getName());
+         for(int s=jobStart[j]; s<jobStart[j+1]; s++)
+         {  sb.append('\t').append(slots[s].getName());
          }
       }
 
@@ -319,9 +499,8 @@ public class Chromosome
       sb.append('\t').append("parent1");
       sb.append('\t').append("parent2");
       
-      for(JobDescriptionAndValues jv : allJobs)
-      {  JobDescription jDesc = jv.jobDesc;
-         String jName = jDesc == null ? "molsource" : jDesc.getType(); 
+      for(JobDescription jDesc : jobs)
+      {  String jName = jDesc == null ? "molsource" : jDesc.getType(); 
          sb.append('\t').append(jName);
       }
       return sb.toString();
@@ -335,13 +514,13 @@ public class Chromosome
       
       sb.append(cycle);
       
-      for(JobDescriptionAndValues jv : allJobs)
-      {  JobDescription jDesc = jv.jobDesc;
+      for(int j=0; j<jobs.length; j++)
+      {  JobDescription jDesc = jobs[j];
          
          String jName = jDesc == null ? "molsource" : jDesc.getType(); 
          sb.append('\t').append(jName);
-         for(ParameterValue pv : jv.paramValues)
-         {  sb.append('\t').append(pv.getValue());
+         for(int s=jobStart[j]; s<jobStart[j+1]; s++)
+         {  sb.append('\t').append(slots[s].getValue(genome[s]));
          }
       }
 
@@ -350,9 +529,9 @@ public class Chromosome
       sb.append('\t').append(parent1);
       sb.append('\t').append(parent2);
       
-      for(JobDescriptionAndValues jv : allJobs)
-      {  JobExecution   jExec = jv.jobExec;
-         if(jExec!= null)sb.append('\t').append(jExec.getOutputFileName());
+      if(execs != null)
+      {  for(JobExecution jExec : execs)
+            sb.append('\t').append(jExec.getOutputFileName());
       }
       return sb.toString(); // remove first tab
    }
@@ -364,9 +543,9 @@ public class Chromosome
    {  String preTabs = "";
       StringBuilder sb = new StringBuilder(500);
       
-      for(JobDescriptionAndValues jv : allJobs)
-      {  JobDescription jDesc = jv.jobDesc;
-         JobExecution   jExec = jv.jobExec;
+      for(int j=0; j<jobs.length; j++)
+      {  JobDescription jDesc = jobs[j];
+         JobExecution   jExec = execs == null ? null : execs[j];
          
          String jName = jDesc == null ? "molsource" : jDesc.getType(); 
          sb.append('\n').append(preTabs).append(jName);
@@ -375,10 +554,10 @@ public class Chromosome
          sb.append('\n');
          preTabs += '\t';
          
-         for(ParameterValue pv : jv.paramValues)
+         for(int s=jobStart[j]; s<jobStart[j+1]; s++)
          {  sb.append(preTabs)
               .append(String.format(" %s = %s\n", 
-                     pv.getParameter().getName(), pv.getValue()));
+                     slots[s].getName(), slots[s].getValue(genome[s])));
          }
       }
       return sb.toString();
@@ -386,16 +565,7 @@ public class Chromosome
    
    @Override
    public int hashCode()
-   {  int hashCode = 1;
-      for(JobDescriptionAndValues jv : allJobs)
-      {  if(jv.jobDesc != null) hashCode = 31*hashCode + jv.jobDesc.hashCode();
-         for(ParameterValue pv : jv.paramValues)
-         {  hashCode = 31*hashCode + pv.getValue().hashCode();
-            hashCode = 31*hashCode + pv.getParameter().hashCode();
-         }
-      }
-      
-      return hashCode;
+   {  return (int)(hash ^ (hash >>> 32));
    }
    
    @Override
@@ -403,103 +573,79 @@ public class Chromosome
    {  if( o == this) return true;
       if(! (o instanceof Chromosome)) return false;
       Chromosome other = (Chromosome)o;
+      if(hash != other.hash || jobs.length != other.jobs.length) return false;
       
-      for(int j=0; j<allJobs.length; j++)
-      {  JobDescriptionAndValues otherJob = other.allJobs[j];
-         if(!otherJob.equals(allJobs[j])) return false;
+      for(int j=0; j<jobs.length; j++)
+      {  if(jobs[j] != other.jobs[j]) return false;
       }
-      
-      return true;
+      return Arrays.equals(genome, other.genome);
    }
 
    public static List<Chromosome> readChromosomes() 
          throws IOException, FileNotFoundException, Error
+   {  return readChromosomes(RunContext.current());
+   }
+
+   /**
+    * Read the chromosomes of the experiment described by ctx from its
+    * {@link RunStore}, the jobs and parameters are resolved against the config
+    * file of ctx.
+    * 
+    * .jobExec files written by earlier versions are imported into an empty
+    * store.
+    */
+   public static List<Chromosome> readChromosomes(final RunContext ctx) 
+         throws IOException, FileNotFoundException, Error
    {  List<Chromosome> chromosomes = new ArrayList<Chromosome>();
+      RunContext previous = RunContext.bind(ctx);
    
       try
-      {  FilenameFilter fFilter = new FilenameFilter()
-         {  public boolean accept(File dir, String name) 
-            {  return name.endsWith(".jobExec") 
-                   && name.startsWith(basePrefix);
-            }
+      {  RunStore store = ctx.getRunStore();
+         store.refresh();
+         if(store.getModels().size() == 0)
+            importJobExecFiles(ctx, store);
+         store.updateQualities(ctx.getCorrelationFilename());
          
-            final String basePrefix = Settings.getNamePrefix().replaceAll("_\\d+$", "");
-         };
-         String[] fNames = new File(".").list(fFilter);
+         if(ctx.isDebugMode()) System.err.println("=========== reading chromosomes");
          
-         if(Settings.isDebugMode()) System.err.println("=========== reading chromosomes");
-         
-         for(String fName : fNames)
-         {  Chromosome c = readeChromosome(fName);
-            
-            if(c != null)
-            {  chromosomes.add(c);
-               if(Settings.isDebugMode())  System.err.println(c);
-            }
+         for(JobExecution model : store.getModels())
+         {  Chromosome c = new Chromosome(model, store);
+            chromosomes.add(c);
+            if(ctx.isDebugMode())  System.err.println(c);
          }
-      } catch (ClassNotFoundException e)
-      {  throw new Error(e);
+      } finally
+      {  RunContext.bind(previous);
       }
    
       return chromosomes;
    }
    
-   static Chromosome readeChromosome(String fName) throws IOException, ClassNotFoundException
-   {  ObjectInputStream in = new ObjectInputStream(new FileInputStream(fName));
-      Object o=in.readObject();
-      JobExecution jExec = (JobExecution)o;
+   private static void importJobExecFiles(final RunContext ctx, RunStore store) throws IOException
+   {  FilenameFilter fFilter = new FilenameFilter()
+      {  public boolean accept(File dir, String name) 
+         {  return name.endsWith(".jobExec") 
+                && name.startsWith(basePrefix);
+         }
+      
+         final String basePrefix = ctx.getNamePrefix().replaceAll("_\\d+$", "");
+      };
+      String[] fNames = new File(".").list(fFilter);
       
-      Chromosome c = null;
       try
-      {  c = new Chromosome(jExec);
-      }catch(IOException e)
-      {  System.err.printf("Problem reading %s: %s\n", fName, e.getMessage());
-      }finally
-      {  in.close();
+      {  for(String fName : fNames)
+            store.addModel(readJobExec(fName));
+      } catch (ClassNotFoundException e)
+      {  throw new Error(e);
       }
-      return c;
    }
-}
-
-
-class JobDescriptionAndValues implements Cloneable
-{  public final ParameterValue[] paramValues;
-   public final JobDescription jobDesc;
    
-   /** if job execution is available */
-   public final JobExecution jobExec;
-
-   public JobDescriptionAndValues(JobExecution jobExec)
-   {  this.paramValues = jobExec.getParamVals();
-      this.jobDesc = jobExec.getJobDescription();
-      this.jobExec = jobExec;
-   }
-
-   public JobDescriptionAndValues(JobDescriptionAndValues val)
-   {  if( val.paramValues != null)
-         this.paramValues = (ParameterValue[]) val.paramValues.clone();
-      else
-         this.paramValues = null;
-   
-      this.jobDesc = val.jobDesc;
-      this.jobExec = null;
-   }
-   
-   public boolean equals(Object other)
-   {  if(other == this) return true;
-      if(! (other instanceof JobDescriptionAndValues)) return false;
-      
-      JobDescriptionAndValues otherJDV = (JobDescriptionAndValues) other;
-      if(this.jobDesc != otherJDV.jobDesc) return false;
-      
-      ParameterValue[] pVals = this.paramValues;
-      if(pVals.length != otherJDV.paramValues.length) return false;
-      for(int p=0; p<pVals.length; p++)
-      {  if( ! pVals[p].getValue().equals(otherJDV.paramValues[p].getValue()))
-            return false;
+   static JobExecution readJobExec(String fName) throws IOException, ClassNotFoundException
+   {  ObjectInputStream in = new ObjectInputStream(new FileInputStream(fName));
+      try
+      {  return (JobExecution)in.readObject();
+      }finally
+      {  in.close();
       }
-      
-      return true;
    }
 }
 
@@ -19,11 +19,15 @@ package autocorrelator.ga;
 
 import java.io.File;
 import java.io.IOException;
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import autocorrelator.ac.*;
 import autocorrelator.apps.*;
 
@@ -34,22 +38,41 @@ import org.jdom.input.SAXBuilder;
 
 public class GA
 {  private static final String EXPLAIN=
-      "gaStep [-debug][-waitForKey] [-queOpts 'opts'] -mutationProb 0.1\n"
+      "gaStep [-debug][-waitForKey] [-queOpts 'opts'] [-executor sge|local]\n"
+     +"   [-nThreads n] [-screenFactor n] [-registry file] -mutationProb 0.1\n"
      +"   -breedingPool 20 -childPool 15 -prefix namePrefix xmlConfig cycle\n"
      +"  childPool: number of children to create.\n"
      +"  breedingPool: number of parents from which to create children.\n"
+     +"  screenFactor: breed n times childPool candidates and submit the\n"
+     +"     childPool ones with the highest expected improvement predicted by a\n"
+     +"     random forest trained on the evaluated chromosomes.\n"
+     +"  registry: file shared by experiments on the same molecules, the\n"
+     +"     evaluated chromosomes are added to it, the best ones registered by\n"
+     +"     other experiments join the breeding pool and are not bred again.\n"
+     +"  If the journal namePrefix_cycle.journal of an earlier run of this cycle\n"
+     +"  exists the cycle is resumed: its random seed is reused and executions\n"
+     +"  which finished or are still queued are not submitted again.\n"
      +"\n";
 
    private static final int MAX_TRIES = 500;
-   private final int cycle;
    private final double mutationProbability;
    private final int breedingPoolSize;
    private final int childPoolSize;
+   private int screenFactor = 1;
+   private GenomeRegistry registry = null;
+
+   /** all chromosomes read or evaluated so far */
+   private final List<Chromosome> population = new ArrayList<Chromosome>();
+   /**
+    * chromosomes the children must differ from, with a registry only the
+    * children bred by this process as the registry knows the others
+    */
+   private final Set<Chromosome> allChromosomes = new HashSet<Chromosome>();
+   private final ExecutionCache cache = new ExecutionCache();
    
-   public GA(Element rootElement, int cycle, double mutationProb, 
+   public GA(Element rootElement, double mutationProb, 
              int breedingPoolSize, int childPoolSize)
    {  Settings.readConfigFile(rootElement);
-      this.cycle = cycle;
       this.mutationProbability = mutationProb;
       this.breedingPoolSize = breedingPoolSize;
       this.childPoolSize = childPoolSize;
@@ -60,7 +83,8 @@ public class GA
    throws IOException, Exception
    {  CommandLineParser cParser;
       String[] modes    = {"-debug", "-waitForKey" };
-      String[] parms    = {"-prefix", "-mutationProb", "-breedingPool", "-childPool", "-queOpts", "-xmlFile", "-cycle"  };
+      String[] parms    = {"-prefix", "-mutationProb", "-breedingPool", "-childPool", "-queOpts", "-xmlFile", "-cycle",
+                           "-executor", "-nThreads", "-screenFactor", "-registry" };
       String[] reqParms = {"-prefix", "-mutationProb", "-breedingPool", "-childPool", "-xmlFile", "-cycle" };
       
       cParser = new CommandLineParser(EXPLAIN,0,0,args,modes,parms,reqParms);
@@ -80,6 +104,10 @@ public class GA
       Settings.setNamePrefix(prefix, cycle);
       Settings.setDebugMode(cParser.wasGiven("-debug"));
       Settings.setQueueOptions(cParser.getValue("-queOpts"));
+      Settings.setJobExecutor(AutoCorrelator.createJobExecutor(cParser));
+      RunJournal journal = Settings.openJournal();
+      // children are bred again from the same seed when resuming
+      Settings.MYRandom.setSeed(journal.getSeed(System.currentTimeMillis()));
 
       if( cParser.wasGiven("-waitForKey") )
       {  System.err.println("You may now start the debug then press return:");
@@ -91,16 +119,112 @@ public class GA
       builder.setValidation(false);
       Document xmlDoc = builder.build(new File(xmlFile));
       
-      GA ga = new GA(xmlDoc.getRootElement(), cycle, mutationProb, breedingPool, childPool);
-      ga.run();
+      GA ga = new GA(xmlDoc.getRootElement(), mutationProb, breedingPool, childPool);
+      if(cParser.wasGiven("-screenFactor"))
+         ga.setScreenFactor(Integer.parseInt(cParser.getValue("-screenFactor")));
+      if(cParser.wasGiven("-registry"))
+         ga.setRegistry(new GenomeRegistry(new File(cParser.getValue("-registry")),
+                  GenomeRegistry.fingerprint(xmlDoc.getRootElement()), breedingPool));
+      ga.readPopulation(cycle);
+      ga.runCycle(cycle);
+      if(journal.isResuming())
+         System.err.println("Resumed " + journal.getSummary());
+      Settings.getJobExecutor().waitForCompletion();
+      journal.close();
    }
    
    
-   private void run() throws DAException, SQLException, IOException
-   {  List<Chromosome> chromosomes = Chromosome.readChromosomes();
-      HashSet<Chromosome> allChromosomes = 
-            new HashSet<Chromosome>(chromosomes.size() + childPoolSize);
-      allChromosomes.addAll(chromosomes);
+   /**
+    * Breed screenFactor times more candidates than childPool and submit only
+    * those ranked best by a {@link Surrogate}, 1 to submit all.
+    */
+   void setScreenFactor(int screenFactor)
+   {  this.screenFactor = screenFactor;
+   }
+
+   /**
+    * Share evaluated chromosomes with other experiments through registry,
+    * see {@link GenomeRegistry}.
+    */
+   void setRegistry(GenomeRegistry registry)
+   {  this.registry = registry;
+   }
+
+   /**
+    * Read the chromosomes of the cycles before cycle. Models submitted by an
+    * interrupted run of cycle itself are left out so that the resumed run
+    * breeds the same children again.
+    * 
+    * With a registry the chromosomes read are registered and the best
+    * registered ones of other experiments are added to the population. The
+    * children of this cycle are then checked for duplicates against the
+    * registry, so the chromosomes read are not added to allChromosomes.
+    */
+   void readPopulation(int cycle) throws IOException
+   {  List<Chromosome> read = new ArrayList<Chromosome>();
+      for(Chromosome c : Chromosome.readChromosomes())
+         if(c.getCycle() < cycle)
+            read.add(c);
+      if(registry == null || read.size() == 0)
+      {  for(Chromosome c : read)
+            addEvaluated(c);
+         return;
+      }
+
+      for(Chromosome c : read)
+      {  population.add(c);
+         c.addExecutions(cache);
+      }
+      registry.addAll(read);
+      
+      // the best registered chromosomes include those of this experiment
+      Set<Chromosome> inPopulation = new HashSet<Chromosome>(read);
+      int nWarm = 0;
+      for(Chromosome c : registry.getBest(read.get(0), cycle))
+      {  if(! inPopulation.add(c)) continue;
+         population.add(c);
+         nWarm++;
+      }
+      System.err.printf("Added %d of %d registered chromosomes to the population\n",
+                        nWarm, registry.size());
+   }
+
+   /**
+    * Add a chromosome whose model was evaluated to the population.
+    */
+   void addEvaluated(Chromosome c) throws IOException
+   {  population.add(c);
+      c.addExecutions(cache);
+      if(registry != null)
+         registry.addAll(Collections.singletonList(c));
+      else
+         allChromosomes.add(c);
+   }
+
+   /**
+    * @return the chromosome evaluated by this experiment with the highest
+    *         quality or null if there is none, chromosomes taken from the
+    *         registry are not counted.
+    */
+   Chromosome getBest()
+   {  Chromosome best = null;
+      for(Chromosome c : population)
+      {  if(! c.isEvaluated()) continue;
+         if(best == null || c.getQuality() > best.getQuality())
+            best = c;
+      }
+      return best;
+   }
+
+   /**
+    * Breed childPool children from the best chromosomes of the population and
+    * submit them.
+    *
+    * @return the model executions of the children.
+    */
+   List<JobExecution> runCycle(int cycle) throws IOException
+   {  List<Chromosome> chromosomes = new ArrayList<Chromosome>(population);
+      int nReused = cache.getNReused();
       
       // sort by quality
       Collections.sort(chromosomes, new Comparator<Chromosome>()
@@ -117,39 +241,94 @@ public class GA
       if(chromosomes.size() == 1)
          throw new Error("There is only a single chromosome!");
 
+      Chromosome[] children = breedChildren(chromosomes, cycle);
+      
+      if(Settings.isDebugMode()) 
+         System.err.println("\n\n=========== executing chromosomes");
+      
+      // submit the children with the longest chain of jobs left to run first
+      JobDag dag = new JobDag(Settings.getConfigFile().getJobList(), 
+                              Settings.getRuntimeEstimator());
+      final Map<Chromosome,Double> remaining = new IdentityHashMap<Chromosome,Double>();
+      for(Chromosome c : children)
+         remaining.put(c, c.getRemainingRuntime(cache, dag));
+      Arrays.sort(children, new Comparator<Chromosome>()
+               {  public int compare(Chromosome o1, Chromosome o2)
+                  {  return -Double.compare(remaining.get(o1), remaining.get(o2));
+                  }
+               });
+      
+      List<JobExecution> models = new ArrayList<JobExecution>(children.length);
+      for(Chromosome c : children)
+      {  models.add(c.execute(cache));
+         if(Settings.isDebugMode())  System.err.println(c);
+      }
+      System.err.printf("Reused %d upstream executions for %d children\n", 
+                        cache.getNReused() - nReused, children.length);
+      return models;
+   }  
+
+   /**
+    * Breed childPool children, screened by a surrogate model if enabled and
+    * enough chromosomes have been evaluated.
+    */
+   private Chromosome[] breedChildren(List<Chromosome> breedingPool, int cycle)
+   {  Surrogate surrogate = null;
+      if(screenFactor > 1)
+         surrogate = Surrogate.train(population);
+
       // mutate and crossover
-      Chromosome[] children = new Chromosome[childPoolSize];
-      int nChild = 0;
-      int nTries = 0;
-      while(nChild < childPoolSize)
-      {  int p1 = Settings.MYRandom.nextInt(chromosomes.size());
+      int nCandidates = surrogate == null ? childPoolSize : childPoolSize * screenFactor;
+      Chromosome[] candidates = new Chromosome[nCandidates];
+      for(int nChild=0; nChild < nCandidates; nChild++)
+         candidates[nChild] = breed(breedingPool, allChromosomes, registry,
+                                    mutationProbability, cycle);
+      if(surrogate == null) return candidates;
+
+      surrogate.rank(candidates);
+      // rejected candidates may be bred again later
+      for(int i=childPoolSize; i<nCandidates; i++)
+         allChromosomes.remove(candidates[i]);
+      System.err.printf("Selected %d of %d candidates by expected improvement\n",
+                        childPoolSize, nCandidates);
+      return Arrays.copyOf(candidates, childPoolSize);
+   }
+
+   /**
+    * Create a child by crossover of two random chromosomes of breedingPool and
+    * mutation, the child is added to allChromosomes.
+    * 
+    * @param allChromosomes all known chromosomes, the child differs from all.
+    */
+   static Chromosome breed(List<Chromosome> breedingPool, Set<Chromosome> allChromosomes,
+                           double mutationProbability, int cycle)
+   {  return breed(breedingPool, allChromosomes, null, mutationProbability, cycle);
+   }
+
+   /**
+    * @param registry chromosomes submitted or evaluated by this and other
+    *        experiments or null, the child differs from these too.
+    */
+   static Chromosome breed(List<Chromosome> breedingPool, Set<Chromosome> allChromosomes,
+                           GenomeRegistry registry, double mutationProbability, int cycle)
+   {  int nTries = 0;
+      while(true)
+      {  int p1 = Settings.MYRandom.nextInt(breedingPool.size());
       
          int p2;
-         while((p2 = Settings.MYRandom.nextInt(chromosomes.size())) == p1)
+         while((p2 = Settings.MYRandom.nextInt(breedingPool.size())) == p1)
          {  // look for next random number until p1 and p2 differ
          }
          
-         Chromosome c = chromosomes.get(p1).crossOver(chromosomes.get(p2), cycle);
+         Chromosome c = breedingPool.get(p1).crossOver(breedingPool.get(p2), cycle);
          c = c.mutate(mutationProbability, cycle);
          
-         if(allChromosomes.contains(c))
-         {  if(nTries++ > MAX_TRIES)
-               throw new Error(String.format(
-                   "Tried %d times to create new unique chromosome but failed, "
-                  +"maybe this run is converged.", nTries));
-            continue;
-         }
-         nTries = 0;
-         allChromosomes.add(c);
-         children[nChild++] = c;
-      }
-      
-      if(Settings.isDebugMode()) 
-         System.err.println("\n\n=========== executing chromosomes");
-      
-      for(Chromosome c : children)
-      {  c.execute(children.length);
-         if(Settings.isDebugMode())  System.err.println(c);
+         if((registry == null || ! registry.contains(c)) && allChromosomes.add(c)) return c;
+         
+         if(nTries++ > MAX_TRIES)
+            throw new Error(String.format(
+                "Tried %d times to create new unique chromosome but failed, "
+               +"maybe this run is converged.", nTries));
       }
-   }  
+   }
 }
@@ -0,0 +1,171 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ga;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdom.Document;
+import org.jdom.input.SAXBuilder;
+
+import autocorrelator.ac.*;
+import autocorrelator.apps.CommandLineParser;
+
+/**
+ * Runs the GA cycles cycle to maxCycle in one process instead of one
+ * ga.pl/gaStep.csh queue job per cycle: the config file is parsed, and the
+ * chromosomes and the {@link RunStore} are read, only once. After each cycle
+ * the driver waits until no more than percentLeft percent of its models are
+ * unfinished, as ga.pl does with {@link ReleaseWatcher}; the models finishing
+ * later join the population of a later cycle.
+ *
+ * Each cycle has its own journal so that a restarted driver resumes the cycle
+ * it was running with the same seed.
+ */
+public class GADriver
+{  private static final String EXPLAIN=
+      "gaDriver [-debug] [-queOpts 'opts'] [-executor sge|local] [-nThreads n]\n"
+     +"   [-percentLeft 20] [-stallCycles n] [-rescanSeconds 60] [-screenFactor n]\n"
+     +"   [-registry file]\n"
+     +"   -mutationProb 0.1 -breedingPool 20 -childPool 15\n"
+     +"   -prefix namePrefix -xmlFile xmlConfig -cycle n -maxCycle mCyc\n"
+     +"  Run GA cycles n to mCyc, the initial models must have been computed by\n"
+     +"  autoCorrelator.csh.\n"
+     +"  percentLeft: start the next cycle when no more than this percentage of\n"
+     +"     the models of the current cycle are unfinished.\n"
+     +"  stallCycles: stop when the best quality did not improve in n cycles.\n"
+     +"  screenFactor, registry: see gaStep.\n";
+
+   private final GA ga;
+   private final RunContext ctx;
+   private final int childPoolSize;
+   private final double percentLeft;
+   private final int stallCycles;
+   private final long rescanMS;
+   /** models submitted but not yet evaluated */
+   private final List<JobExecution> pending = new ArrayList<JobExecution>();
+
+   GADriver(GA ga, int childPoolSize, double percentLeft, int stallCycles, long rescanMS)
+   {  this.ga = ga;
+      this.ctx = RunContext.current();
+      this.childPoolSize = childPoolSize;
+      this.percentLeft = percentLeft;
+      this.stallCycles = stallCycles;
+      this.rescanMS = rescanMS;
+   }
+
+   public static void main(String[] args) throws Exception
+   {  String[] modes    = {"-debug"};
+      String[] parms    = {"-prefix", "-mutationProb", "-breedingPool", "-childPool",
+                           "-queOpts", "-xmlFile", "-cycle", "-maxCycle", "-executor",
+                           "-nThreads", "-percentLeft", "-stallCycles", "-rescanSeconds",
+                           "-screenFactor", "-registry" };
+      String[] reqParms = {"-prefix", "-mutationProb", "-breedingPool", "-childPool",
+                           "-xmlFile", "-cycle", "-maxCycle" };
+      CommandLineParser cParser = new CommandLineParser(EXPLAIN,0,0,args,modes,parms,reqParms);
+
+      int cycle = Integer.parseInt(cParser.getValue("-cycle"));
+      int maxCycle = Integer.parseInt(cParser.getValue("-maxCycle"));
+      int childPool = Integer.parseInt(cParser.getValue("-childPool"));
+      double percentLeft = 20;
+      if(cParser.wasGiven("-percentLeft"))
+         percentLeft = Double.parseDouble(cParser.getValue("-percentLeft"));
+      int stallCycles = Integer.MAX_VALUE;
+      if(cParser.wasGiven("-stallCycles"))
+         stallCycles = Integer.parseInt(cParser.getValue("-stallCycles"));
+      long rescanSec = 60;
+      if(cParser.wasGiven("-rescanSeconds"))
+         rescanSec = Long.parseLong(cParser.getValue("-rescanSeconds"));
+
+      Settings.setNamePrefix(cParser.getValue("-prefix"), cycle);
+      Settings.setDebugMode(cParser.wasGiven("-debug"));
+      Settings.setQueueOptions(cParser.getValue("-queOpts"));
+      Settings.setJobExecutor(AutoCorrelator.createJobExecutor(cParser));
+
+      SAXBuilder builder = new SAXBuilder(true);
+      builder.setValidation(false);
+      Document xmlDoc = builder.build(new File(cParser.getValue("-xmlFile")));
+      GA ga = new GA(xmlDoc.getRootElement(),
+                     Double.parseDouble(cParser.getValue("-mutationProb")),
+                     Integer.parseInt(cParser.getValue("-breedingPool")), childPool);
+      if(cParser.wasGiven("-screenFactor"))
+         ga.setScreenFactor(Integer.parseInt(cParser.getValue("-screenFactor")));
+      if(cParser.wasGiven("-registry"))
+         ga.setRegistry(new GenomeRegistry(new File(cParser.getValue("-registry")),
+                  GenomeRegistry.fingerprint(xmlDoc.getRootElement()),
+                  Integer.parseInt(cParser.getValue("-breedingPool"))));
+
+      GADriver driver = new GADriver(ga, childPool, percentLeft, stallCycles, rescanSec * 1000);
+      driver.run(cycle, maxCycle);
+      Settings.getJobExecutor().waitForCompletion();
+   }
+
+   void run(int firstCycle, int maxCycle) throws IOException, InterruptedException
+   {  ga.readPopulation(firstCycle);
+      int nNeeded = childPoolSize - (int)Math.floor(childPoolSize * percentLeft / 100);
+      double bestQuality = Double.NEGATIVE_INFINITY;
+      int lastImprovement = firstCycle;
+
+      ModelWatcher watcher = new ModelWatcher(ctx, rescanMS);
+      try
+      {  for(int cycle = firstCycle; cycle <= maxCycle; cycle++)
+         {  RunJournal journal = cycle == firstCycle ? ctx.openJournal()
+                                                     : ctx.startCycle(cycle);
+            // children are bred again from the same seed when resuming
+            Settings.MYRandom.setSeed(journal.getSeed(Settings.MYRandom.nextLong()));
+
+            List<JobExecution> models = ga.runCycle(cycle);
+            if(journal.isResuming())
+               System.err.println("Resumed " + journal.getSummary());
+            pending.addAll(models);
+
+            int nDone = 0;
+            while(true)
+            {  for(JobExecution model : watcher.collectFinished(pending))
+               {  ga.addEvaluated(new Chromosome(model, ctx.getRunStore()));
+                  if(models.contains(model)) nDone++;
+               }
+               if(nDone >= nNeeded || ! containsAny(pending, models)) break;
+               watcher.await();
+            }
+
+            Chromosome best = ga.getBest();
+            System.err.printf("Cycle %d: %d of %d models done, best %s\n",
+                              cycle, nDone, models.size(), best);
+            if(best != null && best.getQuality() > bestQuality)
+            {  bestQuality = best.getQuality();
+               lastImprovement = cycle;
+            }else if(cycle - lastImprovement >= stallCycles)
+            {  System.err.printf("No improvement since cycle %d, stopping\n", lastImprovement);
+               break;
+            }
+         }
+      } finally
+      {  watcher.close();
+         if(ctx.getJournal() != null) ctx.getJournal().close();
+      }
+   }
+
+   private static boolean containsAny(List<JobExecution> list, List<JobExecution> elements)
+   {  for(JobExecution e : elements)
+         if(list.contains(e)) return true;
+      return false;
+   }
+}
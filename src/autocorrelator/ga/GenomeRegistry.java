@@ -0,0 +1,410 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ga;
+
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+
+import autocorrelator.ac.Parameter;
+
+import org.jdom.Element;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+
+/**
+ * Append only binary registry of the evaluated genomes of all experiments
+ * sharing the registry file, so that a new GA prefix on the same molecules
+ * starts from the best chromosomes found before and does not evaluate them
+ * again.
+ *
+ * Genomes are keyed by content: the fingerprint of the molecule source and the
+ * job definitions of the config file and the parameter ids and values, see
+ * {@link Chromosome#getContentHash}. The file starts with the magic number
+ * "ACGR" and the format VERSION followed by records of fingerprint, content
+ * hash, quality, parameter ids and values, and the CRC32 of the record. The
+ * quality is NaN for genomes which were submitted but are not yet evaluated,
+ * since version 2. As in {@link autocorrelator.ac.RunStore} writers append
+ * under an exclusive file lock after reading the records of other processes.
+ *
+ * Only the content hashes, in open addressing sets, and the best nBest
+ * genomes of the fingerprint are kept in memory. The set of registered
+ * content hashes persists from cycle to cycle, so the GA checks its children
+ * for duplicates against it instead of against all chromosomes read.
+ */
+public class GenomeRegistry
+{  static final int VERSION = 2;
+   private static final int MAGIC = 0x41434752;
+   private static final int HEADERLength = 8;
+   private static final long FNVOffset = 0xcbf29ce484222325L;
+   private static final long FNVPrime  = 0x100000001b3L;
+   private static final Comparator<Entry> QUALITYOrder = new Comparator<Entry>()
+            {  public int compare(Entry o1, Entry o2)
+               {  return Double.compare(o1.quality, o2.quality);
+               }
+            };
+
+   private final File file;
+   private final long fingerprint;
+   private final int nBest;
+   /** content hashes of the submitted and evaluated genomes */
+   private final LongSet known = new LongSet();
+   private final LongSet evaluated = new LongSet();
+   /** the nBest entries with the highest quality, lowest first */
+   private final PriorityQueue<Entry> best = new PriorityQueue<Entry>(11, QUALITYOrder);
+   /** bytes of the file read so far */
+   private long loadedLength = 0;
+
+   /**
+    * @param nBest number of best genomes kept for {@link #getBest}.
+    */
+   public GenomeRegistry(File file, long fingerprint, int nBest) throws IOException
+   {  this.file = file;
+      this.fingerprint = fingerprint;
+      this.nBest = nBest;
+      refresh();
+   }
+
+   /**
+    * @return hash of the molecule source and the job definitions of the
+    *         config file, genomes are only shared between experiments with the
+    *         same fingerprint.
+    */
+   @SuppressWarnings("unchecked")
+   public static long fingerprint(Element rootElement)
+   {  long h = FNVOffset;
+      Element load = rootElement.getChild("load");
+      if(load != null)
+         h = hash(h, new XMLOutputter(Format.getCompactFormat()).outputString(load));
+      for(Element job : (List<Element>)rootElement.getChildren("job"))
+         h = hashJob(h, job);
+      return h;
+   }
+
+   /**
+    * Hash id, type and fixed arguments of job and its children. Fixed
+    * arguments are the parameters with a single value, the values of the other
+    * parameters are part of the genome.
+    */
+   @SuppressWarnings("unchecked")
+   private static long hashJob(long h, Element job)
+   {  String id = job.getAttributeValue("id");
+      h = hash(h, String.valueOf(id));
+      h = hash(h, String.valueOf(job.getAttributeValue("type")));
+
+      Element params = job.getChild("parameters");
+      if(params != null)
+      {  for(Element el : (List<Element>)params.getChildren("parameter"))
+         {  Parameter p = new Parameter(el, id);
+            if(p.getNValues() != 1) continue;
+            h = hash(h, p.getName());
+            h = hash(h, p.getValue(0));
+         }
+      }
+
+      for(Element child : (List<Element>)job.getChildren("job"))
+         h = hashJob(h, child);
+      // ends the list of children
+      return hash(h, "");
+   }
+
+   /**
+    * FNV-1a hash of s continuing from h.
+    */
+   static long hash(long h, String s)
+   {  for(int i=0; i<s.length(); i++)
+      {  h ^= s.charAt(i);
+         h *= FNVPrime;
+      }
+      // separates consecutive strings
+      h ^= 0xFF;
+      return h * FNVPrime;
+   }
+
+   /**
+    * @return true if the genome of c was submitted or evaluated by this or an
+    *         earlier experiment with the same fingerprint.
+    */
+   public synchronized boolean contains(Chromosome c)
+   {  return known.contains(c.getContentHash());
+   }
+
+   /**
+    * Read the records appended since the last call.
+    */
+   public synchronized void refresh() throws IOException
+   {  if(! file.exists()) return;
+
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try
+      {  catchUp(raf.getChannel());
+      } finally
+      {  raf.close();
+      }
+   }
+
+   /**
+    * Add the chromosomes of this experiment which are not yet registered,
+    * with their quality if they were evaluated. Chromosomes taken from the
+    * registry are skipped.
+    */
+   public synchronized void addAll(Collection<Chromosome> chromosomes) throws IOException
+   {  List<Chromosome> added = new ArrayList<Chromosome>();
+      LongSet batch = new LongSet();
+      for(Chromosome c : chromosomes)
+      {  if(c.isFromRegistry() || isRegistered(c)) continue;
+         if(batch.add(c.getContentHash())) added.add(c);
+      }
+      if(added.size() == 0) return;
+
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try
+      {  FileChannel ch = raf.getChannel();
+         FileLock lock = ch.lock();
+         try
+         {  catchUp(ch);
+
+            ByteArrayOutputStream pending = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(pending);
+            if(ch.size() < HEADERLength)
+            {  out.writeInt(MAGIC);
+               out.writeInt(VERSION);
+               loadedLength = 0;
+            }
+            for(Chromosome c : added)
+            {  // registered by another process meanwhile
+               if(isRegistered(c)) continue;
+               writeRecord(out, c);
+            }
+
+            if(pending.size() > 0)
+            {  // drop a record left incomplete by a crashed writer
+               ch.truncate(loadedLength);
+               ch.write(ByteBuffer.wrap(pending.toByteArray()), loadedLength);
+               ch.force(false);
+               catchUp(ch);
+            }
+         } finally
+         {  lock.release();
+         }
+      } finally
+      {  raf.close();
+      }
+   }
+
+   /**
+    * @return true if c is registered, with its quality if it was evaluated.
+    */
+   private boolean isRegistered(Chromosome c)
+   {  long h = c.getContentHash();
+      return c.isEvaluated() ? evaluated.contains(h) : known.contains(h);
+   }
+
+   private void writeRecord(DataOutputStream out, Chromosome c) throws IOException
+   {  ByteArrayOutputStream bytes = new ByteArrayOutputStream(200);
+      DataOutputStream rec = new DataOutputStream(bytes);
+      rec.writeLong(fingerprint);
+      rec.writeLong(c.getContentHash());
+      rec.writeDouble(c.isEvaluated() ? c.getQuality() : Double.NaN);
+      List<String[]> vals = c.getParameterIdsAndValues();
+      rec.writeInt(vals.size());
+      for(String[] idVal : vals)
+      {  rec.writeUTF(idVal[0]);
+         rec.writeUTF(idVal[1]);
+      }
+
+      byte[] payload = bytes.toByteArray();
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      out.writeInt(payload.length);
+      out.write(payload);
+      out.writeInt((int)crc.getValue());
+   }
+
+   /**
+    * Read the complete records after loadedLength, one at a time.
+    */
+   private void catchUp(FileChannel ch) throws IOException
+   {  long size = ch.size();
+      if(size <= loadedLength) return;
+
+      long pos = loadedLength;
+      ch.position(pos);
+      DataInputStream in = new DataInputStream(
+                                 new BufferedInputStream(Channels.newInputStream(ch)));
+
+      if(pos == 0)
+      {  if(size < HEADERLength) return;
+         if(in.readInt() != MAGIC)
+            throw new IOException(file + " is not a genome registry");
+         int version = in.readInt();
+         if(version < 1 || version > VERSION)
+            throw new IOException(String.format("%s has version %d, only %d is supported",
+                                                file, version, VERSION));
+         pos = HEADERLength;
+      }
+
+      while(size - pos >= 4)
+      {  int len = in.readInt();
+         if(len < 0 || size - pos - 4 < len + 4) break;   // truncated record
+         byte[] payload = new byte[len];
+         in.readFully(payload);
+         CRC32 crc = new CRC32();
+         crc.update(payload);
+         if(in.readInt() != (int)crc.getValue()) break;
+
+         readRecord(payload);
+         pos += 4 + len + 4;
+      }
+      loadedLength = pos;
+   }
+
+   private void readRecord(byte[] payload) throws IOException
+   {  DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+      if(in.readLong() != fingerprint) return;
+
+      long contentHash = in.readLong();
+      double quality = in.readDouble();
+      known.add(contentHash);
+      if(Double.isNaN(quality) || ! evaluated.add(contentHash)) return;
+      if(best.size() >= nBest && (nBest == 0 || quality <= best.peek().quality)) return;
+
+      int n = in.readInt();
+      String[] ids = new String[n];
+      String[] vals = new String[n];
+      for(int i=0; i<n; i++)
+      {  ids[i] = in.readUTF();
+         vals[i] = in.readUTF();
+      }
+      best.add(new Entry(quality, ids, vals));
+      if(best.size() > nBest) best.poll();
+   }
+
+   /**
+    * @param template chromosome of this experiment whose jobs the genomes are
+    *        mapped onto, genomes with other parameters are skipped.
+    * @return the best registered chromosomes, best first.
+    */
+   public synchronized List<Chromosome> getBest(Chromosome template, int cycle)
+   {  List<Entry> entries = new ArrayList<Entry>(best);
+      Collections.sort(entries, Collections.reverseOrder(QUALITYOrder));
+
+      List<Chromosome> chromosomes = new ArrayList<Chromosome>(entries.size());
+      for(Entry e : entries)
+      {  Chromosome c = template.withValues(e.ids, e.vals, e.quality, cycle);
+         if(c != null) chromosomes.add(c);
+      }
+      return chromosomes;
+   }
+
+   /**
+    * @return the number of evaluated genomes.
+    */
+   public synchronized int size()
+   {  return evaluated.size();
+   }
+
+
+   private static class Entry
+   {  final double quality;
+      final String[] ids;
+      final String[] vals;
+
+      Entry(double quality, String[] ids, String[] vals)
+      {  this.quality = quality;
+         this.ids = ids;
+         this.vals = vals;
+      }
+   }
+
+   /**
+    * Open addressing hash set of longs.
+    */
+   private static class LongSet
+   {  /** 0 marks an empty slot, the value 0 is stored in hasZero */
+      private long[] table = new long[1024];
+      private int size = 0;
+      private boolean hasZero = false;
+
+      boolean contains(long v)
+      {  if(v == 0) return hasZero;
+         int mask = table.length - 1;
+         for(int i=spread(v) & mask; table[i] != 0; i = (i+1) & mask)
+            if(table[i] == v) return true;
+         return false;
+      }
+
+      /**
+       * @return false if v was in the set already.
+       */
+      boolean add(long v)
+      {  if(v == 0)
+         {  if(hasZero) return false;
+            hasZero = true;
+            size++;
+            return true;
+         }
+         if(2 * (size+1) > table.length) grow();
+
+         int mask = table.length - 1;
+         int i = spread(v) & mask;
+         for(; table[i] != 0; i = (i+1) & mask)
+            if(table[i] == v) return false;
+         table[i] = v;
+         size++;
+         return true;
+      }
+
+      int size()
+      {  return size;
+      }
+
+      private void grow()
+      {  long[] old = table;
+         table = new long[old.length * 2];
+         int mask = table.length - 1;
+         for(long v : old)
+         {  if(v == 0) continue;
+            int i = spread(v) & mask;
+            while(table[i] != 0) i = (i+1) & mask;
+            table[i] = v;
+         }
+      }
+
+      private static int spread(long v)
+      {  v *= 0x9e3779b97f4a7c15L;
+         return (int)(v ^ (v >>> 32));
+      }
+   }
+}
@@ -0,0 +1,190 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ga;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import autocorrelator.ac.JobTelemetry;
+import autocorrelator.ac.RunContext;
+import autocorrelator.apps.CommandLineParser;
+
+/**
+ * Releases the job running the next GA cycle (prefix cycle "Next") as soon as
+ * no more than percentLeft percent of the R jobs of this cycle are unfinished.
+ *
+ * A job has finished when its {@link JobTelemetry} record appears in the
+ * telemetry records of the GA, the record is written as last command of every
+ * job. New records are noticed through a WatchService, the records are read
+ * again every rescanSeconds because records written by other hosts on a
+ * network file system do not cause events.
+ *
+ * If records are lost the watcher gives up once no job of the cycle is left in
+ * the queue or after timeoutMinutes, the hold of the next cycle on the jobs of
+ * this cycle then releases it. The watcher runs as a queue job of its own so
+ * that the job of the GA cycle which submitted it can end.
+ */
+public class ReleaseWatcher
+{  private static final String EXPLAIN=
+      "gaReleaseWatch [-percentLeft 20] [-rescanSeconds 60] [-timeoutMinutes 720]\n"
+     +"     -prefix prefix -cycle n -nTotal tot\n"
+     +"   Wait until no more than percentLeft percent of the tot R jobs of GA\n"
+     +"   cycle n are unfinished, then release the queue job of the next cycle.\n"
+     +"   Give up after timeoutMinutes.\n";
+
+   private final File dir;
+   private final String prefix;
+   private final String cyclePrefix;
+   private final Pattern cycleJobName;
+   private final Pattern modelJobName;
+   private final int nNeeded;
+   private final long rescanMS;
+   private final long timeoutMS;
+   private final Set<String> finished = new HashSet<String>();
+
+   /**
+    * @param nNeeded number of finished R jobs needed for the release.
+    */
+   ReleaseWatcher(File dir, String prefix, int cycle, int nNeeded, long rescanMS,
+                  long timeoutMS)
+   {  this.dir = dir;
+      this.prefix = prefix;
+      this.cyclePrefix = prefix + '_' + cycle;
+      this.cycleJobName = Pattern.compile(Pattern.quote(cyclePrefix) + "\\D.*");
+      this.modelJobName = Pattern.compile(
+            Pattern.quote(prefix + '_' + cycle) + "R2?\\d+");
+      this.nNeeded = nNeeded;
+      this.rescanMS = rescanMS;
+      this.timeoutMS = timeoutMS;
+   }
+
+   public static void main(String[] args) throws IOException, InterruptedException
+   {  String[] modes    = {};
+      String[] parms    = {"-prefix", "-cycle", "-nTotal", "-percentLeft", "-rescanSeconds",
+                           "-timeoutMinutes"};
+      String[] reqParms = {"-prefix", "-cycle", "-nTotal"};
+      CommandLineParser cParser = new CommandLineParser(EXPLAIN,0,0,args,modes,parms,reqParms);
+
+      String prefix = cParser.getValue("-prefix");
+      int cycle = Integer.parseInt(cParser.getValue("-cycle"));
+      int nTotal = Integer.parseInt(cParser.getValue("-nTotal"));
+      double percentLeft = 20;
+      if(cParser.wasGiven("-percentLeft"))
+         percentLeft = Double.parseDouble(cParser.getValue("-percentLeft"));
+      long rescanSec = 60;
+      if(cParser.wasGiven("-rescanSeconds"))
+         rescanSec = Long.parseLong(cParser.getValue("-rescanSeconds"));
+      long timeoutMin = 720;
+      if(cParser.wasGiven("-timeoutMinutes"))
+         timeoutMin = Long.parseLong(cParser.getValue("-timeoutMinutes"));
+
+      int nNeeded = nTotal - (int)Math.floor(nTotal * percentLeft / 100);
+      File dir = new File(".");
+      File telemetryDir = JobTelemetry.getRecordDir(dir, prefix);
+      if(! telemetryDir.isDirectory() && ! telemetryDir.mkdirs())
+         throw new Error("Could not create " + telemetryDir);
+
+      ReleaseWatcher rw = new ReleaseWatcher(dir, prefix, cycle, nNeeded,
+                                             rescanSec * 1000, timeoutMin * 60000);
+      if(! rw.waitForRelease())
+         System.exit(0);
+
+      String cmd = String.format("qalter -hold_jid 0 %s%dNext", prefix, cycle);
+      System.err.println(cmd);
+      Process p = Runtime.getRuntime().exec(cmd);
+      p.getOutputStream().close();
+      System.exit(p.waitFor());
+   }
+
+   /**
+    * Block until nNeeded R jobs have finished.
+    *
+    * @return false if no job of the cycle is left in the queue before or the
+    *         timeout passed.
+    */
+   boolean waitForRelease() throws IOException, InterruptedException
+   {  long deadline = System.currentTimeMillis() + timeoutMS;
+      WatchService watcher = FileSystems.getDefault().newWatchService();
+      try
+      {  Path path = JobTelemetry.getRecordDir(dir, prefix).toPath();
+         path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_MODIFY);
+         rescan();
+
+         while(finished.size() < nNeeded)
+         {  long left = deadline - System.currentTimeMillis();
+            if(left <= 0)
+            {  System.err.printf("Only %d R jobs finished after %d minutes\n",
+                                 finished.size(), timeoutMS / 60000);
+               return false;
+            }
+            WatchKey key = watcher.poll(Math.min(left, rescanMS), TimeUnit.MILLISECONDS);
+            if(key == null)
+            {  rescan();
+               if(finished.size() < nNeeded && ! hasQueuedJobs())
+               {  System.err.printf("Only %d R jobs finished and no job of %s is queued\n",
+                                    finished.size(), cyclePrefix);
+                  return false;
+               }
+               continue;
+            }
+
+            key.pollEvents();
+            rescan();
+            if(! key.reset())
+               throw new Error(dir + " is no longer accessible");
+         }
+      } finally
+      {  watcher.close();
+      }
+      System.err.printf("%d R jobs finished\n", finished.size());
+      return true;
+   }
+
+   /**
+    * @return true if a job of the cycle is still known to the queue or the
+    *         queue could not be read.
+    */
+   private boolean hasQueuedJobs()
+   {  try
+      {  for(String name : RunContext.current().getJobExecutor().getQueuedJobNames(cyclePrefix))
+         {  if(cycleJobName.matcher(name).matches()) return true;
+         }
+         return false;
+      } catch(IOException e)
+      {  System.err.println("Could not read the queue: " + e.getMessage());
+         return true;
+      }
+   }
+
+   private void rescan() throws IOException
+   {  for(String jobName : JobTelemetry.getEndStatus(dir, prefix).keySet())
+      {  if(modelJobName.matcher(jobName).matches())
+            finished.add(jobName);
+      }
+   }
+}
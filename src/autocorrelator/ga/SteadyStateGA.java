@@ -0,0 +1,188 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ga;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jdom.Document;
+import org.jdom.input.SAXBuilder;
+
+import autocorrelator.ac.*;
+import autocorrelator.apps.CommandLineParser;
+
+/**
+ * Steady state GA: instead of breeding a generation at a time, one child is
+ * bred from the current breeding pool and submitted whenever the evaluation
+ * of a model finishes, so that nInFlight evaluations are always running.
+ *
+ * Finished models are noticed by a {@link ModelWatcher}.
+ *
+ * All children are created in the given cycle, so that a restarted run
+ * resumes with the journal of this cycle and counts its unfinished models as
+ * in flight.
+ */
+public class SteadyStateGA
+{  private static final String EXPLAIN=
+      "gaSteadyState [-debug] [-queOpts 'opts'] [-executor sge|local] [-nThreads n]\n"
+     +"   [-rescanSeconds 60] -mutationProb 0.1 -breedingPool 20 -inFlight 15\n"
+     +"   -maxEvaluations 500 -prefix namePrefix -xmlFile xmlConfig -cycle n\n"
+     +"  inFlight: number of models evaluated at the same time.\n"
+     +"  maxEvaluations: number of children to submit before stopping.\n"
+     +"  breedingPool: number of best models from which children are bred.\n";
+
+   private final int cycle;
+   private final double mutationProbability;
+   private final int breedingPoolSize;
+   private final int nInFlight;
+   private final int maxEvaluations;
+   private final long rescanMS;
+
+   private final RunContext ctx;
+   private final RunStore store;
+   private final ExecutionCache cache = new ExecutionCache();
+   private final Set<Chromosome> allChromosomes = new HashSet<Chromosome>();
+   /** best evaluated chromosomes, best first */
+   private final List<Chromosome> breedingPool = new ArrayList<Chromosome>();
+   /** models submitted but not yet evaluated */
+   private final List<JobExecution> inFlight = new ArrayList<JobExecution>();
+   private int nSubmitted = 0;
+   private int nFailed = 0;
+
+   SteadyStateGA(int cycle, double mutationProb, int breedingPoolSize, int nInFlight,
+                 int maxEvaluations, long rescanMS) throws IOException
+   {  this.cycle = cycle;
+      this.mutationProbability = mutationProb;
+      this.breedingPoolSize = breedingPoolSize;
+      this.nInFlight = nInFlight;
+      this.maxEvaluations = maxEvaluations;
+      this.rescanMS = rescanMS;
+      this.ctx = RunContext.current();
+      this.store = ctx.getRunStore();
+   }
+
+   public static void main(String[] args) throws Exception
+   {  String[] modes    = {"-debug"};
+      String[] parms    = {"-prefix", "-mutationProb", "-breedingPool", "-inFlight",
+                           "-maxEvaluations", "-queOpts", "-xmlFile", "-cycle",
+                           "-executor", "-nThreads", "-rescanSeconds" };
+      String[] reqParms = {"-prefix", "-mutationProb", "-breedingPool", "-inFlight",
+                           "-maxEvaluations", "-xmlFile", "-cycle" };
+      CommandLineParser cParser = new CommandLineParser(EXPLAIN,0,0,args,modes,parms,reqParms);
+
+      int cycle = Integer.parseInt(cParser.getValue("-cycle"));
+      long rescanSec = 60;
+      if(cParser.wasGiven("-rescanSeconds"))
+         rescanSec = Long.parseLong(cParser.getValue("-rescanSeconds"));
+
+      Settings.setNamePrefix(cParser.getValue("-prefix"), cycle);
+      Settings.setDebugMode(cParser.wasGiven("-debug"));
+      Settings.setQueueOptions(cParser.getValue("-queOpts"));
+      Settings.setJobExecutor(AutoCorrelator.createJobExecutor(cParser));
+      RunJournal journal = Settings.openJournal();
+      Settings.MYRandom.setSeed(journal.getSeed(System.currentTimeMillis()));
+
+      SAXBuilder builder = new SAXBuilder(true);
+      builder.setValidation(false);
+      Document xmlDoc = builder.build(new File(cParser.getValue("-xmlFile")));
+      Settings.readConfigFile(xmlDoc.getRootElement());
+
+      SteadyStateGA ga = new SteadyStateGA(cycle,
+               Double.parseDouble(cParser.getValue("-mutationProb")),
+               Integer.parseInt(cParser.getValue("-breedingPool")),
+               Integer.parseInt(cParser.getValue("-inFlight")),
+               Integer.parseInt(cParser.getValue("-maxEvaluations")),
+               rescanSec * 1000);
+      ga.run();
+      Settings.getJobExecutor().waitForCompletion();
+      journal.close();
+   }
+
+   void run() throws IOException, InterruptedException
+   {  for(Chromosome c : Chromosome.readChromosomes(ctx))
+      {  allChromosomes.add(c);
+         c.addExecutions(cache);
+         if(c.getExecIndex() >= 0)
+            addToBreedingPool(c);
+      }
+      // unfinished models of an earlier run of this cycle
+      for(JobExecution model : store.getModels())
+      {  if(model.getCycle() == cycle && model.getJobName().startsWith(ctx.getNamePrefix())
+            && store.getQuality(model) == null && ! ModelWatcher.hasEnded(ctx, model))
+         {  inFlight.add(model);
+            nSubmitted++;
+         }
+      }
+
+      ModelWatcher watcher = new ModelWatcher(ctx, rescanMS);
+      try
+      {  while(true)
+         {  collectEvaluated(watcher);
+            while(inFlight.size() < nInFlight && nSubmitted < maxEvaluations
+                  && breedingPool.size() >= 2)
+               submitChild();
+
+            if(inFlight.size() == 0) break;
+            watcher.await();
+         }
+      } finally
+      {  watcher.close();
+      }
+
+      if(breedingPool.size() < 2)
+         throw new Error("Less than two evaluated chromosomes found!");
+      System.err.printf("Submitted %d children, %d failed, best:\n%s\n",
+                        nSubmitted, nFailed, breedingPool.get(0));
+   }
+
+   private void submitChild() throws IOException
+   {  Chromosome child = GA.breed(breedingPool, allChromosomes, mutationProbability, cycle);
+      inFlight.add(child.execute(cache));
+      nSubmitted++;
+      if(ctx.isDebugMode()) System.err.println(child);
+   }
+
+   /**
+    * Move the models with a quality from inFlight into the breeding pool.
+    */
+   private void collectEvaluated(ModelWatcher watcher) throws IOException
+   {  for(JobExecution model : watcher.collectFinished(inFlight))
+      {  if(watcher.hasQuality(model))
+         {  addToBreedingPool(new Chromosome(model, store));
+         }else
+         {  nFailed++;
+            System.err.printf("No quality for %s\n", model.getOutputFileName());
+         }
+      }
+   }
+
+   private void addToBreedingPool(Chromosome c)
+   {  int pos = breedingPool.size();
+      while(pos > 0 && breedingPool.get(pos-1).getQuality() < c.getQuality())
+         pos--;
+      if(pos >= breedingPoolSize) return;
+
+      breedingPool.add(pos, c);
+      if(breedingPool.size() > breedingPoolSize)
+         breedingPool.remove(breedingPool.size()-1);
+   }
+}
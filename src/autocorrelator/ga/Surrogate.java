@@ -0,0 +1,301 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ga;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import autocorrelator.ac.Parameter;
+import autocorrelator.ac.ParameterValue;
+import autocorrelator.ac.Settings;
+
+/**
+ * Random forest regression of the quality of evaluated chromosomes, used to
+ * pick the most promising of many bred children before they are submitted.
+ *
+ * Parameters whose values are all numbers are one numeric feature, the others
+ * one 0/1 feature per value. The spread of the tree predictions serves as
+ * uncertainty for the expected improvement over the best quality so far.
+ *
+ * The trees are grown with {@link Settings#MYRandom} so that a resumed GA
+ * cycle selects the same children.
+ */
+class Surrogate
+{  /** fewer evaluated chromosomes are not worth a model */
+   static final int MIN_TRAINING = 10;
+   private static final int N_TREES = 50;
+   private static final int MIN_LEAF = 2;
+   private static final double MIN_SIGMA = 1e-9;
+
+   /** feature index of every numeric parameter or of the first value of a categorical one */
+   private final Map<Parameter,Integer> featureStart = new LinkedHashMap<Parameter,Integer>();
+   private final Map<Parameter,Boolean> numeric = new LinkedHashMap<Parameter,Boolean>();
+   private int nFeatures = 0;
+   private final List<Node> trees = new ArrayList<Node>(N_TREES);
+   private double bestQuality = Double.NEGATIVE_INFINITY;
+
+   private Surrogate()
+   {
+   }
+
+   /**
+    * @return the model trained on the chromosomes with a quality or null if
+    *         there are fewer than MIN_TRAINING.
+    */
+   static Surrogate train(List<Chromosome> chromosomes)
+   {  List<Chromosome> evaluated = new ArrayList<Chromosome>();
+      for(Chromosome c : chromosomes)
+         if(c.isEvaluated() && ! Double.isNaN(c.getQuality()))
+            evaluated.add(c);
+      if(evaluated.size() < MIN_TRAINING) return null;
+
+      Surrogate s = new Surrogate();
+      for(Chromosome c : evaluated)
+         for(ParameterValue pv : c.getParameterValues())
+            s.addFeature(pv.getParameter());
+
+      double[][] x = new double[evaluated.size()][];
+      double[] y = new double[evaluated.size()];
+      for(int i=0; i<x.length; i++)
+      {  x[i] = s.encode(evaluated.get(i));
+         y[i] = evaluated.get(i).getQuality();
+         s.bestQuality = Math.max(s.bestQuality, y[i]);
+      }
+
+      Random rand = Settings.MYRandom;
+      int[] sample = new int[x.length];
+      for(int t=0; t<N_TREES; t++)
+      {  // bootstrap sample
+         for(int i=0; i<sample.length; i++)
+            sample[i] = rand.nextInt(x.length);
+         s.trees.add(s.grow(x, y, sample.clone(), rand));
+      }
+      return s;
+   }
+
+   private void addFeature(Parameter param)
+   {  if(featureStart.containsKey(param)) return;
+
+      boolean isNumeric = true;
+      for(String v : param.getValues())
+         isNumeric &= parseNumber(v) != null;
+      featureStart.put(param, nFeatures);
+      numeric.put(param, isNumeric);
+      nFeatures += isNumeric ? 1 : param.getNValues();
+   }
+
+   private static Double parseNumber(String v)
+   {  try
+      {  return Double.valueOf(v);
+      } catch(NumberFormatException e)
+      {  return null;
+      }
+   }
+
+   /**
+    * Parameters not seen in training are ignored, missing numeric features
+    * are NaN.
+    */
+   private double[] encode(Chromosome c)
+   {  double[] f = new double[nFeatures];
+      for(Map.Entry<Parameter,Integer> e : featureStart.entrySet())
+         if(numeric.get(e.getKey())) f[e.getValue()] = Double.NaN;
+
+      for(ParameterValue pv : c.getParameterValues())
+      {  Parameter param = pv.getParameter();
+         Integer start = featureStart.get(param);
+         if(start == null) continue;
+
+         if(numeric.get(param))
+         {  f[start] = Double.parseDouble(pv.getValue());
+         }else
+         {  int idx = Arrays.asList(param.getValues()).indexOf(pv.getValue());
+            if(idx >= 0) f[start + idx] = 1;
+         }
+      }
+      return f;
+   }
+
+   /**
+    * @return mean and standard deviation of the tree predictions.
+    */
+   double[] predict(Chromosome c)
+   {  double[] f = encode(c);
+      double sum = 0;
+      double sum2 = 0;
+      for(Node tree : trees)
+      {  double p = tree.predict(f);
+         sum += p;
+         sum2 += p * p;
+      }
+      double mean = sum / trees.size();
+      double var = Math.max(0, sum2 / trees.size() - mean * mean);
+      return new double[] { mean, Math.sqrt(var) };
+   }
+
+   /**
+    * @return the expected improvement of c over the best quality in training.
+    */
+   double expectedImprovement(Chromosome c)
+   {  double[] pred = predict(c);
+      double sigma = Math.max(pred[1], MIN_SIGMA);
+      double z = (pred[0] - bestQuality) / sigma;
+      return (pred[0] - bestQuality) * cdf(z) + sigma * Math.exp(-0.5 * z * z) / Math.sqrt(2 * Math.PI);
+   }
+
+   /**
+    * Sort candidates by decreasing expected improvement.
+    */
+   void rank(Chromosome[] candidates)
+   {  final Map<Chromosome,Double> ei = new LinkedHashMap<Chromosome,Double>();
+      for(Chromosome c : candidates)
+         ei.put(c, expectedImprovement(c));
+      Arrays.sort(candidates, new Comparator<Chromosome>()
+               {  public int compare(Chromosome o1, Chromosome o2)
+                  {  return -Double.compare(ei.get(o1), ei.get(o2));
+                  }
+               });
+   }
+
+   /** standard normal cumulative distribution, Abramowitz and Stegun 7.1.26 */
+   private static double cdf(double z)
+   {  double x = Math.abs(z) / Math.sqrt(2);
+      double t = 1 / (1 + 0.3275911 * x);
+      double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741
+                     + t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-x * x);
+      return z >= 0 ? 0.5 * (1 + erf) : 0.5 * (1 - erf);
+   }
+
+   /**
+    * Grow a regression tree on the rows in sample, each split considers a
+    * random third of the features.
+    */
+   private Node grow(double[][] x, double[] y, int[] sample, Random rand)
+   {  double mean = 0;
+      for(int i : sample) mean += y[i];
+      mean /= sample.length;
+      if(sample.length < 2 * MIN_LEAF) return new Node(mean);
+
+      int nTry = Math.max(1, nFeatures / 3);
+      int bestFeature = -1;
+      double bestThreshold = 0;
+      double bestScore = 0;
+      for(int k=0; k<nTry; k++)
+      {  int feat = rand.nextInt(nFeatures);
+         double[] split = bestSplit(x, y, sample, feat);
+         if(split != null && split[1] > bestScore)
+         {  bestFeature = feat;
+            bestThreshold = split[0];
+            bestScore = split[1];
+         }
+      }
+      if(bestFeature < 0) return new Node(mean);
+
+      int nLeft = 0;
+      for(int i : sample)
+         if(x[i][bestFeature] <= bestThreshold) nLeft++;
+      int[] left = new int[nLeft];
+      int[] right = new int[sample.length - nLeft];
+      int l = 0, r = 0;
+      for(int i : sample)
+      {  if(x[i][bestFeature] <= bestThreshold) left[l++] = i;
+         else right[r++] = i;
+      }
+
+      return new Node(bestFeature, bestThreshold,
+                      grow(x, y, left, rand), grow(x, y, right, rand));
+   }
+
+   /**
+    * @return threshold and reduction of the sum of squared errors of the best
+    *         split of sample on feature feat, null if there is none.
+    */
+   private static double[] bestSplit(double[][] x, final double[] y, int[] sample, final int feat)
+   {  Integer[] order = new Integer[sample.length];
+      int n = 0;
+      for(int i : sample)
+         if(! Double.isNaN(x[i][feat])) order[n++] = i;
+      if(n < 2 * MIN_LEAF) return null;
+      order = Arrays.copyOf(order, n);
+
+      final double[][] xx = x;
+      Arrays.sort(order, new Comparator<Integer>()
+               {  public int compare(Integer o1, Integer o2)
+                  {  return Double.compare(xx[o1][feat], xx[o2][feat]);
+                  }
+               });
+
+      double total = 0;
+      for(int i : order) total += y[i];
+
+      double[] best = null;
+      double leftSum = 0;
+      for(int k=0; k<n-1; k++)
+      {  leftSum += y[order[k]];
+         double v = x[order[k]][feat];
+         double next = x[order[k+1]][feat];
+         if(v == next || k+1 < MIN_LEAF || n-k-1 < MIN_LEAF) continue;
+
+         int nl = k+1;
+         int nr = n-nl;
+         double rightSum = total - leftSum;
+         // reduction of the sum of squared errors
+         double score = leftSum*leftSum/nl + rightSum*rightSum/nr - total*total/n;
+         if(best == null || score > best[1])
+            best = new double[] { (v + next) / 2, score };
+      }
+      return best;
+   }
+
+
+   private static class Node
+   {  final int feature;
+      final double threshold;
+      final double value;
+      final Node left;
+      final Node right;
+
+      Node(double value)
+      {  this.feature = -1;
+         this.threshold = 0;
+         this.value = value;
+         this.left = null;
+         this.right = null;
+      }
+
+      Node(int feature, double threshold, Node left, Node right)
+      {  this.feature = feature;
+         this.threshold = threshold;
+         this.value = 0;
+         this.left = left;
+         this.right = right;
+      }
+
+      double predict(double[] f)
+      {  Node n = this;
+         while(n.feature >= 0)
+            n = f[n.feature] <= n.threshold ? n.left : n.right;
+         return n.value;
+      }
+   }
+}
@@ -0,0 +1,153 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jdom.Document;
+import org.jdom.input.SAXBuilder;
+import org.junit.Test;
+
+public class DesignEnumeratorTest
+{  private static final String[] DESIGNS =
+   {  "fullFactorial", "singleParameter", "random", "latinHypercube",
+      "sobol", "orthogonalArray" };
+
+   /** parse a config file with the single job described by the arguments */
+   private static JobDescription readJob(String design, int nExecutions,
+                                         String parameters) throws Exception
+   {  String xml = "<autoCorrelator>"
+         + "<load id='molSource' type='molecules'/>"
+         + "<job id='j' type='test' experimentalDesign='" + design
+         + "' numberOfExecutions='" + nExecutions + "'>"
+         + "<parameters>" + parameters + "</parameters>"
+         + "</job></autoCorrelator>";
+      Document doc = new SAXBuilder().build(new StringReader(xml));
+      RunContext ctx = new RunContext();
+      ctx.readConfigFile(doc.getRootElement());
+      return (JobDescription)ctx.getConfigFile().getJobList().get(0);
+   }
+
+   private static String range(String name, int nValues)
+   {  return "<parameter name='" + name + "' type='range' numType='int' from='0' to='"
+         + (nValues-1) + "' step='1' default='0'/>";
+   }
+
+   private static List<String> enumerate(JobDescription jd, BigInteger start,
+                                         BigInteger end, long seed)
+   {  List<String> rows = new ArrayList<String>();
+      DesignEnumerator en = DesignEnumerator.factory(jd, start, end, seed);
+      while(en.hasNext())
+      {  StringBuilder sb = new StringBuilder();
+         for(ParameterValue pv : en.next())
+            sb.append(pv.getValue()).append(' ');
+         rows.add(sb.toString());
+      }
+      return rows;
+   }
+
+   @Test
+   public void sizeMatchesEnumeration() throws Exception
+   {  String params = range("a", 4) + range("b", 3) + range("c", 5);
+      for(String design : DESIGNS)
+      {  JobDescription jd = readJob(design, 17, params);
+         int n = enumerate(jd, null, null, 1).size();
+         assertEquals(design, BigInteger.valueOf(n), DesignEnumerator.getSize(jd, null, null));
+
+         BigInteger start = BigInteger.valueOf(2);
+         BigInteger end = BigInteger.valueOf(9);
+         assertEquals(design, BigInteger.valueOf(enumerate(jd, start, end, 1).size()),
+                      DesignEnumerator.getSize(jd, start, end));
+      }
+   }
+
+   @Test
+   public void slicesConcatenateToFullDesign() throws Exception
+   {  String params = range("a", 4) + range("b", 3) + range("c", 5);
+      for(String design : DESIGNS)
+      {  JobDescription jd = readJob(design, 17, params);
+         List<String> all = enumerate(jd, null, null, 5);
+         List<String> parts = new ArrayList<String>();
+         for(int start=0; start<all.size(); start+=4)
+            parts.addAll(enumerate(jd, BigInteger.valueOf(start),
+                                   BigInteger.valueOf(start+4), 5));
+         assertEquals(design, all, parts);
+      }
+   }
+
+   @Test
+   public void sameSeedSameDesign() throws Exception
+   {  String params = range("a", 10) + range("b", 10);
+      for(String design : new String[] { "random", "latinHypercube", "sobol" })
+      {  JobDescription jd = readJob(design, 20, params);
+         assertEquals(design, enumerate(jd, null, null, 3), enumerate(jd, null, null, 3));
+      }
+   }
+
+   @Test
+   public void orthogonalArrayCoversEveryPair() throws Exception
+   {  JobDescription jd = readJob("orthogonalArray", 0,
+                                  range("a", 5) + range("b", 5) + range("c", 5));
+      List<String> rows = enumerate(jd, null, null, 7);
+      assertEquals(25, rows.size());
+      for(int p1=0; p1<3; p1++)
+         for(int p2=p1+1; p2<3; p2++)
+         {  Set<String> pairs = new HashSet<String>();
+            for(String row : rows)
+            {  String[] vals = row.split(" ");
+               pairs.add(vals[p1] + ' ' + vals[p2]);
+            }
+            assertEquals(25, pairs.size());
+         }
+   }
+
+   @Test
+   public void orthogonalArrayFallsBackToFullFactorial() throws Exception
+   {  JobDescription jd = readJob("orthogonalArray", 0, range("a", 50));
+      List<String> rows = enumerate(jd, null, null, 7);
+      assertEquals(50, rows.size());
+      assertEquals(50, new HashSet<String>(rows).size());
+   }
+
+   @Test
+   public void sobolIgnoresSingleValuedParameters() throws Exception
+   {  StringBuilder params = new StringBuilder();
+      for(int i=0; i<SobolSequence.MAXDimensions + 5; i++)
+         params.append(range("fixed" + i, 1));
+      params.append(range("a", 8)).append(range("b", 8));
+      JobDescription jd = readJob("sobol", 64, params.toString());
+      List<String> rows = enumerate(jd, null, null, 1);
+      assertEquals(64, rows.size());
+      assertEquals(64, new HashSet<String>(rows).size());
+   }
+
+   @Test
+   public void singleParameterVariesOneAtATime() throws Exception
+   {  JobDescription jd = readJob("singleParameter", 0, range("a", 3) + range("b", 4));
+      for(String row : enumerate(jd, null, null, 1))
+         assertFalse(row, row.matches("[1-9]\\d* [1-9]\\d* "));
+   }
+}
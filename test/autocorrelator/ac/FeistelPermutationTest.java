@@ -0,0 +1,75 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+public class FeistelPermutationTest
+{  @Test
+   public void isPermutation()
+   {  for(long size : new long[] { 1, 2, 3, 7, 64, 1000, 65537 })
+      {  FeistelPermutation perm = new FeistelPermutation(size, 42);
+         BitSet seen = new BitSet();
+         for(long i=0; i<size; i++)
+         {  long v = perm.get(i);
+            assertTrue(v + " not in [0," + size + ")", v >= 0 && v < size);
+            assertFalse(v + " returned twice", seen.get((int)v));
+            seen.set((int)v);
+         }
+      }
+   }
+
+   @Test
+   public void sameSeedSamePermutation()
+   {  FeistelPermutation p1 = new FeistelPermutation(1000, 7);
+      FeistelPermutation p2 = new FeistelPermutation(1000, 7);
+      FeistelPermutation p3 = new FeistelPermutation(1000, 8);
+      int nSame = 0;
+      for(long i=0; i<1000; i++)
+      {  assertEquals(p1.get(i), p2.get(i));
+         if(p1.get(i) == p3.get(i)) nSame++;
+      }
+      assertTrue("seeds 7 and 8 agree in " + nSame + " positions", nSame < 100);
+   }
+
+   @Test
+   public void largeSizeInRange()
+   {  long size = Long.MAX_VALUE / 3;
+      FeistelPermutation perm = new FeistelPermutation(size, 1);
+      for(long i : new long[] { 0, 1, size / 2, size - 1 })
+      {  long v = perm.get(i);
+         assertTrue(v >= 0 && v < size);
+      }
+   }
+
+   @Test(expected = IndexOutOfBoundsException.class)
+   public void indexOutOfRange()
+   {  new FeistelPermutation(10, 1).get(10);
+   }
+
+   @Test(expected = Error.class)
+   public void emptyPermutation()
+   {  new FeistelPermutation(0, 1);
+   }
+}
@@ -0,0 +1,137 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Release of parked jobs by the {@link LocalExecutor}. The scripts run with sh
+ * so that no csh is needed, they only use commands common to both.
+ */
+public class LocalExecutorTest
+{  private File dir;
+   private File log;
+
+   @Before
+   public void setUp() throws IOException
+   {  dir = File.createTempFile("localExecutorTest", ".dir");
+      dir.delete();
+      dir.mkdir();
+      log = new File(dir, "log");
+   }
+
+   @After
+   public void tearDown()
+   {  File[] files = dir.listFiles();
+      if(files != null)
+         for(File f : files) f.delete();
+      dir.delete();
+   }
+
+   @Test
+   public void childStartsAfterParentEnded() throws IOException
+   {  LocalExecutor executor = new LocalExecutor(4, "sh", dir.getPath());
+      JobExecution parent = submit(executor, "p", null, "sleep 1");
+      submit(executor, "c", parent, "");
+      executor.waitForCompletion();
+
+      assertEquals(Arrays.asList("start p", "end p", "start c", "end c"), readLog());
+   }
+
+   @Test
+   public void childRunsAfterFailedParent() throws IOException
+   {  LocalExecutor executor = new LocalExecutor(4, "sh", dir.getPath());
+      JobExecution parent = submit(executor, "p", null, "exit 3");
+      submit(executor, "c", parent, "");
+      executor.waitForCompletion();
+
+      assertEquals(Arrays.asList("start p", "start c", "end c"), readLog());
+   }
+
+   @Test
+   public void cancelSkipsParkedDescendants() throws IOException
+   {  // the only thread is busy so that "a" has not started when cancelled
+      LocalExecutor executor = new LocalExecutor(1, "sh", dir.getPath());
+      JobExecution blocker = submit(executor, "b", null, "sleep 1");
+      JobExecution a = submit(executor, "a", null, "");
+      JobExecution child = submit(executor, "c", a, "");
+      submit(executor, "g", child, "");
+      submit(executor, "s", blocker, "");
+      executor.cancel(a);
+      executor.waitForCompletion();
+
+      assertEquals(Arrays.asList("start b", "end b", "start s", "end s"), readLog());
+      assertEquals(0, executor.getQueuedJobNames("").size());
+   }
+
+   @Test
+   public void usableAfterWaitForCompletion() throws IOException
+   {  LocalExecutor executor = new LocalExecutor(2, "sh", dir.getPath());
+      submit(executor, "x", null, "");
+      executor.waitForCompletion();
+      submit(executor, "y", null, "");
+      executor.waitForCompletion();
+
+      assertEquals(Arrays.asList("start x", "end x", "start y", "end y"), readLog());
+   }
+
+   /**
+    * Submit a script logging its start, running body and logging its end.
+    */
+   private JobExecution submit(LocalExecutor executor, String name, JobExecution parent,
+                               String body) throws IOException
+   {  File script = new File(dir, name + ".csh");
+      PrintStream out = new PrintStream(script);
+      out.printf("echo start %s >> %s\n", name, log.getPath());
+      out.println(body);
+      out.printf("echo end %s >> %s\n", name, log.getPath());
+      out.close();
+
+      QueueEntry entry = executor.submit(name, parent, new ParameterValue[0], script.getPath());
+      return new JobExecution(name, 0, parent, null, new ParameterValue[0], 
+                              name + ".out", 0, entry);
+   }
+
+   private List<String> readLog() throws IOException
+   {  List<String> lines = new ArrayList<String>();
+      if(! log.exists()) return lines;
+
+      BufferedReader in = new BufferedReader(new FileReader(log));
+      try
+      {  String line;
+         while((line = in.readLine()) != null)
+            lines.add(line);
+      } finally
+      {  in.close();
+      }
+      return lines;
+   }
+}
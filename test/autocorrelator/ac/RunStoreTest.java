@@ -0,0 +1,211 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.List;
+
+import org.jdom.Document;
+import org.jdom.input.SAXBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RunStoreTest
+{  private File dir;
+   private File storeFile;
+   private File corrFile;
+   private RunContext ctx;
+   private JobDescription parentJd;
+   private JobDescription modelJd;
+
+   @Before
+   public void setUp() throws Exception
+   {  dir = File.createTempFile("runStoreTest", ".dir");
+      dir.delete();
+      dir.mkdir();
+      storeFile = new File(dir, "exp" + RunStore.SUFFIX);
+      corrFile = new File(dir, "exp_ModelCorrelation.txt");
+
+      String xml = "<autoCorrelator>"
+         + "<load id='molSource' type='molecules'/>"
+         + "<job id='p' type='test'><parameters>"
+         + "<parameter name='a' type='list'><value>x</value><value>y</value></parameter>"
+         + "</parameters>"
+         + "<job id='m' type='test'><parameters>"
+         + "<parameter name='b' type='range' numType='int' from='1' to='3' step='1'/>"
+         + "</parameters></job>"
+         + "</job></autoCorrelator>";
+      Document doc = new SAXBuilder().build(new StringReader(xml));
+      ctx = new RunContext();
+      ctx.readConfigFile(doc.getRootElement());
+      ctx.setNamePrefix("exp");
+      parentJd = (JobDescription)ctx.getConfigFile().getJobDescription("p");
+      modelJd = (JobDescription)ctx.getConfigFile().getJobDescription("m");
+   }
+
+   @After
+   public void tearDown()
+   {  File[] files = dir.listFiles();
+      if(files != null)
+         for(File f : files) f.delete();
+      dir.delete();
+   }
+
+   private JobExecution model(JobExecution parent, int execId, String b)
+   {  ParameterValue[] vals =
+         { new ParameterValue(modelJd.getParameter()[0], b) };
+      return new JobExecution("expm" + execId, execId, parent, modelJd, vals,
+                              "exp_m" + execId + ".sdf", 0);
+   }
+
+   private JobExecution parent(int execId, String a)
+   {  ParameterValue[] vals =
+         { new ParameterValue(parentJd.getParameter()[0], a) };
+      return new JobExecution("expp" + execId, execId, null, parentJd, vals,
+                              "exp_p" + execId + ".sdf", 0);
+   }
+
+   private void appendCorrelation(String text) throws IOException
+   {  FileWriter out = new FileWriter(corrFile, true);
+      out.write(text);
+      out.close();
+   }
+
+   @Test
+   public void modelsAreReadBack() throws IOException
+   {  RunStore store = new RunStore(ctx, storeFile);
+      JobExecution p = parent(1, "y");
+      store.addModel(model(p, 2, "3"));
+      store.addModel(model(p, 3, "1"));
+      store.addModel(model(p, 2, "3"));
+
+      RunStore other = new RunStore(ctx, storeFile);
+      other.refresh();
+      List<JobExecution> models = other.getModels();
+      assertEquals(2, models.size());
+
+      JobExecution m = models.get(0);
+      assertEquals("exp_m2.sdf", m.getOutputFileName());
+      assertEquals(2, m.getExecutionId());
+      assertSame(modelJd, m.getJobDescription());
+      assertEquals("3", m.getParamVals()[0].getValue());
+      assertEquals("exp_p1.sdf", m.getParentExecution().getOutputFileName());
+      assertEquals("y", m.getParentExecution().getParamVals()[0].getValue());
+      assertSame(m.getParentExecution(), models.get(1).getParentExecution());
+   }
+
+   @Test
+   public void appendsOfOtherWritersAreSeen() throws IOException
+   {  RunStore s1 = new RunStore(ctx, storeFile);
+      RunStore s2 = new RunStore(ctx, storeFile);
+      s1.addModel(model(parent(1, "x"), 2, "1"));
+      s2.addModel(model(parent(3, "y"), 4, "2"));
+      s1.addModel(model(parent(5, "x"), 6, "3"));
+
+      s2.refresh();
+      assertEquals(3, s1.getModels().size());
+      assertEquals(3, s2.getModels().size());
+      for(int i=0; i<3; i++)
+         assertEquals(s1.getModels().get(i).getOutputFileName(),
+                      s2.getModels().get(i).getOutputFileName());
+   }
+
+   @Test
+   public void qualitiesAreReadIncrementally() throws IOException
+   {  RunStore store = new RunStore(ctx, storeFile);
+      JobExecution p = parent(1, "x");
+      JobExecution m2 = model(p, 2, "1");
+      JobExecution m3 = model(p, 3, "2");
+      store.addModel(m2);
+      store.addModel(m3);
+
+      // the incomplete last line is left for the next update
+      appendCorrelation("exp_m2.sdf 0.5\nexp_m2.sdf 0.9\nexp_m3.sdf 0.");
+      store.updateQualities(corrFile.getPath());
+      assertEquals("0.5", store.getQuality(m2)[1]);
+      assertEquals(0, store.getQualityIndex(m2));
+      assertNull(store.getQuality(m3));
+
+      appendCorrelation("7\n");
+      store.updateQualities(corrFile.getPath());
+      assertEquals("0.7", store.getQuality(m3)[1]);
+      assertEquals(2, store.getQualityIndex(m3));
+      assertEquals("0.5", store.getQuality(m2)[1]);
+
+      RunStore other = new RunStore(ctx, storeFile);
+      other.refresh();
+      assertEquals("0.7", other.getQuality(other.getExecution("exp_m3.sdf"))[1]);
+   }
+
+   @Test
+   public void linesOfUnstoredModelsArePending() throws IOException
+   {  RunStore store = new RunStore(ctx, storeFile);
+      JobExecution m2 = model(parent(1, "x"), 2, "1");
+      appendCorrelation("exp2_m2.sdf 0.1\nexp_m2.sdf 0.3\n");
+      store.updateQualities(corrFile.getPath());
+      assertNull(store.getQuality(m2));
+
+      // the pending line is resolved without new lines in the file
+      store.addModel(m2);
+      store.updateQualities(corrFile.getPath());
+      assertEquals("0.3", store.getQuality(m2)[1]);
+      assertEquals(1, store.getQualityIndex(m2));
+   }
+
+   @Test
+   public void truncatedRecordIsIgnored() throws IOException
+   {  RunStore store = new RunStore(ctx, storeFile);
+      store.addModel(model(parent(1, "x"), 2, "1"));
+      long good = storeFile.length();
+      store.addModel(model(parent(3, "y"), 4, "2"));
+
+      RandomAccessFile raf = new RandomAccessFile(storeFile, "rw");
+      raf.setLength(storeFile.length() - 3);
+      raf.close();
+
+      RunStore other = new RunStore(ctx, storeFile);
+      other.refresh();
+      assertEquals(1, other.getModels().size());
+      other.addModel(model(parent(5, "x"), 6, "3"));
+      assertTrue(storeFile.length() > good);
+
+      RunStore third = new RunStore(ctx, storeFile);
+      third.refresh();
+      assertEquals(2, third.getModels().size());
+      assertEquals("exp_m6.sdf", third.getModels().get(1).getOutputFileName());
+   }
+
+   @Test
+   public void ownOutputNeedsDelimiter()
+   {  assertTrue(RunStore.isOwnOutput("exp_m2.sdf", "exp"));
+      assertTrue(RunStore.isOwnOutput("/tmp/run/exp_m2.sdf", "exp"));
+      assertFalse(RunStore.isOwnOutput("exp2_m2.sdf", "exp"));
+      assertFalse(RunStore.isOwnOutput("/tmp/exp_run/expm2.sdf", "exp"));
+   }
+}
@@ -0,0 +1,78 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ac;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SobolSequenceTest
+{  @Test
+   public void pointsAreStratified()
+   {  int n = 64;
+      SobolSequence seq = new SobolSequence(SobolSequence.MAXDimensions, 3);
+      for(int dim=0; dim<SobolSequence.MAXDimensions; dim++)
+      {  int[] count = new int[n];
+         for(long i=0; i<n; i++)
+         {  double x = seq.get(i, dim);
+            assertTrue(x >= 0 && x < 1);
+            count[(int)(x * n)]++;
+         }
+         for(int bin=0; bin<n; bin++)
+            assertEquals("dimension " + dim + " bin " + bin, 1, count[bin]);
+      }
+   }
+
+   /** the first two dimensions form a (0,m,2)-net */
+   @Test
+   public void firstTwoDimensionsAreNet()
+   {  int m = 6;
+      int n = 1 << m;
+      SobolSequence seq = new SobolSequence(2, 11);
+      for(int xBits=0; xBits<=m; xBits++)
+      {  int nx = 1 << xBits;
+         int ny = 1 << (m - xBits);
+         int[][] count = new int[nx][ny];
+         for(long i=0; i<n; i++)
+            count[(int)(seq.get(i, 0) * nx)][(int)(seq.get(i, 1) * ny)]++;
+         for(int[] col : count)
+            for(int c : col)
+               assertEquals(1, c);
+      }
+   }
+
+   @Test
+   public void sameSeedSamePoints()
+   {  SobolSequence s1 = new SobolSequence(5, 17);
+      SobolSequence s2 = new SobolSequence(5, 17);
+      SobolSequence s3 = new SobolSequence(5, 18);
+      boolean differs = false;
+      for(long i=0; i<100; i++)
+         for(int dim=0; dim<5; dim++)
+         {  assertEquals(s1.get(i, dim), s2.get(i, dim), 0D);
+            if(s1.get(i, dim) != s3.get(i, dim)) differs = true;
+         }
+      assertTrue(differs);
+   }
+
+   @Test(expected = Error.class)
+   public void tooManyDimensions()
+   {  new SobolSequence(SobolSequence.MAXDimensions + 1, 1);
+   }
+}
@@ -0,0 +1,211 @@
+/*
+This file is part of the AutoCorrelator.
+
+The AutoCorrelator is free software: you can redistribute it and/or
+modify it under the terms of the GNU General Public License v3 as
+published by the Free Software Foundation.
+
+The AutoCorrelator is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License v3
+along with the AutoCorrelator. If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package autocorrelator.ga;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.input.SAXBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import autocorrelator.ac.JobDescription;
+import autocorrelator.ac.JobExecution;
+import autocorrelator.ac.ParameterValue;
+import autocorrelator.ac.RunContext;
+import autocorrelator.ac.RunStore;
+
+public class GenomeRegistryTest
+{  private static final String CONFIG =
+        "<autoCorrelator>"
+      + "<load id='molSource' type='molecules'/>"
+      + "<job id='p' type='test'><parameters>"
+      + "<parameter name='a' type='range' numType='int' from='0' to='99' step='1'/>"
+      + "<parameter name='fixed' type='list'><value>%s</value></parameter>"
+      + "</parameters>"
+      + "<job id='m' type='test'><parameters>"
+      + "<parameter name='b' type='range' numType='int' from='0' to='%d' step='1'/>"
+      + "</parameters></job>"
+      + "</job></autoCorrelator>";
+
+   private File dir;
+   private File registryFile;
+   private RunContext ctx;
+   private RunContext previous;
+   private long fingerprint;
+   private JobExecution root;
+   private RunStore store;
+   private int execId = 0;
+
+   @Before
+   public void setUp() throws Exception
+   {  dir = File.createTempFile("genomeRegistryTest", ".dir");
+      dir.delete();
+      dir.mkdir();
+      registryFile = new File(dir, "registry");
+
+      Element rootEl = config("x", 9);
+      ctx = new RunContext();
+      ctx.readConfigFile(rootEl);
+      ctx.setNamePrefix(new File(dir, "exp").getPath());
+      previous = RunContext.bind(ctx);
+      fingerprint = GenomeRegistry.fingerprint(rootEl);
+      store = ctx.getRunStore();
+      root = new JobExecution("expsrc", execId++, null, null, new ParameterValue[0],
+                              "exp_src.sdf", 0);
+   }
+
+   @After
+   public void tearDown()
+   {  RunContext.bind(previous);
+      File[] files = dir.listFiles();
+      if(files != null)
+         for(File f : files) f.delete();
+      dir.delete();
+   }
+
+   private static Element config(String fixed, int maxB) throws Exception
+   {  String xml = String.format(CONFIG, fixed, maxB);
+      Document doc = new SAXBuilder().build(new StringReader(xml));
+      return doc.getRootElement();
+   }
+
+   /**
+    * @param quality quality written to the correlation file, null for a
+    *        model which is not yet evaluated.
+    */
+   private Chromosome chromosome(int a, int b, String quality) throws IOException
+   {  JobDescription p = (JobDescription)ctx.getConfigFile().getJobDescription("p");
+      JobDescription m = (JobDescription)ctx.getConfigFile().getJobDescription("m");
+      ParameterValue[] pVals = { new ParameterValue(p.getParameter()[0], Integer.toString(a)),
+                                 new ParameterValue(p.getParameter()[1], "x") };
+      JobExecution pExec = new JobExecution("expp", execId, root, p, pVals,
+                                            "exp_p" + execId++ + ".sdf", 0);
+      ParameterValue[] mVals = { new ParameterValue(m.getParameter()[0], Integer.toString(b)) };
+      JobExecution model = new JobExecution("expm", execId, pExec, m, mVals,
+                                            "exp_m" + execId++ + ".sdf", 0);
+      store.addModel(model);
+      if(quality != null)
+      {  FileWriter out = new FileWriter(ctx.getCorrelationFilename(), true);
+         out.write(model.getOutputFileName() + " " + quality + "\n");
+         out.close();
+         store.updateQualities(ctx.getCorrelationFilename());
+      }
+      return new Chromosome(model, store);
+   }
+
+   @Test
+   public void fingerprintCoversFixedArguments() throws Exception
+   {  assertEquals(fingerprint, GenomeRegistry.fingerprint(config("x", 9)));
+      // values of varied parameters are part of the genome
+      assertEquals(fingerprint, GenomeRegistry.fingerprint(config("x", 19)));
+      assertFalse(fingerprint == GenomeRegistry.fingerprint(config("y", 9)));
+   }
+
+   @Test
+   public void evaluatedGenomesAreShared() throws IOException
+   {  GenomeRegistry r1 = new GenomeRegistry(registryFile, fingerprint, 10);
+      Chromosome c1 = chromosome(1, 2, "0.5");
+      Chromosome c2 = chromosome(3, 4, "0.7");
+      assertTrue(c1.isEvaluated());
+      r1.addAll(Arrays.asList(c1, c2));
+
+      GenomeRegistry r2 = new GenomeRegistry(registryFile, fingerprint, 10);
+      assertEquals(2, r2.size());
+      assertTrue(r2.contains(c1));
+      assertFalse(r2.contains(chromosome(5, 6, "0.1")));
+
+      List<Chromosome> best = r2.getBest(c1, 3);
+      assertEquals(2, best.size());
+      assertEquals(c2, best.get(0));
+      assertEquals(0.7, best.get(0).getQuality(), 0);
+      assertTrue(best.get(0).isFromRegistry());
+      assertFalse(best.get(0).isEvaluated());
+
+      // other experiments do not share the genomes
+      GenomeRegistry other = new GenomeRegistry(registryFile, fingerprint + 1, 10);
+      assertEquals(0, other.size());
+      assertFalse(other.contains(c1));
+   }
+
+   @Test
+   public void registeredGenomesAreNotWrittenAgain() throws IOException
+   {  GenomeRegistry r1 = new GenomeRegistry(registryFile, fingerprint, 10);
+      Chromosome c1 = chromosome(1, 2, "0.5");
+      r1.addAll(Arrays.asList(c1));
+      long length = registryFile.length();
+
+      r1.addAll(Arrays.asList(c1));
+      GenomeRegistry r2 = new GenomeRegistry(registryFile, fingerprint, 10);
+      r2.addAll(r2.getBest(c1, 1));
+      r2.addAll(Arrays.asList(c1));
+      assertEquals(length, registryFile.length());
+   }
+
+   @Test
+   public void submittedGenomesAreDuplicates() throws IOException
+   {  GenomeRegistry r1 = new GenomeRegistry(registryFile, fingerprint, 10);
+      Chromosome submitted = chromosome(1, 2, null);
+      assertFalse(submitted.isEvaluated());
+      r1.addAll(Arrays.asList(submitted));
+      assertTrue(r1.contains(submitted));
+      assertEquals(0, r1.size());
+      assertEquals(0, r1.getBest(submitted, 1).size());
+
+      // the quality is registered once the model is evaluated
+      GenomeRegistry r2 = new GenomeRegistry(registryFile, fingerprint, 10);
+      assertTrue(r2.contains(submitted));
+      Chromosome evaluated = chromosome(1, 2, "0.3");
+      r2.addAll(Arrays.asList(evaluated));
+      assertEquals(1, r2.size());
+      r1.refresh();
+      assertEquals(1, r1.size());
+      assertEquals(0.3, r1.getBest(submitted, 1).get(0).getQuality(), 0);
+   }
+
+   @Test
+   public void onlyBestAreKept() throws IOException
+   {  GenomeRegistry r1 = new GenomeRegistry(registryFile, fingerprint, 1000);
+      List<Chromosome> all = new ArrayList<Chromosome>();
+      for(int a=0; a<100; a++)
+         for(int b=0; b<10; b++)
+            all.add(chromosome(a, b, Integer.toString(a * 10 + b)));
+      r1.addAll(all);
+
+      GenomeRegistry r2 = new GenomeRegistry(registryFile, fingerprint, 3);
+      assertEquals(1000, r2.size());
+      for(Chromosome c : all)
+         assertTrue(r2.contains(c));
+      List<Chromosome> best = r2.getBest(all.get(0), 1);
+      assertEquals(3, best.size());
+      assertEquals(999, best.get(0).getQuality(), 0);
+      assertEquals(997, best.get(2).getQuality(), 0);
+   }
+}